@@ -1,6 +1,7 @@
 package com.bsencan.openchess.android;
 
 import android.os.Bundle;
+import android.os.Debug;
 
 import com.badlogic.gdx.backends.android.AndroidApplication;
 import com.badlogic.gdx.backends.android.AndroidApplicationConfiguration;
@@ -11,6 +12,11 @@ public class AndroidLauncher extends AndroidApplication {
 	protected void onCreate (Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 		AndroidApplicationConfiguration config = new AndroidApplicationConfiguration();
+		/* ART has no collector MX beans but counts its collections itself. */
+		OpenChess.gcCounter = () -> {
+			String count = Debug.getRuntimeStat("art.gc.gc-count");
+			return count != null ? Long.parseLong(count) : 0;
+		};
 		initialize(new OpenChess(), config);
 	}
 }
@@ -0,0 +1,59 @@
+package com.bsencan.openchess.benchmarks;
+
+import com.bsencan.openchess.actors.BoardActor;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+import entity.Move;
+import entity.Side;
+import entity.event.GameEvent;
+import entity.event.GameMechanicEventType;
+import gamemechanics.model.event.EventManager;
+import generated.GameModeType;
+
+/**
+ * A full AI reply of the controller set up by
+ * <code>TavleiControllerManager.playWithCompute</code>: the human proposes a
+ * quiet move and the AI answers in the same call stack. A fresh game is set
+ * up before every invocation and disposed after it, which gives the library
+ * back.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AiReplyBenchmark {
+
+	private BoardActor boardActor;
+	private Move move;
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		this.boardActor = Headless.newBoard(GameModeType.PLAY_WITH_AI, Side.WHITE);
+		int side = TavleiBitboard.side(Side.WHITE);
+		this.move = Headless.move(Headless.quietCycle(this.boardActor.getBitboard(), side, 1)[0]);
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		this.boardActor.dispose();
+	}
+
+	@Benchmark
+	public void playWithCompute() {
+		this.boardActor.getBoardModel().addInfoMove(this.move, Side.WHITE);
+		EventManager.getEventListenerForMe(null, this).triggerEvent(
+				new GameEvent(GameMechanicEventType.PROPOSE_MOVE, this.move).setSourceSide(Side.WHITE));
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.bsencan.openchess.benchmarks;
+
+import com.badlogic.gdx.utils.Array;
+import com.bsencan.openchess.actors.BoardActor;
+import com.bsencan.openchess.actors.BoardController;
+import com.bsencan.openchess.actors.PieceActor;
+import com.bsencan.openchess.actors.Tile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import entity.Move;
+import entity.Side;
+import generated.GameModeType;
+
+/**
+ * Move queries made by {@link BoardController} when a piece is selected, for
+ * the piece of the side to move with the most destinations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BoardControllerBenchmark {
+
+	private BoardController controller;
+	private PieceActor pieceActor;
+
+	@Setup
+	public void setUp() {
+		BoardActor boardActor = Headless.newBoard(GameModeType.PLAY_FROM_ONE_COMPUTER, Side.BLACK);
+		this.controller = boardActor.getController();
+		this.pieceActor = Headless.busiestPiece(boardActor);
+	}
+
+	@Benchmark
+	public Set<Move> getValidMoves() {
+		return this.controller.getValidMoves(this.pieceActor);
+	}
+
+	@Benchmark
+	public Array<Tile> getValidMoveTiles() {
+		return this.controller.getValidMoveTiles(this.pieceActor);
+	}
+
+	@Benchmark
+	public Array<Tile> getCaptureMoveTiles() {
+		return this.controller.getCaptureMoveTiles(this.pieceActor);
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.bsencan.openchess.benchmarks;
+
+import com.bsencan.openchess.events.EventBus;
+import com.bsencan.openchess.events.EventType;
+import com.bsencan.openchess.events.MoveEvent;
+import com.bsencan.openchess.model.Positions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+import entity.Move;
+import entity.Side;
+import entity.event.GameEvent;
+import entity.event.GameMechanicEventType;
+import gamemechanics.model.event.EventManager;
+
+/**
+ * Latency of dispatching one move to a number of listeners that only count
+ * it, through the library's <code>EventManager</code> the way the game used
+ * it (listener looked up and event created per trigger) and through the
+ * typed {@link EventBus} with a reused event. Nothing else happens, so the
+ * difference is the cost of the dispatch alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventBusBenchmark {
+
+	private static final String SPACE = "benchmark";
+
+	@Param({ "1", "4" })
+	public int listeners;
+
+	private final Move move = new Move(Positions.get(0, 3), Positions.get(2, 3));
+	private final EventBus bus = new EventBus();
+	private final MoveEvent moveEvent = new MoveEvent();
+	private Object[] owners;
+	private int received;
+
+	@Setup
+	public void setUp() {
+		EventManager.destroyEventSpace(SPACE);
+		this.owners = new Object[this.listeners];
+		for (int i = 0; i < this.listeners; i++) {
+			this.owners[i] = new Object();
+			EventManager.getEventListenerForMe(SPACE, this.owners[i])
+					.addListener(GameMechanicEventType.MOVE, event -> this.received++);
+			this.bus.subscribe(EventType.MOVE, event -> this.received++);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		EventManager.destroyEventSpace(SPACE);
+		this.bus.clear();
+	}
+
+	@Benchmark
+	public int eventManager() {
+		EventManager.getEventListenerForMe(SPACE, this)
+				.triggerEvent(new GameEvent(GameMechanicEventType.MOVE, this.move).setSourceSide(Side.WHITE));
+		return this.received;
+	}
+
+	@Benchmark
+	public int eventBus() {
+		this.bus.post(EventType.MOVE, this.moveEvent.set(this.move, Side.WHITE));
+		return this.received;
+	}
+
+}
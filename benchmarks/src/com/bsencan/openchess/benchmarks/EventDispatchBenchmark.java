@@ -0,0 +1,84 @@
+package com.bsencan.openchess.benchmarks;
+
+import com.bsencan.openchess.actors.BoardActor;
+import com.bsencan.openchess.events.EventBus;
+import com.bsencan.openchess.events.EventType;
+import com.bsencan.openchess.events.MoveEvent;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import entity.Move;
+import entity.Side;
+import entity.event.GameEvent;
+import entity.event.GameMechanicEventType;
+import gamemechanics.model.event.EventManager;
+import generated.GameModeType;
+
+/**
+ * A PROPOSE_MOVE event through <code>EventManager</code>, validated by the
+ * library controller and answered with the MOVE event that
+ * <code>BoardController</code> applies to the board. Two quiet moves per side
+ * and their reverses are proposed per invocation, so the game never ends.
+ * <code>proposeMoveOnBus</code> posts the same moves on the board's
+ * {@link EventBus} instead, which passes them on to the library. See
+ * {@link EventBusBenchmark} for the dispatch alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EventDispatchBenchmark {
+
+	private BoardActor boardActor;
+	private final Move[] moves = new Move[4];
+	private final Side[] sides = new Side[4];
+	private final MoveEvent moveEvent = new MoveEvent();
+
+	@Setup
+	public void setUp() {
+		this.boardActor = Headless.newBoard(GameModeType.PLAY_FROM_ONE_COMPUTER, Side.BLACK);
+		TavleiBitboard board = this.boardActor.getBitboard();
+		int side = board.getSideToMove();
+		int[] cycle = Headless.quietCycle(board, side, 2);
+		this.moves[0] = Headless.move(cycle[0]);
+		this.moves[1] = Headless.move(cycle[1]);
+		this.moves[2] = Headless.reverse(cycle[0]);
+		this.moves[3] = Headless.reverse(cycle[1]);
+		for (int i = 0; i < 4; i++) {
+			this.sides[i] = TavleiBitboard.toSide(i % 2 == 0 ? side : 1 - side);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(4)
+	public void proposeMove() {
+		EventManager events = EventManager.getEventListenerForMe(null, this);
+		for (int i = 0; i < 4; i++) {
+			this.boardActor.getBoardModel().addInfoMove(this.moves[i], this.sides[i]);
+			events.triggerEvent(new GameEvent(GameMechanicEventType.PROPOSE_MOVE, this.moves[i])
+					.setSourceSide(this.sides[i]));
+		}
+		this.boardActor.getBitboard().clearHistory();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(4)
+	public void proposeMoveOnBus() {
+		EventBus events = this.boardActor.getEvents();
+		for (int i = 0; i < 4; i++) {
+			this.boardActor.getBoardModel().addInfoMove(this.moves[i], this.sides[i]);
+			events.post(EventType.PROPOSE_MOVE, this.moveEvent.set(this.moves[i], this.sides[i]));
+		}
+		this.boardActor.getBitboard().clearHistory();
+	}
+
+}
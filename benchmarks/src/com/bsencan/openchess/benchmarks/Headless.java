@@ -0,0 +1,137 @@
+package com.bsencan.openchess.benchmarks;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.bsencan.openchess.Assets;
+import com.bsencan.openchess.GameSession;
+import com.bsencan.openchess.actors.BoardActor;
+import com.bsencan.openchess.actors.PieceActor;
+import com.bsencan.openchess.ai.EngineType;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import entity.Move;
+import entity.Position;
+import entity.Side;
+import generated.GameModeType;
+
+/**
+ * Boots a headless libGDX backend and builds boards for the benchmarks. The
+ * game atlas is replaced by an empty one, nothing is drawn.
+ */
+final class Headless {
+
+	private Headless() {
+	}
+
+	static void boot() {
+		if (Gdx.app == null) {
+			new HeadlessApplication(new ApplicationAdapter());
+		}
+		if (Assets.gameAtlas == null) {
+			Assets.gameAtlas = new TextureAtlas();
+		}
+	}
+
+	/**
+	 * @return Board of a new session. Against the AI, the library's engine
+	 *         plays.
+	 */
+	static BoardActor newBoard(GameModeType mode, Side mySide) {
+		boot();
+		return new BoardActor(new GameSession(mode, mySide, EngineType.LIBRARY));
+	}
+
+	/**
+	 * @return Piece of the side to move with the most destinations.
+	 */
+	static PieceActor busiestPiece(BoardActor boardActor) {
+		TavleiBitboard board = boardActor.getBitboard();
+		long[] mask = new long[2];
+		int best = -1;
+		int bestCount = -1;
+		for (int square = 0; square < TavleiBitboard.SQUARES; square++) {
+			int kind = board.kindAt(square);
+			if (kind == TavleiBitboard.EMPTY
+					|| TavleiBitboard.sideOfKind(kind) != board.getSideToMove()) continue;
+			int count = board.destinations(square, mask);
+			if (count > bestCount) {
+				best = square;
+				bestCount = count;
+			}
+		}
+		return boardActor.getPieceAt(position(best));
+	}
+
+	/**
+	 * Finds moves that can be played one after another without captures and
+	 * then be taken back by playing their reverses in the same order, leaving
+	 * the position unchanged.
+	 *
+	 * @return <code>count</code> moves, sides alternating from
+	 *         <code>side</code>.
+	 */
+	static int[] quietCycle(TavleiBitboard position, int side, int count) {
+		TavleiBitboard board = new TavleiBitboard();
+		board.set(position);
+		board.setSideToMove(side);
+		int[] cycle = new int[count];
+		if (!findCycle(board, cycle, 0)) {
+			throw new IllegalStateException("No quiet move cycle in the start position");
+		}
+		return cycle;
+	}
+
+	private static boolean findCycle(TavleiBitboard board, int[] cycle, int index) {
+		if (index == cycle.length) return reversible(board, cycle);
+		int[] moves = new int[TavleiBitboard.MAX_MOVES];
+		long[] mask = new long[2];
+		int size = board.generateMoves(moves, 0);
+		for (int i = 0; i < size; i++) {
+			if (board.captures(moves[i], mask) > 0) continue;
+			cycle[index] = moves[i];
+			board.makeMove(moves[i]);
+			boolean found = findCycle(board, cycle, index + 1);
+			board.unmakeMove();
+			if (found) return true;
+		}
+		return false;
+	}
+
+	private static boolean reversible(TavleiBitboard board, int[] cycle) {
+		long[] mask = new long[2];
+		int side = board.getSideToMove();
+		int made = 0;
+		boolean ok = true;
+		for (int move : cycle) {
+			int back = TavleiBitboard.encodeMove(TavleiBitboard.moveTo(move),
+					TavleiBitboard.moveFrom(move));
+			if (!board.isLegal(TavleiBitboard.moveTo(move), TavleiBitboard.moveFrom(move))
+					|| board.captures(back, mask) > 0) {
+				ok = false;
+				break;
+			}
+			/* A reverse is played by its mover, whoever's turn it is. */
+			board.setSideToMove(TavleiBitboard.sideOfKind(board.kindAt(TavleiBitboard.moveTo(move))));
+			board.makeMove(back);
+			made++;
+		}
+		while (made-- > 0) board.unmakeMove();
+		board.setSideToMove(side);
+		return ok;
+	}
+
+	static Position position(int square) {
+		return new Position(TavleiBitboard.row(square), TavleiBitboard.col(square));
+	}
+
+	static Move move(int move) {
+		return new Move(position(TavleiBitboard.moveFrom(move)), position(TavleiBitboard.moveTo(move)));
+	}
+
+	static Move reverse(int move) {
+		return new Move(position(TavleiBitboard.moveTo(move)), position(TavleiBitboard.moveFrom(move)));
+	}
+
+}
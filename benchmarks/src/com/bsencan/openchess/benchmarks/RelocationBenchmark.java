@@ -0,0 +1,54 @@
+package com.bsencan.openchess.benchmarks;
+
+import com.bsencan.openchess.actors.BoardActor;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import entity.Move;
+import entity.Side;
+import generated.GameModeType;
+
+/**
+ * {@link BoardActor#relocatePieceAt(Move)} for two quiet moves, one of each
+ * side, and their reverses, so the board is unchanged after every
+ * invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RelocationBenchmark {
+
+	private BoardActor boardActor;
+	private final Move[] moves = new Move[4];
+
+	@Setup
+	public void setUp() {
+		this.boardActor = Headless.newBoard(GameModeType.PLAY_FROM_ONE_COMPUTER, Side.BLACK);
+		TavleiBitboard board = this.boardActor.getBitboard();
+		int[] cycle = Headless.quietCycle(board, board.getSideToMove(), 2);
+		this.moves[0] = Headless.move(cycle[0]);
+		this.moves[1] = Headless.move(cycle[1]);
+		this.moves[2] = Headless.reverse(cycle[0]);
+		this.moves[3] = Headless.reverse(cycle[1]);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(4)
+	public void relocatePieceAt() {
+		for (Move move : this.moves) {
+			this.boardActor.relocatePieceAt(move);
+		}
+		this.boardActor.getBitboard().clearHistory();
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.bsencan.openchess.benchmarks;
+
+import com.bsencan.openchess.actors.BoardActor;
+import com.bsencan.openchess.actors.BoardController;
+import com.bsencan.openchess.actors.PieceActor;
+import com.bsencan.openchess.model.LegalMoveCache;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.lang.management.ManagementFactory;
+
+import generated.GameModeType;
+
+/**
+ * Counts the bytes allocated by {@link BoardController#tap} on a headless
+ * {@link BoardActor}: selecting each piece of the side to move, which takes
+ * the highlights off the piece selected before and puts them on its
+ * destinations and captures, reading the piece's position, and tapping an
+ * empty square no piece can reach. None of it may allocate once warmed up.
+ * The queries behind it are measured on their own by the core module's
+ * <code>AllocationTester</code>.
+ * <p>
+ * Moving by taps is measured too: a piece is selected and its destination
+ * tapped, which goes through <code>checkTurn</code>,
+ * <code>proposeMove</code>, <code>relocatePieceAt</code> and the
+ * PROPOSE_MOVE dispatch to the library, for two quiet moves, one of each
+ * side, and then their reverses. Its bytes are reported but not held to
+ * zero: each move proposed is a new <code>Move</code> the library keeps,
+ * and the library allocates while it checks it. The position must be back
+ * where it started.
+ * <p>
+ * Run with <code>main</code>; needs a JVM with
+ * <code>com.sun.management.ThreadMXBean</code>.
+ */
+public class TapAllocationTester {
+
+	private static final int ROUNDS = 20000;
+	private static final int MOVE_ROUNDS = 2000;
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private static int sink;
+
+	public static void main(String[] args) {
+		BoardActor boardActor = Headless.newBoard(GameModeType.PLAY_FROM_ONE_COMPUTER, null);
+		BoardController controller = boardActor.getController();
+		TavleiBitboard board = boardActor.getBitboard();
+		PieceActor[] pieces = pieces(boardActor);
+		int empty = unreachableSquare(board, controller.getMoveCache());
+		int[] cycle = moveCycle(board);
+		long start = board.getHash();
+
+		tapAll(controller, pieces, empty);
+		long thread = Thread.currentThread().getId();
+		long before = THREADS.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < ROUNDS; i++) {
+			tapAll(controller, pieces, empty);
+		}
+		long bytes = THREADS.getThreadAllocatedBytes(thread) - before;
+		double perTap = bytes / (double) ((long) ROUNDS * (pieces.length + 1));
+
+		playCycle(boardActor, cycle);
+		before = THREADS.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < MOVE_ROUNDS; i++) {
+			playCycle(boardActor, cycle);
+		}
+		bytes = THREADS.getThreadAllocatedBytes(thread) - before;
+		double perMove = bytes / (double) ((long) MOVE_ROUNDS * cycle.length);
+		boolean restored = board.getHash() == start && board.getPly() == 0;
+
+		boolean passed = perTap < 1 && restored;
+		System.out.printf("BoardController.tap: %.1f bytes per tap%n", perTap);
+		System.out.printf("BoardController.tap, moving: %.1f bytes per move, position %s%n", perMove,
+				restored ? "restored" : "CHANGED");
+		System.out.println(passed ? "ok" : "FAILED");
+		System.exit(passed ? 0 : 1);
+	}
+
+	/**
+	 * @return Two quiet moves, one of each side, then their reverses.
+	 */
+	private static int[] moveCycle(TavleiBitboard board) {
+		int[] moves = Headless.quietCycle(board, board.getSideToMove(), 2);
+		return new int[] { moves[0], moves[1], reverse(moves[0]), reverse(moves[1]) };
+	}
+
+	private static int reverse(int move) {
+		return TavleiBitboard.encodeMove(TavleiBitboard.moveTo(move), TavleiBitboard.moveFrom(move));
+	}
+
+	/**
+	 * Plays the moves by tapping each piece and then its destination, and
+	 * forgets them, so the histories don't grow.
+	 */
+	private static void playCycle(BoardActor boardActor, int[] cycle) {
+		BoardController controller = boardActor.getController();
+		for (int move : cycle) {
+			tapSquare(controller, TavleiBitboard.moveFrom(move));
+			tapSquare(controller, TavleiBitboard.moveTo(move));
+		}
+		boardActor.getHistory().clear();
+		boardActor.getBitboard().clearHistory();
+	}
+
+	private static void tapSquare(BoardController controller, int square) {
+		controller.tap(null, TavleiBitboard.col(square) + 0.5f, TavleiBitboard.row(square) + 0.5f, 1, 0);
+	}
+
+	/**
+	 * Selects every piece in turn, then taps the empty square.
+	 */
+	private static void tapAll(BoardController controller, PieceActor[] pieces, int empty) {
+		for (PieceActor pieceActor : pieces) {
+			tapSquare(controller, pieceActor.getSquare());
+			sink += pieceActor.getPosition().getRow();
+		}
+		tapSquare(controller, empty);
+	}
+
+	/**
+	 * @return Pieces of the side to move.
+	 */
+	private static PieceActor[] pieces(BoardActor boardActor) {
+		TavleiBitboard board = boardActor.getBitboard();
+		int count = 0;
+		PieceActor[] found = new PieceActor[TavleiBitboard.SQUARES];
+		for (int square = 0; square < TavleiBitboard.SQUARES; square++) {
+			if (!board.isEmpty(square)
+					&& TavleiBitboard.sideOfKind(board.kindAt(square)) == board.getSideToMove()) {
+				found[count++] = boardActor.getPieceAt(square);
+			}
+		}
+		PieceActor[] pieces = new PieceActor[count];
+		System.arraycopy(found, 0, pieces, 0, count);
+		return pieces;
+	}
+
+	/**
+	 * @return An empty square that isn't a destination of any piece, so
+	 *         tapping it never plays a move.
+	 */
+	private static int unreachableSquare(TavleiBitboard board, LegalMoveCache cache) {
+		for (int to = 0; to < TavleiBitboard.SQUARES; to++) {
+			if (!board.isEmpty(to)) continue;
+			boolean reachable = false;
+			for (int from = 0; from < TavleiBitboard.SQUARES && !reachable; from++) {
+				reachable = !board.isEmpty(from) && cache.isLegal(from, to);
+			}
+			if (!reachable) return to;
+		}
+		throw new IllegalStateException("Every empty square can be reached");
+	}
+
+}
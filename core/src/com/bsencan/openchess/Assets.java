@@ -14,29 +14,69 @@
 package com.bsencan.openchess;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.SkinLoader;
 import com.badlogic.gdx.audio.Music;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.scenes.scene2d.ui.Skin;
 import com.bsencan.openchess.screens.GameScreen;
 import com.bsencan.openchess.screens.MainMenuScreen;
 
+import entity.Side;
+import gamemechanics.model.tavlei.TavleiPieceType;
+
 /**
  * <code>Assets</code> class is responsible for loading and disposing of all
  * game assets.
+ * <p>
+ * The game atlas and skin are loaded through an {@link AssetManager}, which
+ * counts references. {@link #queueGame()} takes a reference that is only
+ * released by {@link #dispose()}, so the atlas stays resident and a new
+ * {@link GameScreen} reuses it instead of decoding and uploading it again.
  * 
  * @author Baris Sencan
  */
 public class Assets {
 
+	/* Tile kinds of the region table. */
+	public static final int TILE_LIGHT = 0;
+	public static final int TILE_DARK = 1;
+	public static final int TILE_SPECIAL = 2;
+
+	/** Regions per tile kind: plain, move highlight, capture highlight. */
+	public static final int TILE_STATES = 3;
+
+	private static final String[] TILE_NAMES = { "tile-1", "tile-2", "tile-3" };
+	private static final int PIECE_VARIANTS = 4;
+
+	private static final String GAME_ATLAS = "atlases/open-chess-atlas.atlas";
+	private static final String GAME_SKIN = "skin-all.json";
+
 	public static Skin skin;
 	public static Music menuMusic;
 	public static TextureAtlas gameAtlas;
 
+	private static AssetManager manager;
+	private static boolean gameQueued;
+	private static Skin menuSkin;
+
+	private static TextureRegion[] regions;
+	private static TextureAtlas regionsAtlas;
+
+	private static AssetManager getManager() {
+		if (manager == null) {
+			manager = new AssetManager();
+		}
+		return manager;
+	}
+
 	/**
 	 * Loads all assets required by {@link MainMenuScreen}.
 	 */
 	public static void loadMainMenu() {
-		skin = new Skin(Gdx.files.internal("skin-labels.json"));
+		menuSkin = new Skin(Gdx.files.internal("skin-labels.json"));
+		skin = menuSkin;
 		menuMusic = Gdx.audio
 				.newMusic(Gdx.files.internal("music/fortress.ogg"));
 	}
@@ -45,23 +85,125 @@ public class Assets {
 	 * Disposes of all assets required by {@link MainMenuScreen}.
 	 */
 	public static void disposeMainMenu() {
-		skin.dispose();
+		menuSkin.dispose();
 		menuMusic.dispose();
 	}
 
 	/**
-	 * Loads all assets required by {@link GameScreen}.
+	 * Starts loading the assets required by {@link GameScreen} in the
+	 * background, and keeps them loaded until {@link #dispose()}. Does nothing
+	 * if they are queued already.
+	 */
+	public static void queueGame() {
+		if (gameQueued) return;
+		gameQueued = true;
+		getManager().load(GAME_SKIN, Skin.class, new SkinLoader.SkinParameter(GAME_ATLAS));
+	}
+
+	/**
+	 * Continues loading queued assets. Call every frame while it returns
+	 * false.
+	 *
+	 * @return Whether all queued assets are loaded.
+	 */
+	public static boolean update() {
+		return getManager().update();
+	}
+
+	/**
+	 * Loads all assets required by {@link GameScreen}. Returns at once if
+	 * {@link #queueGame()} has finished loading them.
 	 */
 	public static void loadGame() {
-		gameAtlas = new TextureAtlas(
-				Gdx.files.internal("atlases/open-chess-atlas.atlas"));
-		skin = new Skin(Gdx.files.internal("skin-all.json"), gameAtlas);
+		queueGame();
+		manager.load(GAME_SKIN, Skin.class, new SkinLoader.SkinParameter(GAME_ATLAS));
+		manager.finishLoadingAsset(GAME_SKIN);
+		skin = manager.get(GAME_SKIN, Skin.class);
+		gameAtlas = manager.get(GAME_ATLAS, TextureAtlas.class);
+		getRegions();
 	}
 
 	/**
-	 * Disposes of all assets required by {@link GameScreen}.
+	 * Releases the assets required by {@link GameScreen}. They stay loaded
+	 * for the next game.
 	 */
 	public static void disposeGame() {
-		gameAtlas.dispose();
+		manager.unload(GAME_SKIN);
+	}
+
+	/**
+	 * Disposes of all assets. Called when the application exits.
+	 */
+	public static void dispose() {
+		if (manager != null) {
+			manager.dispose();
+			manager = null;
+		}
+		gameQueued = false;
+		skin = null;
+		gameAtlas = null;
+		regions = null;
+		regionsAtlas = null;
+	}
+
+	/* -- Region table -- */
+
+	/**
+	 * Returns the regions of all pieces and tiles of {@link #gameAtlas} in one
+	 * array, looked up by name once per atlas. Index it with
+	 * {@link #pieceRegion} and {@link #tileRegion}.
+	 */
+	public static TextureRegion[] getRegions() {
+		if (regionsAtlas != gameAtlas) {
+			resolveRegions();
+		}
+		return regions;
+	}
+
+	/**
+	 * @return Index of the region of a piece in {@link #getRegions()}.
+	 */
+	public static int pieceRegion(Side side, TavleiPieceType type, int variant) {
+		return (side.ordinal() * TavleiPieceType.values().length + type.ordinal())
+				* PIECE_VARIANTS + variant;
+	}
+
+	/**
+	 * @return Number of regions a piece of the type can be drawn with.
+	 */
+	public static int pieceVariants(TavleiPieceType type) {
+		return type == TavleiPieceType.ROOK ? PIECE_VARIANTS : 1;
+	}
+
+	/**
+	 * @param kind
+	 *            {@link #TILE_LIGHT}, {@link #TILE_DARK} or
+	 *            {@link #TILE_SPECIAL}.
+	 * @return Index of the plain region of the tile in {@link #getRegions()},
+	 *         followed by its highlighted ones.
+	 */
+	public static int tileRegion(int kind) {
+		return Side.values().length * TavleiPieceType.values().length * PIECE_VARIANTS
+				+ kind * TILE_STATES;
+	}
+
+	private static void resolveRegions() {
+		TextureRegion[] table = new TextureRegion[tileRegion(TILE_NAMES.length)];
+		for (Side side : Side.values()) {
+			for (TavleiPieceType type : TavleiPieceType.values()) {
+				String name = (side.toString() + "-" + type.toString()).toLowerCase();
+				for (int variant = 0; variant < pieceVariants(type); variant++) {
+					table[pieceRegion(side, type, variant)] = gameAtlas.findRegion(name + (variant + 1));
+				}
+			}
+		}
+		TextureRegion captured = gameAtlas.findRegion("tile-captured");
+		for (int kind = 0; kind < TILE_NAMES.length; kind++) {
+			table[tileRegion(kind)] = gameAtlas.findRegion(TILE_NAMES[kind]);
+			table[tileRegion(kind) + 1] = gameAtlas.findRegion(TILE_NAMES[kind] + "-highlighted");
+			table[tileRegion(kind) + 2] = captured;
+		}
+		regions = table;
+		regionsAtlas = gameAtlas;
 	}
 }
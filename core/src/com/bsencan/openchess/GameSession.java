@@ -0,0 +1,323 @@
+package com.bsencan.openchess;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Disposable;
+import com.bsencan.openchess.actors.MoveHistory;
+import com.bsencan.openchess.ai.EngineType;
+import com.bsencan.openchess.ai.OpeningBook;
+import com.bsencan.openchess.ai.Tablebase;
+import com.bsencan.openchess.events.EventBus;
+import com.bsencan.openchess.events.LibraryBridge;
+import com.bsencan.openchess.model.Positions;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import entity.Move;
+import entity.Side;
+import gamemechanics.controller.tavlei.TavleiControllerManager;
+import gamemechanics.model.event.EventManager;
+import gamemechanics.model.tavlei.TavleiPiece;
+import generated.GameModeType;
+
+/**
+ * One game and its settings: the mode, the local player's side, the
+ * opponent, the moves made, the event bus and the library's game
+ * controller. Every board plays a session of its own, so games don't share
+ * state and several can live in one process.
+ * <p>
+ * The library keeps the events of its controllers in one static event
+ * space, so only one session at a time has a live controller: sessions take
+ * turns, they don't play at once. A session that needs its controller takes
+ * the space over, and the one that had it builds a new controller from its
+ * moves the next time it needs one, with the events of the replay muted.
+ * Against the library's own engine only the player's moves are replayed and
+ * the engine's answers are checked against the history; the replay stops at
+ * the first answer that differs.
+ * <p>
+ * Library calls aren't thread safe, so the sessions that use the library
+ * must do so on one thread, the first to do it: the render thread in the
+ * game, a thread of their own in the desktop tools. Taking the space over
+ * from another thread throws. The library is free for another thread again
+ * once the last session that used it is disposed, its thread has ended or
+ * {@link #releaseLibrary()} is called, as the game does when it is created
+ * anew with a new render thread.
+ */
+public class GameSession implements Disposable {
+
+	private static final String LIBRARY_SPACE = "default";
+
+	private static final String TAG = "GameSession";
+
+	/* Session whose controller listens to the library's event space. */
+	private static GameSession libraryOwner;
+	/* Only thread the library is used on. */
+	private static Thread libraryThread;
+	/* Sessions that have had a controller and aren't disposed. */
+	private static int librarySessions;
+
+	private final GameModeType gameModeType;
+	private final EngineType engineType;
+	private Side mySide;
+	private long aiBudgetMillis = OpenChess.aiBudgetMillis;
+	private boolean aiPonder = OpenChess.aiPonder;
+	private String serverHost = OpenChess.serverHost;
+	private int serverPort = OpenChess.serverPort;
+	private OpeningBook openingBook;
+	private Tablebase tablebase;
+
+	private final EventBus events = new EventBus();
+	private final LibraryBridge libraryBridge = new LibraryBridge(this.events);
+	private final MoveHistory history = new MoveHistory();
+	private TavleiControllerManager controllerManager;
+	/* Whether the controller is behind the history. */
+	private boolean libraryStale = true;
+
+	/**
+	 * @param mySide
+	 *            Side of the local player against the AI or a remote
+	 *            player, or null to take the side the server gives.
+	 * @param engineType
+	 *            Opponent of {@link GameModeType#PLAY_WITH_AI} games.
+	 */
+	public GameSession(GameModeType gameModeType, Side mySide, EngineType engineType) {
+		this.gameModeType = gameModeType;
+		this.mySide = mySide;
+		this.engineType = engineType;
+	}
+
+	public GameModeType getGameModeType() {
+		return this.gameModeType;
+	}
+
+	public EngineType getEngineType() {
+		return this.engineType;
+	}
+
+	public Side getMySide() {
+		return this.mySide;
+	}
+
+	public void setMySide(Side mySide) {
+		this.mySide = mySide;
+	}
+
+	/**
+	 * @return Thinking time of the in-core AI per move, in milliseconds.
+	 */
+	public long getAiBudgetMillis() {
+		return this.aiBudgetMillis;
+	}
+
+	public void setAiBudgetMillis(long aiBudgetMillis) {
+		this.aiBudgetMillis = aiBudgetMillis;
+	}
+
+	/**
+	 * @return Whether the in-core AI keeps thinking while the player is on
+	 *         the move.
+	 */
+	public boolean isAiPonder() {
+		return this.aiPonder;
+	}
+
+	public void setAiPonder(boolean aiPonder) {
+		this.aiPonder = aiPonder;
+	}
+
+	/**
+	 * @return Game server of {@link EngineType#REMOTE} games, or null for a
+	 *         server in the process.
+	 */
+	public String getServerHost() {
+		return this.serverHost;
+	}
+
+	public int getServerPort() {
+		return this.serverPort;
+	}
+
+	public void setServer(String host, int port) {
+		this.serverHost = host;
+		this.serverPort = port;
+	}
+
+	/**
+	 * @return Book of the in-core AI's opening replies, or null for the one
+	 *         at {@link OpeningBook#DEFAULT_PATH}.
+	 */
+	public OpeningBook getOpeningBook() {
+		return this.openingBook;
+	}
+
+	public void setOpeningBook(OpeningBook openingBook) {
+		this.openingBook = openingBook;
+	}
+
+	/**
+	 * @return Endgame results of the in-core AI, or null for the ones at
+	 *         {@link Tablebase#DEFAULT_PATH}.
+	 */
+	public Tablebase getTablebase() {
+		return this.tablebase;
+	}
+
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+	/**
+	 * @return Whether the AI opponent is the library's own.
+	 */
+	public boolean isLibraryEngine() {
+		return this.gameModeType == GameModeType.PLAY_WITH_AI && this.engineType == EngineType.LIBRARY;
+	}
+
+	/**
+	 * @return Whether the local player moves the pieces of the side.
+	 */
+	public boolean isMine(Side side) {
+		return this.gameModeType == GameModeType.PLAY_FROM_ONE_COMPUTER || side != null && side == this.mySide;
+	}
+
+	/**
+	 * @return Event bus of the game, connected to the game controller.
+	 */
+	public EventBus getEvents() {
+		return this.events;
+	}
+
+	public LibraryBridge getLibraryBridge() {
+		return this.libraryBridge;
+	}
+
+	public MoveHistory getHistory() {
+		return this.history;
+	}
+
+	/**
+	 * @return Library controller of the game, made the library's current one
+	 *         and brought up to date with the history first if needed. The
+	 *         first call starts the game.
+	 */
+	public TavleiControllerManager getControllerManager() {
+		if (libraryOwner != this || this.libraryStale) this.claimLibrary();
+		return this.controllerManager;
+	}
+
+	/**
+	 * Has the controller built again from the history when next needed,
+	 * after moves have been undone, redone or loaded.
+	 */
+	public void markLibraryStale() {
+		this.libraryStale = true;
+	}
+
+	/**
+	 * Builds a controller in a new event space and replays the moves of the
+	 * history on it, as the library can't take moves back.
+	 */
+	private void claimLibrary() {
+		checkLibraryThread();
+		if (this.controllerManager == null) {
+			synchronized (GameSession.class) {
+				librarySessions++;
+			}
+		}
+		boolean engine = this.isLibraryEngine();
+		boolean replay = this.controllerManager != null || this.history.size() > 0;
+		if (libraryOwner != null && libraryOwner != this) libraryOwner.libraryStale = true;
+		libraryOwner = this;
+		this.libraryStale = false;
+
+		EventManager.destroyEventSpace(LIBRARY_SPACE);
+		this.libraryBridge.connect();
+		this.controllerManager = new TavleiControllerManager();
+		if (engine) this.controllerManager.playWithCompute(this.mySide);
+		else this.controllerManager.playWithLocalUser();
+		this.libraryBridge.setMuted(replay);
+		this.controllerManager.startGame();
+		for (int i = 0; i < this.history.size(); i++) {
+			int move = this.history.getMove(i);
+			if (engine && TavleiBitboard.toSide(this.history.getSide(i)) != this.mySide) {
+				/* The engine has answered the move before, or opened the game. */
+				if (this.libraryBridge.getLastMove() == move) continue;
+				/* Sessions also run headless, without an application. */
+				if (Gdx.app != null) Gdx.app.error(TAG, "The library's engine answers ply " + i + " differently, replay stopped");
+				break;
+			}
+			Move libraryMove = new Move(Positions.get(TavleiBitboard.moveFrom(move)),
+					Positions.get(TavleiBitboard.moveTo(move)));
+			Side side = TavleiBitboard.toSide(this.history.getSide(i));
+			this.controllerManager.getBoard().addInfoMove(libraryMove, side);
+			this.libraryBridge.forward(libraryMove, side);
+		}
+		this.libraryBridge.setMuted(false);
+	}
+
+	/**
+	 * Disconnects the game from the library and drops the listeners of its
+	 * event bus.
+	 */
+	@Override
+	public void dispose() {
+		this.libraryBridge.dispose();
+		this.events.clear();
+		if (libraryOwner == this) {
+			checkLibraryThread();
+			libraryOwner = null;
+			EventManager.destroyEventSpace(LIBRARY_SPACE);
+		}
+		if (this.controllerManager != null) {
+			this.controllerManager = null;
+			synchronized (GameSession.class) {
+				if (--librarySessions == 0) libraryThread = null;
+			}
+		}
+	}
+
+	/**
+	 * Frees the library for the next thread to use it. The sessions of the
+	 * old thread build new controllers when they next need one, so they must
+	 * not be used on it any more.
+	 */
+	public static synchronized void releaseLibrary() {
+		if (libraryOwner != null) libraryOwner.libraryStale = true;
+		libraryOwner = null;
+		libraryThread = null;
+	}
+
+	/**
+	 * Reads the start position from a library controller of a session of
+	 * its own. Like every use of the library, only on the library's thread.
+	 *
+	 * @return Start position of the library, attackers to move.
+	 */
+	public static TavleiBitboard loadStartPosition() {
+		GameSession session = new GameSession(GameModeType.PLAY_FROM_ONE_COMPUTER, null, EngineType.ALPHA_BETA);
+		try {
+			TavleiBitboard board = new TavleiBitboard();
+			session.getControllerManager().getBoard().getAllActivePiecesPositions().forEach((piece, position) ->
+					board.put(TavleiBitboard.square(position), TavleiBitboard.kind((TavleiPiece) piece)));
+			return board;
+		} finally {
+			session.dispose();
+		}
+	}
+
+	/**
+	 * Makes the calling thread the library's if none is yet or the last one
+	 * has ended.
+	 *
+	 * @throws IllegalStateException
+	 *             If the library is used on another thread.
+	 */
+	private static void checkLibraryThread() {
+		Thread current = Thread.currentThread();
+		synchronized (GameSession.class) {
+			if (libraryThread == null || !libraryThread.isAlive()) libraryThread = current;
+		}
+		if (libraryThread != current) {
+			throw new IllegalStateException("The library is used on thread " + libraryThread.getName());
+		}
+	}
+
+}
@@ -15,10 +15,10 @@ package com.bsencan.openchess;
 
 import com.badlogic.gdx.Game;
 import com.badlogic.gdx.Gdx;
+import com.bsencan.openchess.net.NetProtocol;
+import com.bsencan.openchess.screens.GameScreen;
 import com.bsencan.openchess.screens.MainMenuScreen;
-
-import entity.Side;
-import generated.GameModeType;
+import com.bsencan.openchess.view.DebugHud;
 
 /**
  * Main game class. Used just for transitioning between different screens.
@@ -29,10 +29,33 @@ public class OpenChess extends Game {
 
 	/**
 	 * Provides global access to the active <code>Game</code> instance.
+	 * Everything about a game is in its {@link GameSession}; the fields below
+	 * are the preferences new sessions start with.
 	 */
 	public static Game game;
-	public static GameModeType gameModeType=GameModeType.PLAY_FROM_ONE_COMPUTER;
-	public static Side mySide=Side.BLACK;
+	/**
+	 * Thinking time of the in-core AI per move, in milliseconds.
+	 */
+	public static long aiBudgetMillis=300;
+	/**
+	 * Whether the in-core AI keeps thinking while the player is on the move.
+	 */
+	public static boolean aiPonder=true;
+	/**
+	 * Game server of <code>EngineType.REMOTE</code> games, or null to play a
+	 * stand-in opponent on a server in the process.
+	 */
+	public static String serverHost=null;
+	public static int serverPort=NetProtocol.DEFAULT_PORT;
+	/**
+	 * Whether game screens show the debug HUD. F3 toggles it while playing.
+	 */
+	public static boolean debugHud=false;
+	/**
+	 * Garbage collection count of the debug HUD, set by backends whose
+	 * runtime has no collector MX beans. Null to use the beans.
+	 */
+	public static DebugHud.GcCounter gcCounter=null;
 
 	/**
 	 * Unit width of the screen. Everything in this game is rendered in game
@@ -46,7 +69,17 @@ public class OpenChess extends Game {
 	public void create() {
 		Gdx.graphics.setContinuousRendering(false);
 		game = this;
-		this.setScreen(new MainMenuScreen());
+		/* A recreated activity renders, and uses the library, on a new thread. */
+		GameSession.releaseLibrary();
+		/* A game left in progress comes back at once, without the menu. */
+		GameScreen resumed = GameScreen.resumeSaved();
+		this.setScreen(resumed != null ? resumed : new MainMenuScreen());
+	}
+
+	@Override
+	public void dispose() {
+		super.dispose();
+		Assets.dispose();
 	}
 
 }
@@ -13,30 +13,68 @@
 
 package com.bsencan.openchess.actors;
 
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.scenes.scene2d.Actor;
+import com.badlogic.gdx.scenes.scene2d.Touchable;
+import com.badlogic.gdx.scenes.scene2d.actions.Actions;
 import com.badlogic.gdx.scenes.scene2d.ui.Table;
-import com.bsencan.openchess.OpenChess;
+import com.badlogic.gdx.utils.Array;
+import com.bsencan.openchess.GameSession;
+import com.bsencan.openchess.ai.AiPlayer;
+import com.bsencan.openchess.events.EventBus;
+import com.bsencan.openchess.events.LibraryBridge;
+import com.bsencan.openchess.journal.EventJournal;
+import com.bsencan.openchess.journal.GameSnapshot;
+import com.bsencan.openchess.journal.JournalWriter;
+import com.bsencan.openchess.model.Positions;
+import com.bsencan.openchess.net.RemotePlayer;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.util.List;
 
 import android.support.annotation.NonNull;
 
 import entity.*;
 import gamemechanics.controller.tavlei.TavleiControllerManager;
 import gamemechanics.model.Board;
-import gamemechanics.model.event.EventManager;
 import gamemechanics.model.tavlei.TavleiPiece;
+import generated.GameModeType;
 
 /**
  * A chess board with pieceActors on it. Every instance of <code>BoardActor</code> is
  * actually a playable chess game.
+ * <p>
+ * Tiles and pieces are not children of the board. The board draws them from
+ * a {@link BoardCache} image in which only changed squares are redrawn, and
+ * is the only actor taps can hit; {@link BoardController} finds the tapped
+ * square from the tap coordinates.
  * 
  * @author Baris Sencan
  */
 public class BoardActor extends Table {
 
+	private static final String TAG = "Board";
+
+	/** Duration of a move animation, in seconds. */
+	public static final float MOVE_SECONDS = 0.2f;
+
+	/** Duration of a captured piece's fade out, in seconds. */
+	public static final float CAPTURE_SECONDS = 0.25f;
+
+	/**
+	 * @return Library controller of the game, brought up to date first if
+	 *         moves have been undone or redone.
+	 */
 	public TavleiControllerManager getControllerManager() {
-		return controllerManager;
+		return session.getControllerManager();
 	}
 
-	private TavleiControllerManager controllerManager;
+	private final GameSession session;
+	private final BoardController controller;
+	private AiPlayer aiPlayer;
+	private RemotePlayer remotePlayer;
 	public PieceActor selectedPieceActor;
 
 	/**
@@ -49,6 +87,33 @@ public class BoardActor extends Table {
 	 */
 	private final PieceActor[][] pieceActors;
 
+	/**
+	 * Packed copy of the position for mask based move generation and capture
+	 * checks.
+	 */
+	private final TavleiBitboard bitboard = new TavleiBitboard();
+
+	/**
+	 * Position the game started from, the history's moves lead from it to
+	 * {@link #bitboard}.
+	 */
+	private final TavleiBitboard startPosition = new TavleiBitboard();
+
+	private final BoardCache cache = new BoardCache(this);
+
+	/**
+	 * Captured pieces still fading out. They are no longer on the board.
+	 */
+	private final Array<PieceActor> fadingPieces = new Array<PieceActor>();
+	private boolean animating;
+	private boolean animated = true;
+
+	private final MoveHistory history;
+	private final JournalWriter journal;
+
+	/* Scratch mask of the captures the bitboard finds. */
+	private final long[] mask = new long[2];
+
 	/* -- Getters -- */
 
 	public Tile getTileAt(@NonNull Position position) {
@@ -59,25 +124,125 @@ public class BoardActor extends Table {
 		return this.pieceActors[position.getCol()][position.getRow()];
 	}
 
+	public Tile getTileAt(int square) {
+		return this.tiles[TavleiBitboard.col(square)][TavleiBitboard.row(square)];
+	}
+
+	public PieceActor getPieceAt(int square) {
+		return this.pieceActors[TavleiBitboard.col(square)][TavleiBitboard.row(square)];
+	}
+
 	public Board getBoardModel()
 	{
-		return controllerManager.getBoard();
+		return getControllerManager().getBoard();
+	}
+	public MoveHistory getHistory()
+	{
+		return history;
+	}
+	public TavleiBitboard getBitboard()
+	{
+		return bitboard;
+	}
+	public TavleiBitboard getStartPosition()
+	{
+		return startPosition;
+	}
+	public BoardController getController()
+	{
+		return controller;
+	}
+	public GameSession getSession()
+	{
+		return session;
+	}
+	/**
+	 * @return Event bus of this game, connected to the game controller.
+	 */
+	public EventBus getEvents()
+	{
+		return session.getEvents();
+	}
+	public LibraryBridge getLibraryBridge()
+	{
+		return session.getLibraryBridge();
+	}
+	/**
+	 * Turns move and capture animations on or off. Off, pieces jump to their
+	 * squares, which is what fast-forwarding a replay wants.
+	 */
+	public void setAnimated(boolean animated)
+	{
+		this.animated = animated;
+	}
+	/**
+	 * @return In-core AI opponent or null if the library plays or there is no AI.
+	 */
+	public AiPlayer getAiPlayer()
+	{
+		return aiPlayer;
+	}
+	/**
+	 * @return Opponent on a game server, or null if the game is local.
+	 */
+	public RemotePlayer getRemotePlayer()
+	{
+		return remotePlayer;
 	}
 	public byte getSize()
 	{
 		return	9;//for speed
 	}
 	/**
-	 * Creates an empty board.
+	 * Creates an empty board playing the session's game.
+	 */
+	public BoardActor(GameSession session) {
+		this(session, null);
+	}
+	/**
+	 * Creates an empty board that records its game.
+	 *
+	 * @param journal
+	 *            Journal to record every game event in from the start, or
+	 *            null.
+	 */
+	public BoardActor(GameSession session, JournalWriter journal) {
+		this(session, journal, null);
+	}
+	/**
+	 * Creates a board that goes on with a saved game. The library's
+	 * controller is only built, and the moves replayed on it, when it is
+	 * first needed, which keeps it out of the cold start.
+	 *
+	 * @param session
+	 *            Game to play, new. The board disposes it.
+	 * @param journal
+	 *            Journal to record the game's further events in, or null.
+	 * @param snapshot
+	 *            Game to go on with, or null to start a new one. The
+	 *            session must have its settings, and the library can't be
+	 *            the engine.
 	 */
-	public BoardActor() {
-		EventManager.destroyEventSpace("default");
-		controllerManager=new TavleiControllerManager();
+	public BoardActor(GameSession session, JournalWriter journal, GameSnapshot snapshot) {
+		this.session=session;
+		this.history=session.getHistory();
+		this.journal=journal;
+		session.getLibraryBridge().setJournal(journal);
 
-		switch (OpenChess.gameModeType)
+		if (session.getGameModeType()==GameModeType.PLAY_WITH_AI)
 		{
-			case PLAY_FROM_ONE_COMPUTER:controllerManager.playWithLocalUser(); break;
-			case PLAY_WITH_AI:controllerManager.playWithCompute(OpenChess.mySide);break;
+			switch (session.getEngineType())
+			{
+				case LIBRARY:
+					/* The session's controller plays. */
+					break;
+				case ALPHA_BETA:
+					aiPlayer=new AiPlayer(this, session.getMySide()==Side.WHITE ? Side.BLACK : Side.WHITE, session.getAiBudgetMillis(), session.isAiPonder(), session.getOpeningBook(), session.getTablebase());
+					break;
+				case REMOTE:
+					remotePlayer=new RemotePlayer(this, session.getServerHost(), session.getServerPort());
+					break;
+			}
 		}
 
 		this.tiles=new Tile[getSize()][getSize()];
@@ -85,8 +250,8 @@ public class BoardActor extends Table {
 
 		/* Basic board setup. */
 		this.setBounds(0, 0, getSize(),  getSize());
-		this.setClip(true);
-		this.addListener(new BoardController(this));
+		this.controller = new BoardController(this);
+		this.addListener(this.controller);
 
 		/* Add tiles. */
 		for (int i = 0; i < this.tiles.length; i++) {
@@ -98,19 +263,296 @@ public class BoardActor extends Table {
 				{
 					this.tiles[i][j] = new Tile(i, j, ((i + j) % 2) == 0);
 				}
-				this.addActor(this.tiles[i][j]);
 			}
 		}
-		start();
+		if (snapshot==null) start();
+		else resume(snapshot);
 	}
 	private boolean isSpecialTile(int x, int y)
 	{
-		return x==4&&y==4 || x==0&&y==0 || x==8 &&y==0 || x==0&&y==8 || x==8&&y==8;
+		return TavleiBitboard.isSpecial(TavleiBitboard.square(y, x));
 	}
 	private void start()
 	{
-		controllerManager.startGame();
 		this.fill();
+		if (aiPlayer!=null) aiPlayer.start();
+		if (remotePlayer!=null) remotePlayer.start();
+	}
+	/**
+	 * Takes over the snapshot's position and undo stack as they were saved,
+	 * without playing the moves again, and places the actors of the
+	 * position. Captured pieces get actors too, to come back with an undo.
+	 */
+	private void resume(GameSnapshot snapshot)
+	{
+		startPosition.set(snapshot.getStart());
+		bitboard.setWithHistory(snapshot.getPosition());
+		history.clear();
+		int count=snapshot.getMoveCount();
+		for (int i=0; i<count; i++)
+		{
+			int side=snapshot.getSide(i);
+			history.push(snapshot.getMove(i), side);
+			int victims=side==TavleiBitboard.ATTACKERS ? TavleiBitboard.DEFENDER : TavleiBitboard.ATTACKER;
+			for (long lo=snapshot.getCapturedLo(i); lo!=0; lo&=lo-1)
+			{
+				history.addCaptured(capturedActor(Long.numberOfTrailingZeros(lo), victims, i==count-1));
+			}
+			for (long hi=snapshot.getCapturedHi(i); hi!=0; hi&=hi-1)
+			{
+				history.addCaptured(capturedActor(64+Long.numberOfTrailingZeros(hi), victims, i==count-1));
+			}
+		}
+		long lastLo=bitboard.getLastCapturedLo();
+		long lastHi=bitboard.getLastCapturedHi();
+		for (int square=0; square<TavleiBitboard.SQUARES; square++)
+		{
+			int kind=bitboard.kindAt(square);
+			/* A captured prince stays on the bitboard, but not on the board. */
+			if (kind!=TavleiBitboard.EMPTY && !TavleiBitboard.isSet(lastLo, lastHi, square))
+			{
+				addPiece(new PieceActor(square, kind));
+			}
+		}
+		cache.markAllDirty();
+		session.markLibraryStale();
+		if (aiPlayer!=null) aiPlayer.start();
+	}
+	/**
+	 * @param last
+	 *            Whether the move is the last one. Capturing the prince ends
+	 *            the game, so only the last move can have, and the prince is
+	 *            then still on the bitboard.
+	 * @return Actor of a piece captured on the square by a resumed move.
+	 */
+	private PieceActor capturedActor(int square, int victims, boolean last)
+	{
+		int kind=last && square==bitboard.getPrinceSquare() ? TavleiBitboard.PRINCE : victims;
+		return new PieceActor(square, kind);
+	}
+
+	/**
+	 * Marks a square to be redrawn into the board image, after its tile
+	 * highlight or its piece has changed.
+	 */
+	public void markDirty(int square)
+	{
+		cache.markDirty(square);
+	}
+
+	/**
+	 * Redraws the whole board image on the next frame.
+	 */
+	public void markAllDirty()
+	{
+		cache.markAllDirty();
+	}
+
+	/**
+	 * Draws the board image, then the pieces that are being animated on top
+	 * of it. Nothing is clipped or transformed.
+	 */
+	@Override
+	public void draw(Batch batch, float parentAlpha) {
+		float x = this.getX();
+		float y = this.getY();
+		this.cache.draw(batch, x, y);
+		for (int col = 0; col < this.pieceActors.length; col++) {
+			for (int row = 0; row < this.pieceActors[col].length; row++) {
+				PieceActor pieceActor = this.pieceActors[col][row];
+				if (pieceActor == null || !pieceActor.hasActions()) continue;
+				batch.draw(pieceActor.getRegion(), x + pieceActor.getX(), y + pieceActor.getY(), 1, 1);
+				/* Put it into the image once it comes to rest. */
+				this.cache.markDirty(TavleiBitboard.square(row, col));
+			}
+		}
+		for (int i = 0; i < this.fadingPieces.size; i++) {
+			PieceActor pieceActor = this.fadingPieces.get(i);
+			Color color = pieceActor.getColor();
+			batch.setColor(color.r, color.g, color.b, color.a * parentAlpha);
+			batch.draw(pieceActor.getRegion(), x + pieceActor.getX(), y + pieceActor.getY(), 1, 1);
+		}
+		batch.setColor(Color.WHITE);
+	}
+
+	/**
+	 * @return Whether a move or capture animation is running.
+	 */
+	public boolean isAnimating()
+	{
+		return animating;
+	}
+
+	/**
+	 * Runs the actions of the board and of its pieces. Rendering is
+	 * continuous while any of them runs and goes back to on demand after the
+	 * last one has finished.
+	 */
+	@Override
+	public void act(float delta) {
+		super.act(delta);
+		boolean running = false;
+		for (int col = 0; col < this.pieceActors.length; col++) {
+			for (int row = 0; row < this.pieceActors[col].length; row++) {
+				PieceActor pieceActor = this.pieceActors[col][row];
+				if (pieceActor == null) continue;
+				pieceActor.act(delta);
+				running |= pieceActor.hasActions();
+			}
+		}
+		for (int i = this.fadingPieces.size - 1; i >= 0; i--) {
+			PieceActor pieceActor = this.fadingPieces.get(i);
+			pieceActor.act(delta);
+			if (pieceActor.hasActions()) running = true;
+			else this.fadingPieces.removeIndex(i);
+		}
+		if (running != this.animating) {
+			this.animating = running;
+			Gdx.graphics.setContinuousRendering(running);
+			Gdx.graphics.requestRendering();
+		}
+	}
+
+	/**
+	 * Any point on the board hits the board itself.
+	 */
+	@Override
+	public Actor hit(float x, float y, boolean touchable) {
+		if (touchable && this.getTouchable() != Touchable.enabled) return null;
+		return x >= 0 && x < this.getWidth() && y >= 0 && y < this.getHeight() ? this : null;
+	}
+
+	/**
+	 * @return Whether the last move can be taken back. Not when the library
+	 *         plays a side, it can't be made to forget its own moves, nor in
+	 *         a network game.
+	 */
+	public boolean canUndo()
+	{
+		return !session.isLibraryEngine() && remotePlayer==null && history.canUndo();
+	}
+
+	public boolean canRedo()
+	{
+		return !session.isLibraryEngine() && remotePlayer==null && history.canRedo();
+	}
+
+	/**
+	 * Takes back the last move: the piece goes back and the pieces it
+	 * captured return to their squares. The library catches up the next
+	 * time it is used. Recorded in the journal, if any.
+	 */
+	public void undoMove()
+	{
+		int index=takeBack();
+		session.markLibraryStale();
+		record(EventJournal.UNDO, index);
+	}
+
+	private void record(int type, int index)
+	{
+		if (journal==null) return;
+		Side side=TavleiBitboard.toSide(history.getSide(index));
+		journal.record(type, EventJournal.side(side), history.getMove(index));
+	}
+
+	/**
+	 * Takes back a move the library rejected. The library never made it, so
+	 * it stays up to date, and the move can't be redone.
+	 *
+	 * @param index
+	 *            Index of the move in the history, as returned by
+	 *            {@link #relocatePieceAt}. Nothing is taken back unless it is
+	 *            the last move.
+	 */
+	public void rejectMove(int index)
+	{
+		if (index<0 || index!=history.size()-1)
+		{
+			Gdx.app.error(TAG, "Rejected move "+index+" is not the last of "+history.size());
+			return;
+		}
+		takeBack();
+		history.truncate();
+	}
+
+	/**
+	 * @return History index of the move taken back.
+	 */
+	private int takeBack()
+	{
+		int index=history.undo();
+		int move=history.getMove(index);
+		int from=TavleiBitboard.moveFrom(move);
+		int to=TavleiBitboard.moveTo(move);
+		bitboard.unmakeMove();
+		placeActor(getPieceAt(to), from, to);
+
+		for (int i=history.capturedStart(index); i<history.capturedEnd(index); i++)
+		{
+			PieceActor pieceActor=history.getCaptured(i);
+			int square=pieceActor.getSquare();
+			fadingPieces.removeValue(pieceActor, true);
+			pieceActor.clearActions();
+			pieceActor.getColor().a=1;
+			pieceActors[TavleiBitboard.col(square)][TavleiBitboard.row(square)]=pieceActor;
+			cache.markDirty(square);
+		}
+		selectedPieceActor=null;
+		return index;
+	}
+
+	/**
+	 * Makes the last undone move again, capturing the same pieces, those the
+	 * library captured the first time. Recorded in the journal, if any.
+	 */
+	public void redoMove()
+	{
+		int index=history.redo();
+		int move=history.getMove(index);
+		int from=TavleiBitboard.moveFrom(move);
+		int to=TavleiBitboard.moveTo(move);
+		bitboard.makeMove(move, history.getCapturedLo(index), history.getCapturedHi(index));
+		placeActor(getPieceAt(from), to, from);
+
+		for (int i=history.capturedStart(index); i<history.capturedEnd(index); i++)
+		{
+			removeActorAt(history.getCaptured(i).getSquare());
+		}
+		selectedPieceActor=null;
+		session.markLibraryStale();
+		record(EventJournal.REDO, index);
+	}
+
+	private void placeActor(PieceActor pieceActor, int square, int from)
+	{
+		pieceActors[TavleiBitboard.col(from)][TavleiBitboard.row(from)]=null;
+		pieceActors[TavleiBitboard.col(square)][TavleiBitboard.row(square)]=pieceActor;
+		if (animated) pieceActor.moveTo(Positions.get(square), MOVE_SECONDS);
+		else pieceActor.setPosition(Positions.get(square));
+		cache.markDirty(from);
+		cache.markDirty(square);
+	}
+
+	/**
+	 * Stops the AI opponent from thinking on the player's time while the
+	 * application is in the background.
+	 */
+	public void pause()
+	{
+		if (aiPlayer!=null) aiPlayer.pause();
+	}
+
+	/**
+	 * Stops the AI opponent or leaves the network game, if any, and disposes
+	 * the session. The board can't be played afterwards.
+	 */
+	public void dispose()
+	{
+		if (aiPlayer!=null) aiPlayer.dispose();
+		if (remotePlayer!=null) remotePlayer.dispose();
+		session.dispose();
+		cache.dispose();
 	}
 
 	/**
@@ -119,8 +561,14 @@ public class BoardActor extends Table {
 	 */
 
 	public void fill() {
-		this.controllerManager.getBoard().getAllActivePiecesPositions().forEach((piece, position) ->
-			this.addPiece(new PieceActor(position, (TavleiPiece) piece)));
+		this.bitboard.clear();
+		this.history.clear();
+		this.cache.markAllDirty();
+		this.getControllerManager().getBoard().getAllActivePiecesPositions().forEach((piece, position) -> {
+			this.addPiece(new PieceActor(position, (TavleiPiece) piece));
+			this.bitboard.put(TavleiBitboard.square(position), TavleiBitboard.kind((TavleiPiece) piece));
+		});
+		this.startPosition.set(this.bitboard);
 	}
 
 	/**
@@ -130,39 +578,92 @@ public class BoardActor extends Table {
 	 *            PieceActor to place.
 	 */
 	public void addPiece(@NonNull PieceActor pieceActor) {
-		this.addActor(pieceActor);
 		this.pieceActors[(int) pieceActor.getX()][(int) pieceActor.getY()] = pieceActor;
+		this.cache.markDirty(pieceActor.getSquare());
 	}
 
 	/**
-	 * Changes the location of a piece.
+	 * Changes the location of a piece. The pieces captured are those of the
+	 * move's defeated list, filled in by the library; the bitboard follows
+	 * them, and a capture its own rules see differently is logged.
 	 *
+	 * @return Index of the move in the history, or -1 if there is no piece
+	 *         to move, as when the library reports a move already made.
 	 */
-	public void relocatePieceAt(@NonNull Move move) {
+	public int relocatePieceAt(@NonNull Move move) {
 		Position start=move.getStart();
 		Position destination=move.getDestination();
 		PieceActor pieceActor = getPieceAt(move.getStart());
-		if (pieceActor==null) return;
+		if (pieceActor==null) return -1;
 
 		this.pieceActors[start.getCol()][start.getRow()] = null;
 		this.pieceActors[destination.getCol()][destination.getRow()] = pieceActor;
 
-		pieceActor.setPosition(destination);
+		if (animated) pieceActor.moveTo(destination, MOVE_SECONDS);
+		else pieceActor.setPosition(destination);
+		this.cache.markDirty(TavleiBitboard.square(start));
+		this.cache.markDirty(TavleiBitboard.square(destination));
+		int side=this.bitboard.getSideToMove();
+		int encoded=TavleiBitboard.encodeMove(TavleiBitboard.square(start), TavleiBitboard.square(destination));
+
+		//Captured pieces, by the library's rules
+		long lo=0, hi=0;
+		List<Position> defeated=move.getDefeated();
+		for (int i=0; defeated!=null && i<defeated.size(); i++)
+		{
+			int square=TavleiBitboard.square(defeated.get(i));
+			if (square<64) lo|=1L<<square;
+			else hi|=1L<<(square-64);
+		}
+		this.bitboard.captures(encoded, mask);
+		if (mask[0]!=lo || mask[1]!=hi)
+		{
+			Gdx.app.error(TAG, "Captures of move "+encoded+" differ from the library's: "
+					+Long.toHexString(mask[1])+":"+Long.toHexString(mask[0])+" against "
+					+Long.toHexString(hi)+":"+Long.toHexString(lo));
+		}
+		this.bitboard.makeMove(encoded, lo, hi);
+		this.history.push(encoded, side);
+		captureActors(lo, hi);
+		return this.history.size()-1;
+	}
+
+	/**
+	 * Takes the actors of the captured pieces off the board and records them
+	 * with the last move of the history.
+	 */
+	private void captureActors(long lo, long hi)
+	{
+		for (; lo != 0; lo &= lo - 1) {
+			captureActorAt(Long.numberOfTrailingZeros(lo));
+		}
+		for (; hi != 0; hi &= hi - 1) {
+			captureActorAt(64 + Long.numberOfTrailingZeros(hi));
+		}
+	}
 
-		//Remove captured pieces
-		move.getDefeated().forEach(this::removePieceAt);
+	private void captureActorAt(int square)
+	{
+		PieceActor pieceActor=removeActorAt(square);
+		if (pieceActor!=null) history.addCaptured(pieceActor);
 	}
 	/**
-	 * Changes the location of a piece. Doesn't check if a piece exists at the
-	 * given location.
-	 *
+	 * @return The actor removed, or null if the square was empty.
 	 */
-	public void removePieceAt(@NonNull Position position) {
+	private PieceActor removeActorAt(int square) {
+		int col = TavleiBitboard.col(square);
+		int row = TavleiBitboard.row(square);
+		PieceActor pieceActor = this.pieceActors[col][row];
+		if (pieceActor==null) return null;
+		this.pieceActors[col][row] = null;
+		this.cache.markDirty(square);
 
-		PieceActor pieceActor = getPieceAt(position);
-		if (pieceActor==null) return;
-		pieceActor.remove();
-		this.pieceActors[position.getCol()][position.getRow()] = null;
+		pieceActor.clearActions();
+		if (animated) {
+			pieceActor.addAction(Actions.fadeOut(CAPTURE_SECONDS));
+			this.fadingPieces.add(pieceActor);
+		}
+		return pieceActor;
 	}
 
 
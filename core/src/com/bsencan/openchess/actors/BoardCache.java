@@ -0,0 +1,120 @@
+package com.bsencan.openchess.actors;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.viewport.Viewport;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+/**
+ * Image of a {@link BoardActor}'s tiles and resting pieces, kept in a
+ * {@link FrameBuffer} at screen resolution. Only the squares marked dirty are
+ * drawn again, so a board that hasn't changed costs a single blit. Pieces
+ * with running actions are left out; the board draws them on top.
+ */
+class BoardCache implements Disposable {
+
+	private final BoardActor boardActor;
+	private final boolean[] dirty = new boolean[TavleiBitboard.SQUARES];
+	private boolean anyDirty = true;
+	private boolean allDirty = true;
+
+	private FrameBuffer frameBuffer;
+	private TextureRegion image;
+	private int pixels;
+	private final Matrix4 projection = new Matrix4();
+	private final Matrix4 screenProjection = new Matrix4();
+
+	BoardCache(BoardActor boardActor) {
+		this.boardActor = boardActor;
+	}
+
+	void markDirty(int square) {
+		this.dirty[square] = true;
+		this.anyDirty = true;
+	}
+
+	/**
+	 * Redraws the whole image on the next frame. Needed after the GL context
+	 * has been lost, which keeps the frame buffer but not its contents.
+	 */
+	void markAllDirty() {
+		this.allDirty = true;
+		this.anyDirty = true;
+	}
+
+	/**
+	 * Brings the image up to date and draws it. Must be called between
+	 * <code>begin</code> and <code>end</code> of the batch.
+	 */
+	void draw(Batch batch, float x, float y) {
+		int size = this.boardActor.getSize();
+		Viewport viewport = this.boardActor.getStage().getViewport();
+		int pixels = MathUtils.ceil(viewport.getScreenWidth() / viewport.getWorldWidth() * size);
+		if (this.frameBuffer == null || pixels != this.pixels) {
+			this.create(Math.max(pixels, size));
+		}
+		if (this.anyDirty) {
+			this.update(batch, viewport);
+		}
+
+		/* Every cell is opaque. */
+		batch.disableBlending();
+		batch.draw(this.image, x, y, size, size);
+		batch.enableBlending();
+	}
+
+	private void create(int pixels) {
+		this.dispose();
+		this.pixels = pixels;
+		this.frameBuffer = new FrameBuffer(Pixmap.Format.RGBA8888, pixels, pixels, false);
+		this.image = new TextureRegion(this.frameBuffer.getColorBufferTexture());
+		this.image.flip(false, true);
+		this.projection.setToOrtho2D(0, 0, this.boardActor.getSize(), this.boardActor.getSize());
+		this.markAllDirty();
+	}
+
+	private void update(Batch batch, Viewport viewport) {
+		batch.end();
+		this.screenProjection.set(batch.getProjectionMatrix());
+		this.frameBuffer.begin();
+		batch.setProjectionMatrix(this.projection);
+		batch.begin();
+
+		batch.disableBlending();
+		for (int square = 0; square < TavleiBitboard.SQUARES; square++) {
+			if (!this.allDirty && !this.dirty[square]) continue;
+			batch.draw(this.boardActor.getTileAt(square).getRegion(),
+					TavleiBitboard.col(square), TavleiBitboard.row(square), 1, 1);
+		}
+		batch.enableBlending();
+		for (int square = 0; square < TavleiBitboard.SQUARES; square++) {
+			if (!this.allDirty && !this.dirty[square]) continue;
+			this.dirty[square] = false;
+			PieceActor pieceActor = this.boardActor.getPieceAt(square);
+			if (pieceActor == null || pieceActor.hasActions()) continue;
+			batch.draw(pieceActor.getRegion(), TavleiBitboard.col(square), TavleiBitboard.row(square), 1, 1);
+		}
+		this.anyDirty = false;
+		this.allDirty = false;
+
+		batch.end();
+		this.frameBuffer.end(viewport.getScreenX(), viewport.getScreenY(),
+				viewport.getScreenWidth(), viewport.getScreenHeight());
+		batch.setProjectionMatrix(this.screenProjection);
+		batch.begin();
+	}
+
+	@Override
+	public void dispose() {
+		if (this.frameBuffer != null) {
+			this.frameBuffer.dispose();
+			this.frameBuffer = null;
+		}
+	}
+
+}
@@ -14,24 +14,25 @@
 package com.bsencan.openchess.actors;
 
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.scenes.scene2d.Actor;
 import com.badlogic.gdx.scenes.scene2d.InputEvent;
 import com.badlogic.gdx.scenes.scene2d.utils.ActorGestureListener;
 import com.badlogic.gdx.utils.Array;
-import com.bsencan.openchess.OpenChess;
+import com.bsencan.openchess.ai.AiPlayer;
+import com.bsencan.openchess.events.EventBus;
+import com.bsencan.openchess.events.EventType;
+import com.bsencan.openchess.events.MoveEvent;
+import com.bsencan.openchess.events.RulesErrorEvent;
+import com.bsencan.openchess.model.LegalMoveCache;
+import com.bsencan.openchess.model.Positions;
+import com.bsencan.openchess.model.TavleiBitboard;
 
 
-import java.util.LinkedHashSet;
+import java.util.Collections;
 import java.util.Set;
 
 import entity.Move;
-import entity.Position;
 import entity.Side;
-import entity.event.GameEvent;
-import entity.event.GameMechanicEventType;
 import gamemechanics.controller.tavlei.TavleiController;
-import gamemechanics.model.event.EventManager;
-import generated.GameModeType;
 
 
 /**
@@ -42,67 +43,102 @@ public class BoardController extends ActorGestureListener{
 	private static final String TAG = "Chess";
 	private final BoardActor boardActor;
 	private final Array<Tile> highlightedTiles = new Array<Tile>();
-	private Move lastMove;
+	private final long[] mask = new long[2];
+	private final LegalMoveCache moveCache;
+	private final EventBus events;
+	private final MoveEvent proposeEvent = new MoveEvent();
+	/* History index of the last move proposed, -1 once it can't be rejected. */
+	private int proposedIndex = -1;
+	private final EventBus.Listener<MoveEvent> moveListener = this::onMoveMake;
+	private final EventBus.Listener<RulesErrorEvent> rulesErrorListener = this::onGameRulesError;
 
 	public BoardController(BoardActor boardActor) {
 		super();
 		this.boardActor = boardActor;
+		this.moveCache = new LegalMoveCache(boardActor.getBitboard());
+		this.events = boardActor.getEvents();
 		subscribeEvents();
 	}
+
+	/**
+	 * @return Cache of the moves used for highlighting and validation.
+	 */
+	public LegalMoveCache getMoveCache()
+	{
+		return moveCache;
+	}
 	private boolean checkSide(PieceActor pieceActor)
 	{
-		return (OpenChess.gameModeType==GameModeType.PLAY_FROM_ONE_COMPUTER || pieceActor.getSide()==OpenChess.mySide);
+		return boardActor.getSession().isMine(pieceActor.getSide());
 	}
-	private boolean checkSide(Move move)
+	private boolean checkSide(int start)
 	{
-		return (OpenChess.gameModeType==GameModeType.PLAY_FROM_ONE_COMPUTER || boardActor.getPieceAt(move.getStart()).getSide()==OpenChess.mySide);
+		return boardActor.getSession().isMine(boardActor.getPieceAt(start).getSide())
+				&& (boardActor.getAiPlayer()==null || !boardActor.getAiPlayer().isThinking())
+				&& (boardActor.getRemotePlayer()==null || boardActor.getRemotePlayer().isPlaying());
 	}
 	public boolean checkTurn(Move move)
 	{
-		return checkSide(move)&&getValidMoves(boardActor.getPieceAt(move.getStart())).stream().anyMatch(move::equals);
+		return checkTurn(TavleiBitboard.square(move.getStart()), TavleiBitboard.square(move.getDestination()));
+	}
+	/**
+	 * Same as {@link #checkTurn(Move)} for square indexes, without creating
+	 * the move.
+	 */
+	public boolean checkTurn(int start, int destination)
+	{
+		return checkSide(start)&&moveCache.isLegal(start, destination);
 	}
 	@Override
 	public void tap(InputEvent event, float x, float y, int count, int button) {
-		Actor target = event.getTarget(); // Tapped actor.
-		int tx = (int) target.getX(); // Tapped tile x.
-		int ty = (int) target.getY(); // Tapped tile y.
-		Position destination=new Position((int)target.getY(), (int)target.getX());
+		/* Tiles are 1 unit wide, x and y are in board coordinates. */
+		int tx = (int) x; // Tapped tile x.
+		int ty = (int) y; // Tapped tile y.
+		if (tx < 0 || ty < 0 || tx >= boardActor.getSize() || ty >= boardActor.getSize()) return;
+		int square=TavleiBitboard.square(ty, tx);
 
-		if (target instanceof PieceActor) {
-			PieceActor pieceActor = (PieceActor) target;
+		PieceActor pieceActor = boardActor.getPieceAt(square);
+		if (pieceActor != null) {
 			if (checkSide(pieceActor)) {
 				this.selectPiece(pieceActor);
 			}
 		} else {
-			this.localMovePiece(this.boardActor.selectedPieceActor, destination);
+			this.localMovePiece(this.boardActor.selectedPieceActor, square);
 		}
 	}
 
 	/*
 	Low level move for the local users made turn. Check turn and control highlight
 	 */
-	private void localMovePiece(PieceActor pieceActor, Position destination) {
+	private void localMovePiece(PieceActor pieceActor, int destination) {
 		if (pieceActor == null) {
 			return;
 		}
-		Move move=new Move(pieceActor.getPosition(), destination);
-		if (!checkTurn(move)) return;
+		int start=pieceActor.getSquare();
+		if (!checkTurn(start, destination)) return;
+
+		/* The library keeps the move, so it is created only once accepted. */
+		proposeMove(new Move(Positions.get(start), Positions.get(destination)), pieceActor.getSide());
+	}
 
-		this.lastMove=move;
-		boardActor.getControllerManager().getBoard().addInfoMove(move, pieceActor.getSide());
+	/**
+	 * Plays a move on the board and proposes it to the game controller. Used
+	 * for the local user's turns and by in-core AI players.
+	 */
+	public void proposeMove(Move move, Side side) {
+		boardActor.getControllerManager().getBoard().addInfoMove(move, side);
 
 		/* Remove highlights. */
 		this.removeMoveHighlights();
 
 		/* Move */
-		this.boardActor.relocatePieceAt(move);
+		this.proposedIndex = this.boardActor.relocatePieceAt(move);
+		this.moveCache.invalidate();
 
-
-		Side side=this.boardActor.selectedPieceActor.getSide();
 		/* Deselect and advance round. */
 		this.boardActor.selectedPieceActor = null;
 
-		getEventManager().triggerEvent(new GameEvent(GameMechanicEventType.PROPOSE_MOVE, lastMove).setSourceSide(side));
+		events.post(EventType.PROPOSE_MOVE, proposeEvent.set(move, side));
 	}
 
 	private void selectPiece(PieceActor pieceActor) {
@@ -118,13 +154,13 @@ public class BoardController extends ActorGestureListener{
 			TavleiController controller = boardActor.getControllerManager().getCurrentController();
 
 			moves= controller.getMovesForPieceAt(pieceActor.getPosition());
-			if (moves==null) moves=new LinkedHashSet<>();
+			if (moves==null) moves=Collections.emptySet();
 			return moves;
 		}
 		catch (NullPointerException e)
 		{
 			Gdx.app.debug(TAG, "Trying to move between games. Mustn't affect on game"+e);
-			return new LinkedHashSet<>();
+			return Collections.emptySet();
 		}
 	}
 	/**
@@ -135,83 +171,143 @@ public class BoardController extends ActorGestureListener{
 	 * @return Resulting tile array.
 	 */
 	public Array<Tile> getValidMoveTiles(PieceActor pieceActor) {
-		Array<Tile> tiles = new Array<>();
-		for (entity.Move move : getValidMoves( pieceActor)) {
-			tiles.add(boardActor.getTileAt(move.getDestination()));
-		}
-		return tiles;
+		return getValidMoveTiles(pieceActor, new Array<Tile>());
+	}
+
+	/**
+	 * Adds the tiles to <code>tiles</code> instead of a new array.
+	 *
+	 * @return <code>tiles</code>.
+	 */
+	public Array<Tile> getValidMoveTiles(PieceActor pieceActor, Array<Tile> tiles) {
+		moveCache.destinations(pieceActor.getSquare(), mask);
+		return addTiles(mask[0], mask[1], tiles);
 	}
 
 	public Array<Tile> getCaptureMoveTiles(PieceActor pieceActor) {
-		Array<Tile> tiles = new Array<Tile>();
-		for (entity.Move move : getValidMoves( pieceActor)) {
-			move.getDefeated().forEach(position -> tiles.add(boardActor.getTileAt(position)));
+		return getCaptureMoveTiles(pieceActor, new Array<Tile>());
+	}
+
+	/**
+	 * Adds the tiles to <code>tiles</code> instead of a new array.
+	 *
+	 * @return <code>tiles</code>.
+	 */
+	public Array<Tile> getCaptureMoveTiles(PieceActor pieceActor, Array<Tile> tiles) {
+		moveCache.captureTargets(pieceActor.getSquare(), mask);
+		return addTiles(mask[0], mask[1], tiles);
+	}
+
+	private Array<Tile> addTiles(long lo, long hi, Array<Tile> tiles) {
+		while (lo != 0 || hi != 0) {
+			int square = TavleiBitboard.firstSquare(lo, hi);
+			if (lo != 0) lo &= lo - 1;
+			else hi &= hi - 1;
+			tiles.add(boardActor.getTileAt(square));
 		}
 		return tiles;
 	}
 	// TODO: Complete before writing javadoc comments for this.
 	private void addMoveHighlightsForPiece(PieceActor pieceActor) {
-		getValidMoveTiles(pieceActor).forEach(tile -> {
-			this.highlightedTiles.add(tile);
-			tile.highlightMove();
-		});
-		getCaptureMoveTiles(pieceActor).forEach(tile -> {
-			this.highlightedTiles.add(tile);
-			tile.highlightCapture();
-		});
+		int moves = this.highlightedTiles.size;
+		getValidMoveTiles(pieceActor, this.highlightedTiles);
+		for (int i = moves; i < this.highlightedTiles.size; i++) {
+			this.highlightedTiles.get(i).highlightMove();
+			this.boardActor.markDirty(this.highlightedTiles.get(i).getSquare());
+		}
+		int captures = this.highlightedTiles.size;
+		getCaptureMoveTiles(pieceActor, this.highlightedTiles);
+		for (int i = captures; i < this.highlightedTiles.size; i++) {
+			this.highlightedTiles.get(i).highlightCapture();
+			this.boardActor.markDirty(this.highlightedTiles.get(i).getSquare());
+		}
 	}
 
 	private void removeMoveHighlights() {
 		while (this.highlightedTiles.size > 0) {
-			this.highlightedTiles.pop().removeHighlight();
+			Tile tile = this.highlightedTiles.pop();
+			tile.removeHighlight();
+			this.boardActor.markDirty(tile.getSquare());
 		}
 	}
 
-	private EventManager getEventManager() {
-		return EventManager.getEventListenerForMe(null, this);
+	/**
+	 * Takes back the last move, and against the in-core AI every move back to
+	 * the player's turn. Does nothing if there is no move to take back.
+	 */
+	public void undoMove()
+	{
+		if (!boardActor.canUndo()) return;
+		AiPlayer aiPlayer=boardActor.getAiPlayer();
+		if (aiPlayer!=null) aiPlayer.cancel();
+		removeMoveHighlights();
+		proposedIndex=-1;
+		do {
+			boardActor.undoMove();
+		} while (isAiTurn(aiPlayer) && boardActor.canUndo());
+		historyChanged(aiPlayer);
 	}
 
 	/**
-	 * Tries to undo move. If it doesn't possible, do nothing.
+	 * Makes the last undone move again, and against the in-core AI its reply
+	 * too.
 	 */
-	public void undoMove()
+	public void redoMove()
 	{
-		try {
-			this.localMovePiece(boardActor.getPieceAt(lastMove.getDestination()), lastMove.getStart());
-		}
-		catch (NullPointerException e)
-		{
-			Gdx.app.error(TAG, "Can not undo move: "+e.toString());
-		}
+		if (!boardActor.canRedo()) return;
+		AiPlayer aiPlayer=boardActor.getAiPlayer();
+		if (aiPlayer!=null) aiPlayer.cancel();
+		removeMoveHighlights();
+		proposedIndex=-1;
+		do {
+			boardActor.redoMove();
+		} while (isAiTurn(aiPlayer) && boardActor.canRedo());
+		historyChanged(aiPlayer);
 	}
-	private void onMoveMake(GameEvent event)
+
+	private boolean isAiTurn(AiPlayer aiPlayer)
+	{
+		return aiPlayer!=null && boardActor.getBitboard().getSideToMove()==TavleiBitboard.side(aiPlayer.getSide());
+	}
+
+	private void historyChanged(AiPlayer aiPlayer)
+	{
+		moveCache.invalidate();
+		/* Replies if the AI is left to move, when it opened the game. */
+		if (aiPlayer!=null) aiPlayer.start();
+		Gdx.graphics.requestRendering();
+	}
+	private void onMoveMake(MoveEvent event)
 	{
-		Move move= (Move) event.getData();
-		this.boardActor.relocatePieceAt(move);
+		this.boardActor.relocatePieceAt(event.getMove());
+		this.moveCache.invalidate();
 		Gdx.graphics.requestRendering();
 	}
-	private void onGameRulesError(GameEvent event)
+	private void onGameRulesError(RulesErrorEvent event)
 	{
-		Gdx.app.error(TAG, "Game rule broken:"+event.getData().toString());
-		undoMove();
+		Gdx.app.error(TAG, "Game rule broken:"+event.getReason());
+		rejectProposal();
 	}
-	private void onGameOver(GameEvent event)
+
+	/**
+	 * Takes back the last proposed move, rejected by the game controller or
+	 * the server. Only that move is taken back, and only while it is the
+	 * last one made.
+	 */
+	public void rejectProposal()
 	{
-		boardActor.fire(new GameOverEventActor(event));
+		removeMoveHighlights();
+		boardActor.rejectMove(proposedIndex);
+		proposedIndex=-1;
+		moveCache.invalidate();
+		Gdx.graphics.requestRendering();
 	}
 
 	private void subscribeEvents()
 	{
-		getEventManager().unsubscribeMe();
-		getEventManager().addListener(GameMechanicEventType.MOVE, this::onMoveMake);
-		getEventManager().addListener(GameMechanicEventType.GAME_RULES_ERROR, this::onGameRulesError);
-		getEventManager().addListener(GameMechanicEventType.GAME_OVER, this::onGameOver);
-	}
-	/*@Override
-	protected void finalize() throws Throwable {
-		super.finalize();
-		getEventManager().unsubscribeMe();
-	}*/
+		events.subscribe(EventType.MOVE, moveListener);
+		events.subscribe(EventType.RULES_ERROR, rulesErrorListener);
+	}
 
 
 }
@@ -0,0 +1,137 @@
+package com.bsencan.openchess.actors;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+/**
+ * Moves made on a {@link BoardActor}, with the actors each one captured, for
+ * undo and redo. Undone moves stay behind the current one until a new move is
+ * made, so they can be redone. The captured actors are kept in one array,
+ * each move remembering where its own end.
+ */
+public class MoveHistory {
+
+	private final IntArray moves = new IntArray();
+	private final IntArray capturedEnds = new IntArray();
+	private final Array<PieceActor> captured = new Array<PieceActor>();
+	private int size;
+
+	/**
+	 * @return Number of moves made and not undone.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	public boolean canUndo() {
+		return this.size > 0;
+	}
+
+	public boolean canRedo() {
+		return this.size < this.moves.size;
+	}
+
+	/**
+	 * Adds a move after the current one, dropping any undone moves.
+	 *
+	 * @param move
+	 *            Move as encoded by {@link TavleiBitboard}.
+	 * @param side
+	 *            Side that made it, {@link TavleiBitboard#ATTACKERS} or
+	 *            {@link TavleiBitboard#DEFENDERS}.
+	 */
+	void push(int move, int side) {
+		this.truncate();
+		this.moves.add(move | side << 16);
+		this.capturedEnds.add(this.captured.size);
+		this.size++;
+	}
+
+	/**
+	 * Adds an actor captured by the last move pushed.
+	 */
+	void addCaptured(PieceActor pieceActor) {
+		this.captured.add(pieceActor);
+		this.capturedEnds.incr(this.size - 1, 1);
+	}
+
+	/**
+	 * Drops the undone moves.
+	 */
+	void truncate() {
+		if (this.size == this.moves.size) return;
+		this.moves.truncate(this.size);
+		this.capturedEnds.truncate(this.size);
+		this.captured.truncate(this.capturedStart(this.size));
+	}
+
+	/**
+	 * @return Index of the move undone.
+	 */
+	int undo() {
+		return --this.size;
+	}
+
+	/**
+	 * @return Index of the move redone.
+	 */
+	int redo() {
+		return this.size++;
+	}
+
+	public void clear() {
+		this.moves.clear();
+		this.capturedEnds.clear();
+		this.captured.clear();
+		this.size = 0;
+	}
+
+	/**
+	 * @return Move as encoded by {@link TavleiBitboard}.
+	 */
+	public int getMove(int index) {
+		return this.moves.get(index) & 0xFFFF;
+	}
+
+	public int getSide(int index) {
+		return this.moves.get(index) >>> 16;
+	}
+
+	/**
+	 * @return Squares of the pieces the move captured, low word.
+	 */
+	public long getCapturedLo(int index) {
+		long lo = 0;
+		for (int i = this.capturedStart(index); i < this.capturedEnd(index); i++) {
+			int square = this.captured.get(i).getSquare();
+			if (square < 64) lo |= 1L << square;
+		}
+		return lo;
+	}
+
+	/**
+	 * @return Squares of the pieces the move captured, high word.
+	 */
+	public long getCapturedHi(int index) {
+		long hi = 0;
+		for (int i = this.capturedStart(index); i < this.capturedEnd(index); i++) {
+			int square = this.captured.get(i).getSquare();
+			if (square >= 64) hi |= 1L << (square - 64);
+		}
+		return hi;
+	}
+
+	int capturedStart(int index) {
+		return index == 0 ? 0 : this.capturedEnds.get(index - 1);
+	}
+
+	int capturedEnd(int index) {
+		return this.capturedEnds.get(index);
+	}
+
+	PieceActor getCaptured(int i) {
+		return this.captured.get(i);
+	}
+
+}
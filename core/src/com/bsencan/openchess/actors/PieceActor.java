@@ -15,12 +15,15 @@ package com.bsencan.openchess.actors;
 
 import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Interpolation;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.scenes.scene2d.Actor;
+import com.badlogic.gdx.scenes.scene2d.actions.Actions;
 import com.bsencan.openchess.Assets;
+import com.bsencan.openchess.model.Positions;
+import com.bsencan.openchess.model.TavleiBitboard;
 
 
-import java.util.Random;
-
 import entity.Position;
 import entity.Side;
 import gamemechanics.model.tavlei.TavleiPiece;
@@ -35,29 +38,53 @@ import gamemechanics.model.tavlei.TavleiPieceType;
 public class PieceActor extends Actor {
 
 	//public boolean isWhite;
-	private TavleiPiece piece;
+	private final Side side;
 
 
 	private final TextureRegion textureRegion;
 
+	/**
+	 * Square the piece stands on. Its x and y lag behind while it slides
+	 * there.
+	 */
+	private int square;
 
 	public Side getSide(){
-		return piece.getSide();
+		return side;
 	}
-	private static String getTextureName(TavleiPiece tavleiPiece)
+	/**
+	 * @return Region of the piece's side and type, in a random variant.
+	 */
+	private static TextureRegion getTextureRegion(Side side, TavleiPieceType type)
 	{
-		byte num;
-		if (tavleiPiece.getType()== TavleiPieceType.ROOK) num= (byte) (new Random().nextInt(4)+1);
-		else num= (byte) (new Random().nextInt(1)+1);
-
-		return (tavleiPiece.getSide().toString()+"-"+tavleiPiece.getType().toString()).toLowerCase()+num;
+		int variant=MathUtils.random(Assets.pieceVariants(type)-1);
+		return Assets.getRegions()[Assets.pieceRegion(side, type, variant)];
 	}
 	public PieceActor(entity.Position position, TavleiPiece tavleiPiece) {
-		this.setBounds(position.getCol(), position.getRow(), 1, 1);
-		this.piece = tavleiPiece;
-		this.textureRegion = Assets.gameAtlas.findRegion(PieceActor.getTextureName(tavleiPiece));
+		this(TavleiBitboard.square(position), tavleiPiece.getSide(), tavleiPiece.getType());
+	}
+	/**
+	 * Creates the actor of a piece of the bitboard, without a library piece.
+	 *
+	 * @param kind
+	 *            {@link TavleiBitboard#ATTACKER}, {@link TavleiBitboard#DEFENDER}
+	 *            or {@link TavleiBitboard#PRINCE}.
+	 */
+	public PieceActor(int square, int kind) {
+		this(square, TavleiBitboard.toSide(TavleiBitboard.sideOfKind(kind)),
+				kind == TavleiBitboard.PRINCE ? TavleiPieceType.KING : TavleiPieceType.ROOK);
 	}
+	private PieceActor(int square, Side side, TavleiPieceType type) {
+		this.setBounds(TavleiBitboard.col(square), TavleiBitboard.row(square), 1, 1);
+		this.square = square;
+		this.side = side;
+		this.textureRegion = PieceActor.getTextureRegion(side, type);
+	}
+
 
+	public TextureRegion getRegion() {
+		return this.textureRegion;
+	}
 
 	@Override
 	public void draw(Batch batch, float parentAlpha) {
@@ -66,12 +93,32 @@ public class PieceActor extends Actor {
 	}
 	public entity.Position getPosition()
 	{
-		return new entity.Position((int)this.getY(),(int)getX());
+		return Positions.get(getSquare());
+	}
+
+	/**
+	 * @return Square index of the piece, see {@link TavleiBitboard#square(int, int)}.
+	 */
+	public int getSquare()
+	{
+		return square;
 	}
 
 	public PieceActor setPosition(Position position){
+		this.square = TavleiBitboard.square(position);
+		this.clearActions();
 		this.setX(position.getCol());
 		this.setY(position.getRow());
 		return this;
 	}
+
+	/**
+	 * Slides the piece to a position. It stands there for the game at once.
+	 */
+	public PieceActor moveTo(Position position, float duration){
+		this.square = TavleiBitboard.square(position);
+		this.clearActions();
+		this.addAction(Actions.moveTo(position.getCol(), position.getRow(), duration, Interpolation.pow2Out));
+		return this;
+	}
 }
@@ -14,13 +14,7 @@ public class SpecialTile extends Tile {
      * @param y      Vertical index of the tile.
      */
     public SpecialTile(int x, int y) {
-        super(x,y);
-        textures.put(StateType.NONE, Assets.gameAtlas.findRegion("tile-3"));
-        textures.put(StateType.HIGHLIGHTED_MOVE, Assets.gameAtlas
-                    .findRegion("tile-3-highlighted"));
-        textures.put(StateType.HIGHLIGHTED_CAPTURE, Assets.gameAtlas
-                .findRegion("tile-captured"));
-
+        super(x, y, Assets.TILE_SPECIAL);
     }
 
 }
@@ -17,8 +17,7 @@ import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.scenes.scene2d.Actor;
 import com.bsencan.openchess.Assets;
-
-import java.util.EnumMap;
+import com.bsencan.openchess.model.TavleiBitboard;
 
 /**
  * Represents a single tile on a chess board.
@@ -32,9 +31,16 @@ public class Tile extends Actor {
 			HIGHLIGHTED_MOVE,
 			HIGHLIGHTED_CAPTURE
 	};
-	protected EnumMap<StateType, TextureRegion> textures= new EnumMap<>(StateType.class);
 	StateType highState=StateType.NONE;
 
+	/**
+	 * Region table of the game atlas and the index of this tile's plain
+	 * region in it. The highlighted regions follow in {@link StateType}
+	 * order.
+	 */
+	private final TextureRegion[] regions = Assets.getRegions();
+	private final int region;
+
 	/**
 	 * Creates a board tile.
 	 * 
@@ -46,29 +52,36 @@ public class Tile extends Actor {
 	 *            Determines whether the tile will be light or dark colored.
 	 */
 	public Tile(int x, int y, boolean isDark) {
-
-		this(x,y);
-		if (isDark) {
-			textures.put(StateType.NONE, Assets.gameAtlas.findRegion("tile-2"));
-			textures.put(StateType.HIGHLIGHTED_MOVE, Assets.gameAtlas
-					.findRegion("tile-2-highlighted"));
-		} else {
-			textures.put(StateType.NONE, Assets.gameAtlas.findRegion("tile-1"));
-			textures.put(StateType.HIGHLIGHTED_MOVE, Assets.gameAtlas
-					.findRegion("tile-1-highlighted"));
-		}
-		textures.put(StateType.HIGHLIGHTED_CAPTURE, Assets.gameAtlas
-				.findRegion("tile-captured"));
+		this(x, y, isDark ? Assets.TILE_DARK : Assets.TILE_LIGHT);
 	}
 
-	public Tile(int x, int y) {
+	/**
+	 * @param kind
+	 *            Tile kind of {@link Assets#tileRegion(int)}.
+	 */
+	protected Tile(int x, int y, int kind) {
 		this.setBounds( x, y,1,1);
+		this.region = Assets.tileRegion(kind);
+	}
+
+	/**
+	 * @return Square index of the tile, see {@link TavleiBitboard#square(int, int)}.
+	 */
+	public int getSquare() {
+		return TavleiBitboard.square((int) this.getY(), (int) this.getX());
+	}
+
+	/**
+	 * @return Region for the current highlight state.
+	 */
+	public TextureRegion getRegion() {
+		return this.regions[this.region + this.highState.ordinal()];
 	}
 
 	@Override
 	public void draw(Batch batch, float parentAlpha) {
 		super.draw(batch, parentAlpha);
-		batch.draw(this.textures.get(this.highState), this.getX(), this.getY(),1,1);
+		batch.draw(this.getRegion(), this.getX(), this.getY(),1,1);
 	}
 	public void highlightMove()
 	{
@@ -0,0 +1,358 @@
+package com.bsencan.openchess.ai;
+
+import com.badlogic.gdx.Gdx;
+import com.bsencan.openchess.actors.BoardActor;
+import com.bsencan.openchess.events.EventBus;
+import com.bsencan.openchess.events.EventType;
+import com.bsencan.openchess.events.MoveEvent;
+import com.bsencan.openchess.events.RulesErrorEvent;
+import com.bsencan.openchess.model.Positions;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import entity.Move;
+import entity.Side;
+
+/**
+ * Plays one side of a game on a {@link BoardActor} with a
+ * {@link SearchEngine}. Replies to the opponent's PROPOSE_MOVE events through
+ * the same path as the local user, so the library controller validates its
+ * moves like any other.
+ * <p>
+ * Positions in the {@link OpeningBook} are answered from it at once, without
+ * a search. Endgames are searched with the {@link Tablebase}, which scores
+ * their positions exactly. Both are opened on the worker thread, as the
+ * first opening of a file may copy it out of the assets. The search runs on
+ * a copy of the position on a worker thread of its own. The chosen move is
+ * posted back to the render thread, where it is proposed and the resulting
+ * MOVE event fired, so input and rendering stay responsive while the engine
+ * thinks. If the game controller rejects it, the position is searched again
+ * without it.
+ * <p>
+ * With pondering on, the worker keeps searching while the opponent thinks. It
+ * guesses the opponent's move from the transposition table and searches the
+ * position after it. If the guess is played, that search becomes the reply
+ * and gets the rest of the normal budget. Otherwise it is stopped and only
+ * its table entries are kept.
+ */
+public class AiPlayer {
+
+	private static final String TAG = "AI";
+
+	/** Longest a ponder search may run while the opponent thinks. */
+	private static final long PONDER_LIMIT_MILLIS = 30000;
+
+	private final BoardActor boardActor;
+	private final Side side;
+	private final long budgetMillis;
+	private final boolean ponder;
+	/* Set on the worker thread before its first search. */
+	private volatile OpeningBook book;
+	private final SearchEngine engine = new SearchEngine();
+	private final EventBus.Listener<MoveEvent> proposeListener = this::onProposeMove;
+	private final EventBus.Listener<RulesErrorEvent> rulesErrorListener = this::onRulesError;
+	private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "tavlei-ai");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.NORM_PRIORITY - 1);
+		return thread;
+	});
+
+	/**
+	 * Incremented for every search started or cancelled. A result is only
+	 * played if no newer search has been started since.
+	 */
+	private volatile int generation;
+	private volatile boolean thinking;
+
+	/* Last move proposed, on the render thread. */
+	private int played = TavleiBitboard.NO_MOVE;
+
+	/* Ponder state, guarded by this. */
+	private Future<?> ponderTask;
+	private int ponderMove = TavleiBitboard.NO_MOVE;
+	private long ponderStart;
+	private boolean ponderHit;
+	private boolean ponderFinished;
+	private int ponderResult = TavleiBitboard.NO_MOVE;
+
+	/**
+	 * @param budgetMillis
+	 *            Time the engine may think per move.
+	 * @param ponder
+	 *            Whether to think on the opponent's time too.
+	 * @param book
+	 *            Book of opening replies, or null for the default one.
+	 * @param tablebase
+	 *            Results of endgame positions, or null for the default one.
+	 */
+	public AiPlayer(BoardActor boardActor, Side side, long budgetMillis, boolean ponder, OpeningBook book,
+			Tablebase tablebase) {
+		this.boardActor = boardActor;
+		this.side = side;
+		this.budgetMillis = budgetMillis;
+		this.ponder = ponder;
+		worker.execute(() -> {
+			this.book = book != null ? book : OpeningBook.getDefault();
+			engine.setTablebase(tablebase != null ? tablebase : Tablebase.getDefault());
+		});
+		boardActor.getEvents().subscribe(EventType.PROPOSE_MOVE, proposeListener);
+		boardActor.getEvents().subscribe(EventType.RULES_ERROR, rulesErrorListener);
+	}
+
+	public Side getSide() {
+		return side;
+	}
+
+	public SearchEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * @return Whether a search is running or its move is about to be played.
+	 *         Pondering doesn't count.
+	 */
+	public boolean isThinking() {
+		return thinking;
+	}
+
+	/**
+	 * Makes the first move if the AI side opens the game.
+	 */
+	public void start() {
+		if (isMyTurn()) Gdx.app.postRunnable(this::reply);
+	}
+
+	private void onProposeMove(MoveEvent event)
+	{
+		if (event.getSide() == side) return;
+		Move move = event.getMove();
+		/* Reply once the opponent's move has been dispatched to everyone. */
+		Gdx.app.postRunnable(() -> onOpponentMoved(move));
+	}
+
+	/**
+	 * Once the rejected move has been taken back, searches again without it
+	 * if the AI is left to move. A rejected move of the opponent leaves the
+	 * opponent to move.
+	 */
+	private void onRulesError(RulesErrorEvent event)
+	{
+		int move = played;
+		if (move == TavleiBitboard.NO_MOVE) return;
+		Gdx.app.postRunnable(() -> {
+			if (thinking || !isMyTurn()) return;
+			Gdx.app.error(TAG, "move " + move + " rejected, searching again");
+			engine.exclude(boardActor.getBitboard(), move);
+			reply();
+		});
+	}
+
+	/**
+	 * Turns a correctly guessed move into the reply, anything else stops
+	 * pondering and starts a normal search. Runs on the render thread.
+	 */
+	private void onOpponentMoved(Move move) {
+		int played = TavleiBitboard.encodeMove(TavleiBitboard.square(move.getStart()),
+				TavleiBitboard.square(move.getDestination()));
+		int result;
+		synchronized (this) {
+			if (ponderTask == null || played != ponderMove) {
+				stopPondering();
+				result = TavleiBitboard.NO_MOVE;
+			} else {
+				ponderTask = null;
+				ponderHit = true;
+				thinking = true;
+				if (!ponderFinished) {
+					long used = (System.nanoTime() - ponderStart) / 1000000;
+					engine.setBudget(Math.max(0, budgetMillis - used));
+					return;
+				}
+				result = ponderResult;
+			}
+		}
+		if (result != TavleiBitboard.NO_MOVE) play(result);
+		else reply();
+	}
+
+	private boolean isMyTurn() {
+		TavleiBitboard board = boardActor.getBitboard();
+		return board.getResult() == TavleiBitboard.IN_PROGRESS
+				&& board.getSideToMove() == TavleiBitboard.side(side);
+	}
+
+	/**
+	 * Plays the book move of the current position, if any, or starts a
+	 * search of it on the worker thread. Runs on the render thread.
+	 */
+	private void reply() {
+		if (thinking || !isMyTurn()) return;
+		int bookMove = book == null ? TavleiBitboard.NO_MOVE : book.probe(boardActor.getBitboard());
+		if (bookMove != TavleiBitboard.NO_MOVE && !engine.isExcluded(boardActor.getBitboard(), bookMove)) {
+			Gdx.app.debug(TAG, "book move " + bookMove);
+			play(bookMove);
+			return;
+		}
+		/* A copy per search, a cancelled search may still be unwinding. */
+		TavleiBitboard board = new TavleiBitboard();
+		board.set(boardActor.getBitboard());
+		int searchGeneration = ++generation;
+		thinking = true;
+		worker.execute(() -> search(board, searchGeneration));
+	}
+
+	/**
+	 * Searches on the worker thread and plays the result on the render
+	 * thread. A search that fails plays nothing but still ends the thinking,
+	 * which would otherwise block the opponent too.
+	 */
+	private void search(TavleiBitboard board, int searchGeneration) {
+		int move = TavleiBitboard.NO_MOVE;
+		try {
+			synchronized (this) {
+				if (searchGeneration != generation) return;
+				engine.startClock(budgetMillis);
+			}
+			long start = System.nanoTime();
+			move = engine.search(board, SearchEngine.MAX_DEPTH);
+			Gdx.app.debug(TAG, "depth " + engine.getCompletedDepth() + ", score " + engine.getScore()
+					+ ", " + engine.getNodes() + " nodes in " + (System.nanoTime() - start) / 1000000 + " ms");
+		} finally {
+			int result = move;
+			Gdx.app.postRunnable(() -> {
+				if (searchGeneration == generation) play(result);
+			});
+		}
+	}
+
+	/**
+	 * Proposes the engine's move, then starts pondering. Runs on the render
+	 * thread.
+	 */
+	private void play(int move) {
+		thinking = false;
+		played = move;
+		if (move == TavleiBitboard.NO_MOVE) return;
+		boardActor.getController().proposeMove(toMove(move), side);
+		Gdx.graphics.requestRendering();
+		if (ponder) startPondering();
+	}
+
+	private synchronized void startPondering() {
+		TavleiBitboard board = boardActor.getBitboard();
+		if (board.getResult() != TavleiBitboard.IN_PROGRESS || isMyTurn()) return;
+
+		TavleiBitboard copy = new TavleiBitboard();
+		copy.set(board);
+		int ponderGeneration = ++generation;
+		ponderMove = TavleiBitboard.NO_MOVE;
+		ponderHit = false;
+		ponderFinished = false;
+		ponderResult = TavleiBitboard.NO_MOVE;
+		ponderTask = worker.submit(() -> ponder(copy, ponderGeneration));
+	}
+
+	/**
+	 * Guesses the opponent's move and searches the position after it. Runs on
+	 * the worker thread.
+	 */
+	private void ponder(TavleiBitboard board, int ponderGeneration) {
+		if (ponderGeneration != generation) return;
+		int predicted = predict(board, ponderGeneration);
+		if (predicted == TavleiBitboard.NO_MOVE) return;
+
+		board.makeMove(predicted);
+		synchronized (this) {
+			if (ponderGeneration != generation) return;
+			ponderMove = predicted;
+			ponderStart = System.nanoTime();
+			/* A hit or a stop from now on changes this clock. */
+			engine.startClock(PONDER_LIMIT_MILLIS);
+		}
+		int move = engine.search(board, SearchEngine.MAX_DEPTH);
+		Gdx.app.debug(TAG, "pondered " + predicted + " to depth " + engine.getCompletedDepth()
+				+ ", " + engine.getNodes() + " nodes");
+
+		synchronized (this) {
+			if (ponderGeneration != generation) return;
+			ponderFinished = true;
+			ponderResult = move;
+			if (!ponderHit) return;
+		}
+		Gdx.app.postRunnable(() -> {
+			if (ponderGeneration == generation) play(move);
+		});
+	}
+
+	/**
+	 * @return The best move of the side to move stored by the last search, or
+	 *         the result of a short search if there is none, or
+	 *         {@link TavleiBitboard#NO_MOVE} once pondering is stopped.
+	 */
+	private int predict(TavleiBitboard board, int ponderGeneration) {
+		TranspositionTable table = engine.getTable();
+		if (table != null) {
+			int move = TranspositionTable.move(table.probe(board.getHash()));
+			if (move >= 0 && board.isLegal(TavleiBitboard.moveFrom(move), TavleiBitboard.moveTo(move))) {
+				return move;
+			}
+		}
+		synchronized (this) {
+			if (ponderGeneration != generation) return TavleiBitboard.NO_MOVE;
+			engine.startClock(budgetMillis / 4);
+		}
+		return engine.search(board, SearchEngine.MAX_DEPTH);
+	}
+
+	/**
+	 * Stops pondering and drops its result. The table entries it stored are
+	 * kept for the next search.
+	 */
+	public synchronized void stopPondering() {
+		if (ponderTask == null) return;
+		generation++;
+		engine.stop();
+		/* Also stops a ponder task that hasn't reached its search yet. */
+		ponderTask.cancel(true);
+		ponderTask = null;
+	}
+
+	/**
+	 * Called when the application is paused, so that pondering doesn't keep
+	 * a core busy in the background. A search for the AI's own move goes on.
+	 */
+	public void pause() {
+		stopPondering();
+	}
+
+	/**
+	 * Stops a running search and drops its result.
+	 */
+	public synchronized void cancel() {
+		stopPondering();
+		generation++;
+		thinking = false;
+		engine.stop();
+	}
+
+	static Move toMove(int move) {
+		return new Move(Positions.get(TavleiBitboard.moveFrom(move)),
+				Positions.get(TavleiBitboard.moveTo(move)));
+	}
+
+	/**
+	 * Cancels any search, stops the worker thread and stops listening to the
+	 * game.
+	 */
+	public void dispose() {
+		cancel();
+		worker.shutdownNow();
+		boardActor.getEvents().unsubscribe(EventType.PROPOSE_MOVE, proposeListener);
+		boardActor.getEvents().unsubscribe(EventType.RULES_ERROR, rulesErrorListener);
+	}
+
+}
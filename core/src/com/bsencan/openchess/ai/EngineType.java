@@ -0,0 +1,15 @@
+package com.bsencan.openchess.ai;
+
+import com.bsencan.openchess.net.RemotePlayer;
+
+/**
+ * Opponents available in <code>GameModeType.PLAY_WITH_AI</code>.
+ */
+public enum EngineType {
+	/** The AI of the tavlei library, <code>playWithCompute</code>. */
+	LIBRARY,
+	/** {@link SearchEngine} driven by an {@link AiPlayer}. */
+	ALPHA_BETA,
+	/** Another player on a game server, through a {@link RemotePlayer}. */
+	REMOTE
+}
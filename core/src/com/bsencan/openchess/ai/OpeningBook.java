@@ -0,0 +1,239 @@
+package com.bsencan.openchess.ai;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Replies to opening positions, read in place from a file mapped into
+ * memory. The file holds entries of a position's hash, a move and a weight,
+ * sorted by hash, so a position is found by binary search without anything
+ * on the heap. Built offline from self-play by the desktop module's
+ * <code>OpeningBookBuilder</code>.
+ * <p>
+ * Layout, little endian: a 16 byte header of {@link #MAGIC}, a short
+ * version, a reserved short, the entry count and a reserved int, then
+ * {@link #ENTRY_BYTES} per entry: the hash as a long, the move as
+ * <code>from &lt;&lt; 8 | to</code> and the weight as unsigned shorts. The
+ * entries of a position come heaviest first.
+ */
+public class OpeningBook {
+
+	private static final String TAG = "OpeningBook";
+
+	public static final int MAGIC = 0x4B4F4254; // "TBOK"
+	public static final short VERSION = 1;
+	public static final int HEADER_BYTES = 16;
+	public static final int ENTRY_BYTES = 12;
+	public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	/** Book of the game, in the internal assets. */
+	public static final String DEFAULT_PATH = "books/opening.book";
+
+	private static OpeningBook defaultBook;
+	private static boolean defaultLoaded;
+
+	private final ByteBuffer entries;
+	private final int count;
+
+	/**
+	 * @return The book at {@link #DEFAULT_PATH}, opened on the first call,
+	 *         or null if there is none. The first call may copy the file, so
+	 *         make it off the render thread.
+	 */
+	public static synchronized OpeningBook getDefault() {
+		if (!defaultLoaded) {
+			defaultLoaded = true;
+			FileHandle file = Gdx.files.internal(DEFAULT_PATH);
+			if (file.exists()) {
+				try {
+					defaultBook = open(file);
+				} catch (IOException e) {
+					Gdx.app.error(TAG, "Can't read " + DEFAULT_PATH, e);
+				}
+			}
+		}
+		return defaultBook;
+	}
+
+	/**
+	 * Maps the file, first copied to local storage if it isn't a plain file,
+	 * like an Android asset.
+	 */
+	public static OpeningBook open(FileHandle file) throws IOException {
+		return new OpeningBook(map(file));
+	}
+
+	/**
+	 * @return The whole file, mapped.
+	 */
+	static ByteBuffer map(FileHandle file) throws IOException {
+		File path = file.file();
+		if (path == null || !path.isFile()) path = extract(file).file();
+		try (RandomAccessFile input = new RandomAccessFile(path, "r");
+				FileChannel channel = input.getChannel()) {
+			/* The mapping stays valid after the channel is closed. */
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * Copies the file to the same path in local storage, unless the copy
+	 * there was made from the same contents. The CRC-32 of the contents a
+	 * copy was made from is kept next to it. The file is read to compare it,
+	 * which costs less than writing it again, and an updated file of the
+	 * same length is copied anew.
+	 *
+	 * @return The local copy.
+	 */
+	private static FileHandle extract(FileHandle file) throws IOException {
+		FileHandle local = Gdx.files.local(file.path());
+		FileHandle stamp = Gdx.files.local(file.path() + ".crc");
+		byte[] chunk = new byte[65536];
+		String checksum = Long.toHexString(checksum(file, chunk));
+		if (local.exists() && stamp.exists() && stamp.readString().equals(checksum)) return local;
+
+		/* Copied under another name first, so a cut short copy is never used. */
+		FileHandle part = Gdx.files.local(file.path() + ".part");
+		try (InputStream input = file.read(); OutputStream output = part.write(false)) {
+			int read;
+			while ((read = input.read(chunk)) > 0) {
+				output.write(chunk, 0, read);
+			}
+		}
+		stamp.delete();
+		part.moveTo(local);
+		stamp.writeString(checksum, false);
+		return local;
+	}
+
+	private static long checksum(FileHandle file, byte[] chunk) throws IOException {
+		CRC32 crc = new CRC32();
+		try (InputStream input = file.read()) {
+			int read;
+			while ((read = input.read(chunk)) > 0) {
+				crc.update(chunk, 0, read);
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * @param data
+	 *            Whole book file.
+	 */
+	public OpeningBook(ByteBuffer data) throws IOException {
+		data.order(ORDER);
+		if (data.limit() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+			throw new IOException("Not an opening book");
+		}
+		if (data.getShort(4) != VERSION) {
+			throw new IOException("Unknown opening book version " + data.getShort(4));
+		}
+		this.count = data.getInt(8);
+		if (this.count < 0 || data.limit() < HEADER_BYTES + (long) this.count * ENTRY_BYTES) {
+			throw new IOException("Opening book cut short");
+		}
+		data.position(HEADER_BYTES);
+		this.entries = data.slice().order(ORDER);
+	}
+
+	public int getEntryCount() {
+		return this.count;
+	}
+
+	public long getHash(int entry) {
+		return this.entries.getLong(entry * ENTRY_BYTES);
+	}
+
+	/**
+	 * @return Move as encoded by {@link TavleiBitboard}.
+	 */
+	public int getMove(int entry) {
+		return this.entries.getShort(entry * ENTRY_BYTES + 8) & 0xFFFF;
+	}
+
+	public int getWeight(int entry) {
+		return this.entries.getShort(entry * ENTRY_BYTES + 10) & 0xFFFF;
+	}
+
+	/**
+	 * @return The first entry of the position, or -1 if it isn't in the book.
+	 */
+	public int find(long hash) {
+		int low = 0;
+		int high = this.count;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (this.getHash(middle) < hash) low = middle + 1;
+			else high = middle;
+		}
+		return low < this.count && this.getHash(low) == hash ? low : -1;
+	}
+
+	/**
+	 * @return The heaviest book move of the position that is legal for the
+	 *         side to move, or {@link TavleiBitboard#NO_MOVE}. The legality
+	 *         check covers hash collisions.
+	 */
+	public int probe(TavleiBitboard board) {
+		long hash = board.getHash();
+		int entry = this.find(hash);
+		if (entry < 0) return TavleiBitboard.NO_MOVE;
+		for (; entry < this.count && this.getHash(entry) == hash; entry++) {
+			int move = this.getMove(entry);
+			int from = TavleiBitboard.moveFrom(move);
+			int to = TavleiBitboard.moveTo(move);
+			if (from < TavleiBitboard.SQUARES && to < TavleiBitboard.SQUARES && !board.isEmpty(from)
+					&& TavleiBitboard.sideOfKind(board.kindAt(from)) == board.getSideToMove()
+					&& board.isLegal(from, to)) {
+				return move;
+			}
+		}
+		return TavleiBitboard.NO_MOVE;
+	}
+
+	/**
+	 * Writes a book file.
+	 *
+	 * @param hashes
+	 *            Hash of each entry's position, in ascending order.
+	 * @param moves
+	 *            Move of each entry.
+	 * @param weights
+	 *            Weight of each entry, at most 65535 and not increasing
+	 *            within a position.
+	 */
+	public static void write(FileChannel channel, long[] hashes, int[] moves, int[] weights, int count)
+			throws IOException {
+		ByteBuffer data = ByteBuffer.allocate(HEADER_BYTES + count * ENTRY_BYTES).order(ORDER);
+		data.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(count).putInt(0);
+		for (int i = 0; i < count; i++) {
+			if (i > 0 && (hashes[i] < hashes[i - 1]
+					|| hashes[i] == hashes[i - 1] && weights[i] > weights[i - 1])) {
+				throw new IllegalArgumentException("Entry " + i + " out of order");
+			}
+			if (weights[i] < 0 || weights[i] > 0xFFFF) {
+				throw new IllegalArgumentException("Weight of entry " + i + " out of range");
+			}
+			data.putLong(hashes[i]).putShort((short) moves[i]).putShort((short) weights[i]);
+		}
+		data.flip();
+		channel.truncate(0);
+		channel.position(0);
+		while (data.hasRemaining()) {
+			channel.write(data);
+		}
+	}
+
+}
@@ -0,0 +1,366 @@
+package com.bsencan.openchess.ai;
+
+import com.bsencan.openchess.model.TavleiBitboard;
+
+/**
+ * Tavlei engine searching a {@link TavleiBitboard}. Negamax with alpha-beta
+ * pruning, deepened one ply at a time until the time budget of the move runs
+ * out. The move stored in the {@link TranspositionTable} is tried first, then
+ * capturing moves. Results of earlier depths and transposed move orders are
+ * read back from the table. Below the root, positions with few enough pieces
+ * are scored exactly from the {@link Tablebase} if there is one.
+ * <p>
+ * An instance keeps its own move buffers and is not thread safe.
+ */
+public class SearchEngine {
+
+	public static final int MAX_DEPTH = 32;
+
+	/** Score of a won game, minus the plies it takes to win. */
+	public static final int WIN = 100000;
+	private static final int INFINITY = WIN + 1;
+
+	/** Scores this close to a win are won games, at a known distance. */
+	private static final int WIN_PLIES = MAX_DEPTH + Tablebase.MAX_DISTANCE;
+
+	/* Evaluation weights, in attacker units of 100. */
+	private static final int ATTACKER_VALUE = 100;
+	private static final int DEFENDER_VALUE = 180;
+	private static final int ESCAPE_ROUTE = 400;
+	private static final int CORNER_DISTANCE = 12;
+	private static final int PRINCE_PRESSURE = 60;
+
+	/** 2^17 entries, 2 MB. */
+	public static final int DEFAULT_TABLE_BITS = 17;
+
+	/** Nodes between two looks at the clock. */
+	private static final int CLOCK_MASK = 1023;
+
+	private static final int[] CORNERS = { 0, TavleiBitboard.SIZE - 1,
+			TavleiBitboard.SQUARES - TavleiBitboard.SIZE,
+			TavleiBitboard.SQUARES - 1 };
+
+	private final int[] moves = new int[TavleiBitboard.MAX_MOVES * MAX_DEPTH];
+	private final int[] keys = new int[TavleiBitboard.MAX_MOVES * MAX_DEPTH];
+	private final long[] mask = new long[2];
+	private final TranspositionTable table;
+	private Tablebase tablebase;
+
+	private volatile long deadline;
+	private volatile boolean stopped;
+	private long nodes;
+	private volatile long nodesPerSecond;
+	private int completedDepth;
+	private int score;
+	private int bestMove;
+	private int rootBest;
+
+	/* Root moves left out, those of the position with this hash. */
+	private final int[] excluded = new int[TavleiBitboard.MAX_MOVES];
+	private int excludedCount;
+	private long excludedHash;
+
+	public SearchEngine() {
+		this(new TranspositionTable(DEFAULT_TABLE_BITS));
+	}
+
+	/**
+	 * @param table
+	 *            Table to share results through or null to search without
+	 *            one.
+	 */
+	public SearchEngine(TranspositionTable table) {
+		this.table = table;
+	}
+
+	/**
+	 * @param tablebase
+	 *            Exact results of endgame positions, or null. Set between
+	 *            searches.
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+	/**
+	 * Leaves a move out of the searches of the position, as one the game
+	 * controller has rejected. Moves left out of other positions are
+	 * forgotten. Call between searches.
+	 */
+	public void exclude(TavleiBitboard board, int move) {
+		if (board.getHash() != this.excludedHash) {
+			this.excludedHash = board.getHash();
+			this.excludedCount = 0;
+		}
+		if (!this.isExcluded(board, move) && this.excludedCount < this.excluded.length) {
+			this.excluded[this.excludedCount++] = move;
+		}
+	}
+
+	/**
+	 * @return Whether the move is left out of the searches of the position.
+	 */
+	public boolean isExcluded(TavleiBitboard board, int move) {
+		if (this.excludedCount == 0 || board.getHash() != this.excludedHash) return false;
+		for (int i = 0; i < this.excludedCount; i++) {
+			if (this.excluded[i] == move) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Searches the position for the side to move.
+	 *
+	 * @param budgetMillis
+	 *            Time budget. The last fully searched depth is used once it is
+	 *            spent. Depth 1 is always searched to the end.
+	 * @param maxDepth
+	 *            Depth to stop at if time is left.
+	 * @return Best move found or {@link TavleiBitboard#NO_MOVE} if the side to
+	 *         move has none, or none that isn't left out.
+	 */
+	public int search(TavleiBitboard board, long budgetMillis, int maxDepth) {
+		this.startClock(budgetMillis);
+		return this.search(board, maxDepth);
+	}
+
+	/**
+	 * Sets the budget of the next search and clears a stop. Lets another
+	 * thread publish the search under its own lock, so that a
+	 * {@link #setBudget} or {@link #stop} coming after this call is kept by
+	 * {@link #search(TavleiBitboard, int)}.
+	 */
+	public void startClock(long budgetMillis) {
+		this.deadline = System.nanoTime() + budgetMillis * 1000000L;
+		this.stopped = false;
+	}
+
+	/**
+	 * Searches with the budget of the last {@link #startClock}, or until
+	 * stopped since.
+	 */
+	public int search(TavleiBitboard board, int maxDepth) {
+		long start = System.nanoTime();
+		this.nodes = 0;
+		this.completedDepth = 0;
+		this.bestMove = TavleiBitboard.NO_MOVE;
+		this.score = 0;
+		if (this.table != null) this.table.newSearch();
+
+		int depthLimit = Math.min(maxDepth, MAX_DEPTH);
+		for (int depth = 1; depth <= depthLimit; depth++) {
+			this.rootBest = TavleiBitboard.NO_MOVE;
+			int value = this.negamax(board, depth, -INFINITY, INFINITY, 0, 0);
+			if (this.stopped) break;
+
+			this.bestMove = this.rootBest;
+			this.score = value;
+			this.completedDepth = depth;
+			if (Math.abs(value) >= WIN - WIN_PLIES) break;
+		}
+		if (this.bestMove == TavleiBitboard.NO_MOVE && this.rootBest != TavleiBitboard.NO_MOVE) {
+			this.bestMove = this.rootBest;
+		}
+		this.nodesPerSecond = this.nodes * 1000000000L / Math.max(1, System.nanoTime() - start);
+		return this.bestMove;
+	}
+
+	/**
+	 * Moves the deadline of a running search, from another thread. Used when
+	 * a pondered position is reached and the search has to finish within the
+	 * normal budget.
+	 */
+	public void setBudget(long budgetMillis) {
+		this.deadline = System.nanoTime() + budgetMillis * 1000000L;
+	}
+
+	/**
+	 * Stops a running search from another thread. {@link #search} then
+	 * returns the best move of the last completed depth. Interrupting the
+	 * searching thread has the same effect and also covers a search that has
+	 * not started yet.
+	 */
+	public void stop() {
+		this.stopped = true;
+	}
+
+	public long getNodes() {
+		return this.nodes;
+	}
+
+	/**
+	 * @return Speed of the last finished search. Safe to read from any
+	 *         thread.
+	 */
+	public long getNodesPerSecond() {
+		return this.nodesPerSecond;
+	}
+
+	public int getCompletedDepth() {
+		return this.completedDepth;
+	}
+
+	public int getScore() {
+		return this.score;
+	}
+
+	/**
+	 * @return Transposition table or null.
+	 */
+	public TranspositionTable getTable() {
+		return this.table;
+	}
+
+	private int negamax(TavleiBitboard board, int depth, int alpha, int beta,
+			int ply, int offset) {
+		if ((++this.nodes & CLOCK_MASK) == 0 && (Thread.currentThread().isInterrupted()
+				|| (this.completedDepth > 0 && System.nanoTime() > this.deadline))) {
+			this.stopped = true;
+		}
+		if (this.stopped) return 0;
+
+		/* The side that just moved has won. */
+		if (board.getResult() != TavleiBitboard.IN_PROGRESS) return -(WIN - ply);
+		if (this.tablebase != null && ply > 0) {
+			int distance = this.tablebase.probe(board);
+			if (distance != Tablebase.UNKNOWN) {
+				if (distance == Tablebase.DRAW) {
+					/* Positions without a move are lost, and stored as draws. */
+					return board.generateMoves(this.moves, offset) == 0 ? -(WIN - ply) : 0;
+				}
+				int value = WIN - (ply + distance);
+				return Tablebase.isWin(distance) ? value : -value;
+			}
+		}
+		if (depth == 0) return evaluate(board);
+
+		long hash = board.getHash();
+		int tableMove = TavleiBitboard.NO_MOVE;
+		if (this.table != null) {
+			long entry = this.table.probe(hash);
+			if (entry != 0) {
+				tableMove = TranspositionTable.move(entry);
+				if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+					int value = fromTable(TranspositionTable.score(entry), ply);
+					int bound = TranspositionTable.bound(entry);
+					if (bound == TranspositionTable.BOUND_EXACT
+							|| (bound == TranspositionTable.BOUND_LOWER && value >= beta)
+							|| (bound == TranspositionTable.BOUND_UPPER && value <= alpha)) {
+						return value;
+					}
+				}
+			}
+		}
+
+		int size = board.generateMoves(this.moves, offset);
+		/* The side to move has lost, see TavleiBitboard.getResultWithoutMoves. */
+		if (size == 0) return -(WIN - ply);
+		this.order(board, offset, size,
+				ply == 0 && this.bestMove != TavleiBitboard.NO_MOVE ? this.bestMove : tableMove);
+
+		int originalAlpha = alpha;
+		int best = TavleiBitboard.NO_MOVE;
+		boolean excluding = ply == 0 && this.excludedCount > 0 && hash == this.excludedHash;
+		for (int i = offset; i < offset + size; i++) {
+			int move = this.moves[i];
+			if (excluding && this.isExcluded(board, move)) continue;
+			board.makeMove(move);
+			int value = -this.negamax(board, depth - 1, -beta, -alpha, ply + 1, offset + size);
+			board.unmakeMove();
+			if (this.stopped) return 0;
+
+			if (value > alpha) {
+				alpha = value;
+				best = move;
+				if (ply == 0) this.rootBest = move;
+			}
+			if (alpha >= beta) break;
+		}
+
+		if (this.table != null) {
+			int bound = alpha <= originalAlpha ? TranspositionTable.BOUND_UPPER
+					: alpha >= beta ? TranspositionTable.BOUND_LOWER
+					: TranspositionTable.BOUND_EXACT;
+			this.table.store(hash, best, toTable(alpha, ply), depth, bound);
+		}
+		return alpha;
+	}
+
+	/* Win scores are stored relative to the node, not to the root. */
+
+	private static int toTable(int score, int ply) {
+		if (score >= WIN - WIN_PLIES) return score + ply;
+		if (score <= -(WIN - WIN_PLIES)) return score - ply;
+		return score;
+	}
+
+	private static int fromTable(int score, int ply) {
+		if (score >= WIN - WIN_PLIES) return score - ply;
+		if (score <= -(WIN - WIN_PLIES)) return score + ply;
+		return score;
+	}
+
+	/**
+	 * Sorts the moves so that winning prince moves come first, then moves by
+	 * number of captured pieces, with <code>first</code> ahead of all.
+	 */
+	private void order(TavleiBitboard board, int offset, int size, int first) {
+		int prince = board.getPrinceSquare();
+		for (int i = offset; i < offset + size; i++) {
+			int move = this.moves[i];
+			int key = board.captures(move, this.mask);
+			if (TavleiBitboard.moveFrom(move) == prince
+					&& TavleiBitboard.isCorner(TavleiBitboard.moveTo(move))) {
+				key += 100;
+			}
+			if (move == first) key += 1000;
+			this.keys[i] = key;
+		}
+		/* Insertion sort, stable and quick for mostly zero keys. */
+		for (int i = offset + 1; i < offset + size; i++) {
+			int move = this.moves[i];
+			int key = this.keys[i];
+			int j = i - 1;
+			while (j >= offset && this.keys[j] < key) {
+				this.moves[j + 1] = this.moves[j];
+				this.keys[j + 1] = this.keys[j];
+				j--;
+			}
+			this.moves[j + 1] = move;
+			this.keys[j + 1] = key;
+		}
+	}
+
+	/**
+	 * Static evaluation from the point of view of the side to move: material,
+	 * open lines from the prince to the corners, the prince's distance to the
+	 * nearest corner and how closely attackers surround it.
+	 */
+	static int evaluate(TavleiBitboard board) {
+		int value = board.getDefenderCount() * DEFENDER_VALUE
+				- board.getAttackerCount() * ATTACKER_VALUE;
+
+		int prince = board.getPrinceSquare();
+		if (prince >= 0) {
+			int row = TavleiBitboard.row(prince);
+			int col = TavleiBitboard.col(prince);
+			int distance = Integer.MAX_VALUE;
+			for (int corner : CORNERS) {
+				if (board.isLegal(prince, corner)) value += ESCAPE_ROUTE;
+				distance = Math.min(distance, Math.abs(TavleiBitboard.row(corner) - row)
+						+ Math.abs(TavleiBitboard.col(corner) - col));
+			}
+			value -= distance * CORNER_DISTANCE;
+
+			for (int direction = 0; direction < 4; direction++) {
+				int side = TavleiBitboard.neighbour(direction, prince);
+				if (side >= 0 && (board.kindAt(side) == TavleiBitboard.ATTACKER
+						|| (TavleiBitboard.isSpecial(side) && board.isEmpty(side)))) {
+					value -= PRINCE_PRESSURE;
+				}
+			}
+		}
+		return board.getSideToMove() == TavleiBitboard.DEFENDERS ? value : -value;
+	}
+
+}
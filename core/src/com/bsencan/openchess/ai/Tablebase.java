@@ -0,0 +1,278 @@
+package com.bsencan.openchess.ai;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Exact results of the positions with few pieces left, read in place from a
+ * file mapped into memory. Built offline by retrograde analysis in the
+ * desktop module's <code>TablebaseBuilder</code>.
+ * <p>
+ * Positions are grouped in classes by their number of attackers and
+ * defenders, the prince being always on the board. Within a class a
+ * position has an index made of the side to move, the prince's square out of
+ * the 77 that aren't corners and the sets of attacker and defender squares
+ * out of the 76 that aren't special, each ranked in the combinatorial number
+ * system. A position is one byte at its index, so no key is stored.
+ * <p>
+ * The byte is {@link #DRAW}, or the number of plies to the end of the game
+ * with best play: odd if the side to move wins, even if it loses. Positions
+ * where pieces would share a square are unused and hold {@link #DRAW}, as do
+ * positions where the side to move has no move. Those are lost at once,
+ * which a reader tells from a draw by generating the moves.
+ * <p>
+ * Layout: an 8 byte header of {@link #MAGIC}, a short version, the largest
+ * number of pieces covered, prince included, and a reserved byte, all little
+ * endian, then the classes one after the other, by number of pieces and then
+ * by number of defenders.
+ */
+public class Tablebase {
+
+	private static final String TAG = "Tablebase";
+
+	public static final int MAGIC = 0x42544254; // "TBTB"
+	public static final short VERSION = 2;
+	public static final int HEADER_BYTES = 8;
+	public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	/** Most pieces a file may cover. Five would take gigabytes. */
+	public static final int MAX_PIECES = 4;
+
+	/** Longest distance a byte holds. */
+	public static final int MAX_DISTANCE = 255;
+
+	public static final int DRAW = 0;
+
+	/** Result of {@link #probe} for positions the file doesn't cover. */
+	public static final int UNKNOWN = -1;
+
+	/** Tablebase of the game, in the internal assets. */
+	public static final String DEFAULT_PATH = "books/endgame.tablebase";
+
+	private static final int PRINCE_SQUARES = TavleiBitboard.SQUARES - 4;
+	private static final int OTHER_SQUARES = TavleiBitboard.SQUARES - 5;
+
+	/* Squares by rank and ranks by square, -1 for squares a piece can't hold. */
+	private static final int[] PRINCE_SQUARE = new int[PRINCE_SQUARES];
+	private static final int[] PRINCE_RANK = new int[TavleiBitboard.SQUARES];
+	private static final int[] OTHER_SQUARE = new int[OTHER_SQUARES];
+	private static final int[] OTHER_RANK = new int[TavleiBitboard.SQUARES];
+
+	private static final int[][] BINOMIAL = new int[OTHER_SQUARES + 1][MAX_PIECES];
+	private static final int[][] OFFSETS = new int[MAX_PIECES][MAX_PIECES];
+
+	static {
+		int princeRank = 0;
+		int otherRank = 0;
+		for (int square = 0; square < TavleiBitboard.SQUARES; square++) {
+			PRINCE_RANK[square] = TavleiBitboard.isCorner(square) ? -1 : princeRank;
+			if (!TavleiBitboard.isCorner(square)) PRINCE_SQUARE[princeRank++] = square;
+			OTHER_RANK[square] = TavleiBitboard.isSpecial(square) ? -1 : otherRank;
+			if (!TavleiBitboard.isSpecial(square)) OTHER_SQUARE[otherRank++] = square;
+		}
+		for (int n = 0; n <= OTHER_SQUARES; n++) {
+			BINOMIAL[n][0] = 1;
+			for (int k = 1; k < MAX_PIECES; k++) {
+				BINOMIAL[n][k] = n == 0 ? 0 : BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+			}
+		}
+		int offset = HEADER_BYTES;
+		for (int others = 0; others < MAX_PIECES; others++) {
+			for (int defenders = 0; defenders <= others; defenders++) {
+				OFFSETS[others - defenders][defenders] = offset;
+				offset += positions(others - defenders, defenders);
+			}
+		}
+	}
+
+	private static Tablebase defaultTablebase;
+	private static boolean defaultLoaded;
+
+	private final ByteBuffer data;
+	private final int pieces;
+
+	/**
+	 * @return The tablebase at {@link #DEFAULT_PATH}, opened on the first
+	 *         call, or null if there is none. The first call may copy tens of
+	 *         megabytes, so make it off the render thread.
+	 */
+	public static synchronized Tablebase getDefault() {
+		if (!defaultLoaded) {
+			defaultLoaded = true;
+			FileHandle file = Gdx.files.internal(DEFAULT_PATH);
+			if (file.exists()) {
+				try {
+					defaultTablebase = open(file);
+				} catch (IOException e) {
+					Gdx.app.error(TAG, "Can't read " + DEFAULT_PATH, e);
+				}
+			}
+		}
+		return defaultTablebase;
+	}
+
+	/**
+	 * Maps the file, first copied to local storage if it isn't a plain file,
+	 * like an Android asset.
+	 */
+	public static Tablebase open(FileHandle file) throws IOException {
+		return new Tablebase(OpeningBook.map(file));
+	}
+
+	/**
+	 * @param data
+	 *            Whole tablebase file.
+	 */
+	public Tablebase(ByteBuffer data) throws IOException {
+		data.order(ORDER);
+		if (data.limit() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+			throw new IOException("Not a tablebase");
+		}
+		if (data.getShort(4) != VERSION) {
+			throw new IOException("Unknown tablebase version " + data.getShort(4));
+		}
+		this.pieces = data.get(6);
+		if (this.pieces < 1 || this.pieces > MAX_PIECES) {
+			throw new IOException("Tablebase of " + this.pieces + " pieces");
+		}
+		if (data.limit() < bytes(this.pieces)) {
+			throw new IOException("Tablebase cut short");
+		}
+		this.data = data;
+	}
+
+	/**
+	 * @return Most pieces of the positions covered, prince included.
+	 */
+	public int getPieces() {
+		return this.pieces;
+	}
+
+	/**
+	 * @return Distance to the end of the game for the side to move, as
+	 *         stored, or {@link #UNKNOWN} if the position has too many pieces
+	 *         or the game is over. {@link #DRAW} includes positions without a
+	 *         move.
+	 */
+	public int probe(TavleiBitboard board) {
+		int prince = board.getPrinceSquare();
+		if (board.getResult() != TavleiBitboard.IN_PROGRESS || prince < 0 || TavleiBitboard.isCorner(prince)) {
+			return UNKNOWN;
+		}
+		int attackers = board.getAttackerCount();
+		int defenders = board.getDefenderCount();
+		if (attackers + defenders >= this.pieces) return UNKNOWN;
+		return this.data.get(OFFSETS[attackers][defenders] + index(board)) & 0xFF;
+	}
+
+	/**
+	 * @return Whether a stored distance is a win for the side to move.
+	 */
+	public static boolean isWin(int value) {
+		return (value & 1) != 0;
+	}
+
+	/* -- Indexing, shared with the builder -- */
+
+	/**
+	 * @return Number of indices of the class.
+	 */
+	public static int positions(int attackers, int defenders) {
+		return 2 * PRINCE_SQUARES * BINOMIAL[OTHER_SQUARES][attackers] * BINOMIAL[OTHER_SQUARES][defenders];
+	}
+
+	/**
+	 * @return Position of the class's first byte in the file.
+	 */
+	public static int offset(int attackers, int defenders) {
+		return OFFSETS[attackers][defenders];
+	}
+
+	/**
+	 * @return Size of a file covering up to <code>pieces</code> pieces.
+	 */
+	public static int bytes(int pieces) {
+		if (pieces < MAX_PIECES) return offset(pieces, 0);
+		return offset(0, MAX_PIECES - 1) + positions(0, MAX_PIECES - 1);
+	}
+
+	/**
+	 * @return Index of the position within its class. The prince must be on
+	 *         the board and off the corners.
+	 */
+	public static int index(TavleiBitboard board) {
+		int attackers = board.getAttackerCount();
+		int defenders = board.getDefenderCount();
+		int prince = PRINCE_RANK[board.getPrinceSquare()];
+		int index = board.getSideToMove() * PRINCE_SQUARES + prince;
+		index = index * BINOMIAL[OTHER_SQUARES][attackers] + rank(board.getAttackersLo(), board.getAttackersHi());
+		return index * BINOMIAL[OTHER_SQUARES][defenders] + rank(board.getDefendersLo(), board.getDefendersHi());
+	}
+
+	private static int rank(long lo, long hi) {
+		int rank = 0;
+		int count = 1;
+		for (; lo != 0; lo &= lo - 1) {
+			rank += BINOMIAL[OTHER_RANK[Long.numberOfTrailingZeros(lo)]][count++];
+		}
+		for (; hi != 0; hi &= hi - 1) {
+			rank += BINOMIAL[OTHER_RANK[64 + Long.numberOfTrailingZeros(hi)]][count++];
+		}
+		return rank;
+	}
+
+	/**
+	 * Sets the board up with the position of the index, with an empty undo
+	 * stack.
+	 *
+	 * @return False if the index puts two pieces on a square. The board is
+	 *         left half set up then.
+	 */
+	public static boolean setPosition(TavleiBitboard board, int attackers, int defenders, int index) {
+		int defenderSets = BINOMIAL[OTHER_SQUARES][defenders];
+		int attackerSets = BINOMIAL[OTHER_SQUARES][attackers];
+		int defenderRank = index % defenderSets;
+		index /= defenderSets;
+		int attackerRank = index % attackerSets;
+		index /= attackerSets;
+
+		board.clear();
+		board.put(PRINCE_SQUARE[index % PRINCE_SQUARES], TavleiBitboard.PRINCE);
+		board.setSideToMove(index / PRINCE_SQUARES);
+		return place(board, TavleiBitboard.ATTACKER, attackers, attackerRank)
+				&& place(board, TavleiBitboard.DEFENDER, defenders, defenderRank);
+	}
+
+	private static boolean place(TavleiBitboard board, int kind, int count, int rank) {
+		int square = OTHER_SQUARES;
+		for (int i = count; i > 0; i--) {
+			do {
+				square--;
+			} while (BINOMIAL[square][i] > rank);
+			rank -= BINOMIAL[square][i];
+			if (!board.isEmpty(OTHER_SQUARE[square])) return false;
+			board.put(OTHER_SQUARE[square], kind);
+		}
+		return true;
+	}
+
+	/**
+	 * @return A buffer the size of a file covering up to
+	 *         <code>pieces</code> pieces, with the header written and every
+	 *         position a draw.
+	 */
+	public static ByteBuffer allocate(int pieces) {
+		if (pieces < 1 || pieces > MAX_PIECES) {
+			throw new IllegalArgumentException("Tablebases cover 1 to " + MAX_PIECES + " pieces");
+		}
+		ByteBuffer data = ByteBuffer.allocate(bytes(pieces)).order(ORDER);
+		data.putInt(0, MAGIC).putShort(4, VERSION).put(6, (byte) pieces);
+		return data;
+	}
+
+}
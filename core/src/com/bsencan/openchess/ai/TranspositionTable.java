@@ -0,0 +1,168 @@
+package com.bsencan.openchess.ai;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size hash table of search results keyed by
+ * {@link com.bsencan.openchess.model.TavleiBitboard#getHash()}. Entries live
+ * in two primitive arrays, nothing is allocated after construction.
+ * <p>
+ * Slots are grouped in buckets of two. A store reuses the slot holding the
+ * same position, otherwise it replaces the slot that is worth less: entries
+ * left from older searches first, then shallower ones. The key is stored
+ * xored with the data, so a torn entry written by another thread reads as a
+ * miss instead of a wrong result.
+ * <p>
+ * Data layout: move in bits 0-15, score + 2^19 in bits 16-35, depth in bits
+ * 36-43, bound in bits 44-45 and search age in bits 46-53.
+ */
+public class TranspositionTable {
+
+	public static final int BOUND_EXACT = 1;
+	public static final int BOUND_LOWER = 2;
+	public static final int BOUND_UPPER = 3;
+
+	private static final int SCORE_OFFSET = 1 << 19;
+
+	private final long[] keys;
+	private final long[] data;
+	private final int mask;
+	private int age;
+
+	private long probes;
+	private long hits;
+	private long collisions;
+	private long stores;
+
+	/**
+	 * @param sizeLog2
+	 *            Base 2 logarithm of the number of entries. Every entry takes
+	 *            16 bytes.
+	 */
+	public TranspositionTable(int sizeLog2) {
+		this.keys = new long[1 << sizeLog2];
+		this.data = new long[1 << sizeLog2];
+		this.mask = (1 << sizeLog2) - 2;
+	}
+
+	/**
+	 * Starts a new search. Entries of earlier searches become the first to
+	 * be replaced.
+	 */
+	public void newSearch() {
+		this.age = (this.age + 1) & 0xFF;
+	}
+
+	/**
+	 * Empties the table and resets the counters.
+	 */
+	public void clear() {
+		Arrays.fill(this.keys, 0);
+		Arrays.fill(this.data, 0);
+		this.probes = this.hits = this.collisions = this.stores = 0;
+	}
+
+	/**
+	 * @return Data of the entry for the position or 0 if there is none.
+	 */
+	public long probe(long hash) {
+		this.probes++;
+		int index = (int) hash & this.mask;
+		for (int slot = index; slot < index + 2; slot++) {
+			long entry = this.data[slot];
+			if ((this.keys[slot] ^ entry) == hash && entry != 0) {
+				this.hits++;
+				return entry;
+			}
+		}
+		if (this.data[index] != 0 || this.data[index + 1] != 0) this.collisions++;
+		return 0;
+	}
+
+	public void store(long hash, int move, int score, int depth, int bound) {
+		int index = (int) hash & this.mask;
+		int slot = index;
+		if ((this.keys[index + 1] ^ this.data[index + 1]) == hash) {
+			slot = index + 1;
+		} else if ((this.keys[index] ^ this.data[index]) != hash
+				&& this.worth(index + 1) < this.worth(index)) {
+			slot = index + 1;
+		}
+
+		/* Keep the best move of a shallower search of the same position. */
+		if (move < 0 && (this.keys[slot] ^ this.data[slot]) == hash) {
+			move = move(this.data[slot]);
+		}
+		long entry = (move & 0xFFFFL)
+				| ((long) (score + SCORE_OFFSET) << 16)
+				| ((long) depth << 36)
+				| ((long) bound << 44)
+				| ((long) this.age << 46);
+		this.keys[slot] = hash ^ entry;
+		this.data[slot] = entry;
+		this.stores++;
+	}
+
+	/**
+	 * Replacement priority of a slot: its depth, minus a penalty per search
+	 * it has aged.
+	 */
+	private int worth(int slot) {
+		long entry = this.data[slot];
+		if (entry == 0) return Integer.MIN_VALUE;
+		int staleness = (this.age - age(entry)) & 0xFF;
+		return depth(entry) - 8 * staleness;
+	}
+
+	/* -- Entry accessors -- */
+
+	/**
+	 * @return Stored move or a negative value if there is none.
+	 */
+	public static int move(long entry) {
+		int move = (int) (entry & 0xFFFF);
+		return move == 0xFFFF ? -1 : move;
+	}
+
+	public static int score(long entry) {
+		return (int) ((entry >>> 16) & 0xFFFFF) - SCORE_OFFSET;
+	}
+
+	public static int depth(long entry) {
+		return (int) ((entry >>> 36) & 0xFF);
+	}
+
+	public static int bound(long entry) {
+		return (int) ((entry >>> 44) & 0x3);
+	}
+
+	private static int age(long entry) {
+		return (int) ((entry >>> 46) & 0xFF);
+	}
+
+	/* -- Statistics -- */
+
+	public int getSize() {
+		return this.keys.length;
+	}
+
+	public long getProbes() {
+		return this.probes;
+	}
+
+	public long getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * @return Misses on a bucket already filled by other positions.
+	 */
+	public long getCollisions() {
+		return this.collisions;
+	}
+
+	public long getStores() {
+		return this.stores;
+	}
+
+}
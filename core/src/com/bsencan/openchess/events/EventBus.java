@@ -0,0 +1,60 @@
+package com.bsencan.openchess.events;
+
+import com.badlogic.gdx.utils.SnapshotArray;
+
+/**
+ * Typed event bus of a game, used on the render thread. Listeners are kept
+ * in an array per {@link EventType} and called in the order they subscribed.
+ * Posting allocates nothing: the event objects are owned and reused by the
+ * posters, and listeners may subscribe or unsubscribe during a dispatch
+ * without a copy being made.
+ * <p>
+ * The library's <code>EventManager</code> is reached through a
+ * {@link LibraryBridge} only.
+ */
+public class EventBus {
+
+	/**
+	 * Receives events of one type. The event is only valid during the call.
+	 */
+	public interface Listener<E> {
+		void handle(E event);
+	}
+
+	@SuppressWarnings("unchecked")
+	private final SnapshotArray<Listener<?>>[] listeners = new SnapshotArray[EventType.COUNT];
+
+	public EventBus() {
+		for (int i = 0; i < this.listeners.length; i++) {
+			this.listeners[i] = new SnapshotArray<Listener<?>>(true, 4, Listener.class);
+		}
+	}
+
+	public <E> void subscribe(EventType<E> type, Listener<? super E> listener) {
+		this.listeners[type.ordinal()].add(listener);
+	}
+
+	public <E> void unsubscribe(EventType<E> type, Listener<? super E> listener) {
+		this.listeners[type.ordinal()].removeValue(listener, true);
+	}
+
+	/**
+	 * Calls every listener of the type with the event.
+	 */
+	@SuppressWarnings("unchecked")
+	public <E> void post(EventType<E> type, E event) {
+		SnapshotArray<Listener<?>> listeners = this.listeners[type.ordinal()];
+		Object[] items = listeners.begin();
+		for (int i = 0, n = listeners.size; i < n; i++) {
+			((Listener<E>) items[i]).handle(event);
+		}
+		listeners.end();
+	}
+
+	public void clear() {
+		for (SnapshotArray<Listener<?>> listeners : this.listeners) {
+			listeners.clear();
+		}
+	}
+
+}
@@ -0,0 +1,37 @@
+package com.bsencan.openchess.events;
+
+/**
+ * Kind of event on an {@link EventBus}, typed by the event object its
+ * listeners receive. The bus keeps a listener array per type, indexed by
+ * {@link #ordinal()}.
+ */
+public final class EventType<E> {
+
+	/** A move played on the board, proposed to the game controller. */
+	public static final EventType<MoveEvent> PROPOSE_MOVE = new EventType<MoveEvent>(0, "PROPOSE_MOVE");
+	/** A move made by the game controller. */
+	public static final EventType<MoveEvent> MOVE = new EventType<MoveEvent>(1, "MOVE");
+	/** A proposed move rejected by the game controller. */
+	public static final EventType<RulesErrorEvent> RULES_ERROR = new EventType<RulesErrorEvent>(2, "RULES_ERROR");
+	public static final EventType<GameOverEvent> GAME_OVER = new EventType<GameOverEvent>(3, "GAME_OVER");
+
+	static final int COUNT = 4;
+
+	private final int ordinal;
+	private final String name;
+
+	private EventType(int ordinal, String name) {
+		this.ordinal = ordinal;
+		this.name = name;
+	}
+
+	public int ordinal() {
+		return this.ordinal;
+	}
+
+	@Override
+	public String toString() {
+		return this.name;
+	}
+
+}
@@ -0,0 +1,24 @@
+package com.bsencan.openchess.events;
+
+import entity.TavleiState;
+
+/**
+ * End of the game. Reused by whoever posts it.
+ */
+public class GameOverEvent {
+
+	private TavleiState state;
+
+	public GameOverEvent set(TavleiState state) {
+		this.state = state;
+		return this;
+	}
+
+	/**
+	 * @return Final state, the side that won. Games only end with a winner.
+	 */
+	public TavleiState getState() {
+		return this.state;
+	}
+
+}
@@ -0,0 +1,158 @@
+package com.bsencan.openchess.events;
+
+import com.badlogic.gdx.utils.Disposable;
+import com.bsencan.openchess.journal.EventJournal;
+import com.bsencan.openchess.journal.JournalWriter;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import entity.Move;
+import entity.Side;
+import entity.TavleiState;
+import entity.event.GameEvent;
+import entity.event.GameMechanicEventType;
+import gamemechanics.model.event.EventManager;
+
+/**
+ * Connects an {@link EventBus} to the library's default event space. Its
+ * <code>EventManager</code> listener is looked up on {@link #connect()},
+ * PROPOSE_MOVE events of the bus are passed on to the game controller, and
+ * the controller's MOVE, GAME_RULES_ERROR and GAME_OVER events come back as
+ * typed events.
+ * <p>
+ * The library only takes new <code>GameEvent</code>s, so passing a proposal
+ * on is the one allocation left per move.
+ * <p>
+ * Every event passes here in the order it happened, so this is also where a
+ * {@link JournalWriter} records them.
+ */
+public class LibraryBridge implements Disposable {
+
+	private final EventBus events;
+	private EventManager library;
+	private final EventBus.Listener<MoveEvent> proposeListener = this::onProposeMove;
+	private final MoveEvent moveEvent = new MoveEvent();
+	private final RulesErrorEvent rulesErrorEvent = new RulesErrorEvent();
+	private final GameOverEvent gameOverEvent = new GameOverEvent();
+	private JournalWriter journal;
+	/* Depth of the events from the library being posted. */
+	private int posting;
+	private int lastProposed = TavleiBitboard.NO_MOVE;
+	private int lastMove = TavleiBitboard.NO_MOVE;
+	private boolean muted;
+
+	public LibraryBridge(EventBus events) {
+		this.events = events;
+		events.subscribe(EventType.PROPOSE_MOVE, this.proposeListener);
+	}
+
+	/**
+	 * Listens to the default event space. Needed before the first proposal
+	 * and again after the space has been destroyed for a new game
+	 * controller.
+	 */
+	public void connect() {
+		this.library = EventManager.getEventListenerForMe(null, this);
+		this.library.unsubscribeMe();
+		this.library.addListener(GameMechanicEventType.MOVE, this::onMove);
+		this.library.addListener(GameMechanicEventType.GAME_RULES_ERROR, this::onRulesError);
+		this.library.addListener(GameMechanicEventType.GAME_OVER, this::onGameOver);
+	}
+
+	/**
+	 * @param muted
+	 *            Whether to drop the library's events instead of posting and
+	 *            recording them, while a game controller is brought up to
+	 *            date.
+	 */
+	public void setMuted(boolean muted) {
+		this.muted = muted;
+	}
+
+	/**
+	 * Proposes a move to the game controller directly, without posting or
+	 * recording it.
+	 */
+	public void forward(Move move, Side side) {
+		this.library.triggerEvent(new GameEvent(GameMechanicEventType.PROPOSE_MOVE, move).setSourceSide(side));
+	}
+
+	/**
+	 * @param journal
+	 *            Journal to record every event in, or null.
+	 */
+	public void setJournal(JournalWriter journal) {
+		this.journal = journal;
+	}
+
+	private void onProposeMove(MoveEvent event) {
+		this.lastProposed = encode(event.getMove());
+		if (this.journal != null) {
+			/* A proposal while a library event is posted reacts to it. */
+			int flags = EventJournal.side(event.getSide()) | (this.posting > 0 ? EventJournal.DERIVED : 0);
+			this.journal.record(EventType.PROPOSE_MOVE, flags, this.lastProposed);
+		}
+		this.forward(event.getMove(), event.getSide());
+	}
+
+	/**
+	 * @return Last move the game controller made, muted or not, encoded as
+	 *         in {@link TavleiBitboard}.
+	 */
+	public int getLastMove() {
+		return this.lastMove;
+	}
+
+	private void onMove(GameEvent event) {
+		Move move = (Move) event.getData();
+		int encoded = encode(move);
+		this.lastMove = encoded;
+		if (this.muted) return;
+		if (this.journal != null) {
+			int flags = EventJournal.side(event.getSourceSide())
+					| (encoded != this.lastProposed ? EventJournal.ENGINE : 0);
+			this.journal.record(EventType.MOVE, flags, encoded);
+		}
+		this.post(EventType.MOVE, this.moveEvent.set(move, event.getSourceSide()));
+	}
+
+	private void onRulesError(GameEvent event) {
+		if (this.muted) return;
+		if (this.journal != null) {
+			this.journal.record(EventType.RULES_ERROR, EventJournal.SIDE_NONE, this.lastProposed);
+		}
+		this.post(EventType.RULES_ERROR, this.rulesErrorEvent.set(event.getData()));
+	}
+
+	private void onGameOver(GameEvent event) {
+		if (this.muted) return;
+		TavleiState state = (TavleiState) event.getData();
+		if (this.journal != null) {
+			this.journal.record(EventType.GAME_OVER, EventJournal.SIDE_NONE, state.ordinal() + 1);
+		}
+		this.post(EventType.GAME_OVER, this.gameOverEvent.set(state));
+	}
+
+	private <E> void post(EventType<E> type, E event) {
+		this.posting++;
+		try {
+			this.events.post(type, event);
+		} finally {
+			this.posting--;
+		}
+	}
+
+	private static int encode(Move move) {
+		return TavleiBitboard.encodeMove(TavleiBitboard.square(move.getStart()),
+				TavleiBitboard.square(move.getDestination()));
+	}
+
+	/**
+	 * Stops passing events in either direction.
+	 */
+	@Override
+	public void dispose() {
+		this.events.unsubscribe(EventType.PROPOSE_MOVE, this.proposeListener);
+		if (this.library != null) this.library.unsubscribeMe();
+	}
+
+}
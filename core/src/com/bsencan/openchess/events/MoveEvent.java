@@ -0,0 +1,29 @@
+package com.bsencan.openchess.events;
+
+import entity.Move;
+import entity.Side;
+
+/**
+ * A move and the side that plays it. Reused by whoever posts it, so
+ * listeners must not keep the event, only its move.
+ */
+public class MoveEvent {
+
+	private Move move;
+	private Side side;
+
+	public MoveEvent set(Move move, Side side) {
+		this.move = move;
+		this.side = side;
+		return this;
+	}
+
+	public Move getMove() {
+		return this.move;
+	}
+
+	public Side getSide() {
+		return this.side;
+	}
+
+}
@@ -0,0 +1,22 @@
+package com.bsencan.openchess.events;
+
+/**
+ * A move the game controller rejected. Reused by whoever posts it.
+ */
+public class RulesErrorEvent {
+
+	private Object reason;
+
+	public RulesErrorEvent set(Object reason) {
+		this.reason = reason;
+		return this;
+	}
+
+	/**
+	 * @return What the controller reported, for logging.
+	 */
+	public Object getReason() {
+		return this.reason;
+	}
+
+}
@@ -0,0 +1,79 @@
+package com.bsencan.openchess.journal;
+
+import com.bsencan.openchess.events.EventType;
+import com.bsencan.openchess.events.LibraryBridge;
+
+import java.nio.ByteOrder;
+
+import entity.Side;
+
+/**
+ * Binary format of a game's event journal, written by {@link JournalWriter}
+ * and read by {@link Journal}. Little endian throughout.
+ * <p>
+ * The file starts with a 16 byte header: the magic number, the format
+ * version as a short, a reserved short and the start time in epoch
+ * milliseconds. Then come records of 8 bytes each, in the order the
+ * {@link LibraryBridge} saw the events:
+ * <ul>
+ * <li>byte: {@link EventType#ordinal()}, or {@link #UNDO} or {@link #REDO}</li>
+ * <li>byte: flags, the side in the low two bits</li>
+ * <li>short: the move as <code>from &lt;&lt; 8 | to</code>, for
+ * RULES_ERROR the rejected one, for GAME_OVER the winner's
+ * <code>TavleiState</code> ordinal plus one, games only end with a winner,
+ * for UNDO and REDO the move taken back or made again</li>
+ * <li>int: milliseconds since the start</li>
+ * </ul>
+ * Version 1 journals have no UNDO or REDO records and are read the same.
+ */
+public final class EventJournal {
+
+	public static final int MAGIC = 0x4C4E4A54; // "TJNL"
+	public static final short VERSION = 2;
+	public static final short VERSION_1 = 1;
+	public static final int HEADER_BYTES = 16;
+	public static final int RECORD_BYTES = 8;
+	public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	/** Record of a move taken back on the board. */
+	public static final int UNDO = 4;
+
+	/** Record of an undone move made again. */
+	public static final int REDO = 5;
+
+	public static final int SIDE_WHITE = 0;
+	public static final int SIDE_BLACK = 1;
+	public static final int SIDE_NONE = 3;
+	public static final int SIDE_MASK = 3;
+
+	/**
+	 * Proposal made in reaction to another event, such as the undo after a
+	 * rules error. The game makes it again on replay.
+	 */
+	public static final int DERIVED = 0x10;
+
+	/**
+	 * Move made by the library's own engine rather than proposed.
+	 */
+	public static final int ENGINE = 0x20;
+
+	private EventJournal() {
+	}
+
+	public static int side(Side side) {
+		if (side == null) return SIDE_NONE;
+		return side == Side.WHITE ? SIDE_WHITE : SIDE_BLACK;
+	}
+
+	public static Side toSide(int flags) {
+		switch (flags & SIDE_MASK) {
+		case SIDE_WHITE:
+			return Side.WHITE;
+		case SIDE_BLACK:
+			return Side.BLACK;
+		default:
+			return null;
+		}
+	}
+
+}
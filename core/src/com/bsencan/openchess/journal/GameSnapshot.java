@@ -0,0 +1,196 @@
+package com.bsencan.openchess.journal;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.bsencan.openchess.GameSession;
+import com.bsencan.openchess.ai.EngineType;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import entity.Side;
+import generated.GameModeType;
+
+/**
+ * Game in progress as saved by {@link SnapshotWriter}: the game settings, the
+ * start position, the current position and the moves between them with
+ * their captures, enough to restore the position and its undo stack without
+ * playing the moves again. Little endian, laid out as
+ * <ul>
+ * <li>0: int magic, short version</li>
+ * <li>6: bytes game mode, player's side, engine type and flags, a reserved
+ * short and the AI's budget in milliseconds as an int</li>
+ * <li>16: start position, 36 bytes</li>
+ * <li>52: current position, 36 bytes</li>
+ * <li>88: int number of moves, then 18 bytes per move: a short with the
+ * move as <code>from &lt;&lt; 8 | to</code>, the top bit set if the defenders
+ * made it, and the squares of the pieces it captured as two longs, low word
+ * first</li>
+ * </ul>
+ * A position is the attackers and defenders as four longs, the prince's
+ * square, the side to move, the result and a reserved byte.
+ */
+public class GameSnapshot {
+
+	public static final int MAGIC = 0x504E5354; // "TSNP"
+	public static final short VERSION = 2;
+
+	static final int START_OFFSET = 16;
+	static final int POSITION_OFFSET = 52;
+	static final int MOVES_OFFSET = 88;
+	static final int POSITION_BYTES = 36;
+	static final int MOVE_BYTES = 18;
+	static final int DEFENDERS_BIT = 0x8000;
+	static final int PONDER_FLAG = 1;
+
+	private GameModeType gameMode;
+	private Side mySide;
+	private EngineType engineType;
+	private long aiBudgetMillis;
+	private boolean aiPonder;
+	private final TavleiBitboard start = new TavleiBitboard();
+	private final TavleiBitboard position = new TavleiBitboard();
+	private int[] moves;
+	private long[] capturedLo;
+	private long[] capturedHi;
+
+	public static GameSnapshot read(FileHandle file) throws IOException {
+		return new GameSnapshot(ByteBuffer.wrap(file.readBytes()));
+	}
+
+	public GameSnapshot(ByteBuffer data) throws IOException {
+		data.order(EventJournal.ORDER);
+		if (data.limit() < MOVES_OFFSET + 4 || data.getInt(0) != MAGIC) {
+			throw new IOException("Not a game snapshot");
+		}
+		if (data.getShort(4) != VERSION) {
+			throw new IOException("Unknown snapshot version " + data.getShort(4));
+		}
+		try {
+			this.gameMode = GameModeType.values()[data.get(6)];
+			this.mySide = data.get(7) == EventJournal.SIDE_WHITE ? Side.WHITE : Side.BLACK;
+			this.engineType = EngineType.values()[data.get(8)];
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Unknown game settings", e);
+		}
+		if (this.gameMode == GameModeType.PLAY_WITH_AI && this.engineType != EngineType.ALPHA_BETA) {
+			throw new IOException("Only games against the in-core AI are saved");
+		}
+		this.aiPonder = (data.get(9) & PONDER_FLAG) != 0;
+		this.aiBudgetMillis = data.getInt(12);
+		readPosition(data, START_OFFSET, this.start);
+		readPosition(data, POSITION_OFFSET, this.position);
+
+		int count = data.getInt(MOVES_OFFSET);
+		if (count < 0 || (data.limit() - MOVES_OFFSET - 4) / MOVE_BYTES < count) {
+			throw new IOException("Snapshot cut short");
+		}
+		this.moves = new int[count];
+		this.capturedLo = new long[count];
+		this.capturedHi = new long[count];
+		for (int i = 0; i < count; i++) {
+			int offset = MOVES_OFFSET + 4 + i * MOVE_BYTES;
+			int move = data.getShort(offset) & 0xFFFF;
+			int side = (move & DEFENDERS_BIT) != 0 ? TavleiBitboard.DEFENDERS : TavleiBitboard.ATTACKERS;
+			if (side != this.getSide(i)) throw new IOException("Move " + i + " of the snapshot out of turn");
+			this.moves[i] = move & ~DEFENDERS_BIT;
+			this.capturedLo[i] = data.getLong(offset + 2);
+			this.capturedHi[i] = data.getLong(offset + 10);
+		}
+		try {
+			if (this.position.restoreHistory(count, this.moves, this.capturedLo, this.capturedHi) != this.start.getHash()) {
+				throw new IOException("The moves don't lead from the start to the saved position");
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IOException("The moves don't lead to the saved position", e);
+		}
+	}
+
+	/**
+	 * @return New session with the snapshot's settings, to go on with the
+	 *         game in.
+	 */
+	public GameSession newSession() {
+		GameSession session = new GameSession(this.gameMode, this.mySide, this.engineType);
+		session.setAiBudgetMillis(this.aiBudgetMillis);
+		session.setAiPonder(this.aiPonder);
+		return session;
+	}
+
+	public TavleiBitboard getStart() {
+		return this.start;
+	}
+
+	/**
+	 * @return Current position, with the moves on its undo stack.
+	 */
+	public TavleiBitboard getPosition() {
+		return this.position;
+	}
+
+	public int getMoveCount() {
+		return this.moves.length;
+	}
+
+	/**
+	 * @return Move as encoded by {@link TavleiBitboard}.
+	 */
+	public int getMove(int index) {
+		return this.moves[index];
+	}
+
+	/**
+	 * @return {@link TavleiBitboard#ATTACKERS} or
+	 *         {@link TavleiBitboard#DEFENDERS}.
+	 */
+	public int getSide(int index) {
+		return (this.start.getSideToMove() + index) & 1;
+	}
+
+	/**
+	 * @return Squares of the pieces the move captured, low word.
+	 */
+	public long getCapturedLo(int index) {
+		return this.capturedLo[index];
+	}
+
+	/**
+	 * @return Squares of the pieces the move captured, high word.
+	 */
+	public long getCapturedHi(int index) {
+		return this.capturedHi[index];
+	}
+
+	static void writePosition(ByteBuffer data, TavleiBitboard board) {
+		data.putLong(board.getAttackersLo()).putLong(board.getAttackersHi())
+				.putLong(board.getDefendersLo()).putLong(board.getDefendersHi())
+				.put((byte) board.getPrinceSquare()).put((byte) board.getSideToMove())
+				.put((byte) board.getResult()).put((byte) 0);
+	}
+
+	private static void readPosition(ByteBuffer data, int offset, TavleiBitboard board) throws IOException {
+		board.clear();
+		putAll(board, data.getLong(offset), 0, TavleiBitboard.ATTACKER);
+		putAll(board, data.getLong(offset + 8), 64, TavleiBitboard.ATTACKER);
+		putAll(board, data.getLong(offset + 16), 0, TavleiBitboard.DEFENDER);
+		putAll(board, data.getLong(offset + 24), 64, TavleiBitboard.DEFENDER);
+		int prince = data.get(offset + 32);
+		if (prince >= TavleiBitboard.SQUARES) throw new IOException("Prince off the board");
+		if (prince >= 0) board.put(prince, TavleiBitboard.PRINCE);
+		board.setSideToMove(data.get(offset + 33) & 1);
+		int result = data.get(offset + 34);
+		if (result < TavleiBitboard.IN_PROGRESS || result > TavleiBitboard.DEFENDERS_WIN) {
+			throw new IOException("Unknown result " + result);
+		}
+		board.setResult(result);
+	}
+
+	private static void putAll(TavleiBitboard board, long bits, int base, int kind) throws IOException {
+		for (; bits != 0; bits &= bits - 1) {
+			int square = base + Long.numberOfTrailingZeros(bits);
+			if (square >= TavleiBitboard.SQUARES) throw new IOException("Piece off the board");
+			board.put(square, kind);
+		}
+	}
+
+}
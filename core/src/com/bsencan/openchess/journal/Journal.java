@@ -0,0 +1,152 @@
+package com.bsencan.openchess.journal;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.IntArray;
+import com.bsencan.openchess.events.EventType;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import entity.Side;
+
+/**
+ * A journal written by {@link JournalWriter}, mapped into memory. Records
+ * are read in place, nothing is copied or decoded up front except the index
+ * of the replayable moves.
+ * <p>
+ * A ply of the journal is one move to replay: a proposal that wasn't made in
+ * reaction to another event, a move of the library's engine, or a move taken
+ * back or made again. Replaying those in order through the game controller
+ * makes the same game again, rules errors and undos included.
+ */
+public class Journal {
+
+	private final ByteBuffer records;
+	private final int count;
+	private final long startMillis;
+	private final IntArray plies = new IntArray();
+
+	public static Journal open(FileHandle file) throws IOException {
+		try (RandomAccessFile input = new RandomAccessFile(file.file(), "r");
+				FileChannel channel = input.getChannel()) {
+			/* The mapping stays valid after the channel is closed. */
+			return new Journal(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * @param data
+	 *            Whole journal file.
+	 */
+	public Journal(ByteBuffer data) throws IOException {
+		data.order(EventJournal.ORDER);
+		if (data.limit() < EventJournal.HEADER_BYTES || data.getInt(0) != EventJournal.MAGIC) {
+			throw new IOException("Not an event journal");
+		}
+		if (data.getShort(4) != EventJournal.VERSION && data.getShort(4) != EventJournal.VERSION_1) {
+			throw new IOException("Unknown journal version " + data.getShort(4));
+		}
+		this.startMillis = data.getLong(8);
+		data.position(EventJournal.HEADER_BYTES);
+		this.records = data.slice().order(EventJournal.ORDER);
+		/* A crash may have cut the last record short. */
+		this.count = this.records.limit() / EventJournal.RECORD_BYTES;
+
+		for (int i = 0; i < this.count; i++) {
+			int type = this.getType(i);
+			int flags = this.getFlags(i);
+			if ((type == EventType.PROPOSE_MOVE.ordinal() && (flags & EventJournal.DERIVED) == 0)
+					|| (type == EventType.MOVE.ordinal() && (flags & EventJournal.ENGINE) != 0)
+					|| type == EventJournal.UNDO || type == EventJournal.REDO) {
+				this.plies.add(i);
+			}
+		}
+	}
+
+	public long getStartMillis() {
+		return this.startMillis;
+	}
+
+	public int getRecordCount() {
+		return this.count;
+	}
+
+	/**
+	 * @return {@link EventType#ordinal()} of the record.
+	 */
+	public int getType(int record) {
+		return this.records.get(record * EventJournal.RECORD_BYTES);
+	}
+
+	public int getFlags(int record) {
+		return this.records.get(record * EventJournal.RECORD_BYTES + 1);
+	}
+
+	/**
+	 * @return Encoded move or game state.
+	 */
+	public int getData(int record) {
+		return this.records.getShort(record * EventJournal.RECORD_BYTES + 2) & 0xFFFF;
+	}
+
+	/**
+	 * @return Milliseconds from the start of the game to the record.
+	 */
+	public int getMillis(int record) {
+		return this.records.getInt(record * EventJournal.RECORD_BYTES + 4);
+	}
+
+	/**
+	 * @return Number of moves to replay.
+	 */
+	public int getPlies() {
+		return this.plies.size;
+	}
+
+	/**
+	 * @return Record of the ply.
+	 */
+	public int getRecord(int ply) {
+		return this.plies.get(ply);
+	}
+
+	/**
+	 * @return Record type of the ply: a proposal or engine move,
+	 *         {@link EventJournal#UNDO} or {@link EventJournal#REDO}.
+	 */
+	public int getPlyType(int ply) {
+		return this.getType(this.plies.get(ply));
+	}
+
+	/**
+	 * @return Move of the ply, as encoded by {@link TavleiBitboard}. For an
+	 *         undo or a redo, the move taken back or made again.
+	 */
+	public int getMove(int ply) {
+		return this.getData(this.plies.get(ply));
+	}
+
+	public Side getSide(int ply) {
+		return EventJournal.toSide(this.getFlags(this.plies.get(ply)));
+	}
+
+	/**
+	 * @return Whether the ply is a proposal the game controller rejected with
+	 *         a rules error, which left the board as it was.
+	 */
+	public boolean isRejected(int ply) {
+		int record = this.plies.get(ply);
+		if (this.getType(record) != EventType.PROPOSE_MOVE.ordinal()) return false;
+		int end = ply + 1 < this.plies.size ? this.plies.get(ply + 1) : this.count;
+		for (int i = record + 1; i < end; i++) {
+			if (this.getType(i) == EventType.RULES_ERROR.ordinal() && this.getData(i) == this.getData(record)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,121 @@
+package com.bsencan.openchess.journal;
+
+import com.badlogic.gdx.Gdx;
+import com.bsencan.openchess.actors.BoardActor;
+import com.bsencan.openchess.actors.BoardController;
+import com.bsencan.openchess.actors.MoveHistory;
+import com.bsencan.openchess.model.Positions;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import entity.Move;
+
+/**
+ * Plays a {@link Journal} on a new {@link BoardActor} through its
+ * <code>BoardController</code>, the path of the local user's moves, so the
+ * game controller sees the same proposals it saw when the journal was
+ * written. Undos and redos go through the controller too. The board must be
+ * set up for two local players, an AI would answer the replayed moves.
+ */
+public class JournalReplay {
+
+	private final BoardActor boardActor;
+	private final Journal journal;
+	private int ply;
+
+	public JournalReplay(BoardActor boardActor, Journal journal) {
+		this.boardActor = boardActor;
+		this.journal = journal;
+	}
+
+	/**
+	 * @return Number of plies replayed so far.
+	 */
+	public int getPly() {
+		return this.ply;
+	}
+
+	public Journal getJournal() {
+		return this.journal;
+	}
+
+	/**
+	 * Replays the next ply, animated.
+	 *
+	 * @return False if the journal has ended.
+	 */
+	public boolean step() {
+		if (this.ply >= this.journal.getPlies()) return false;
+		BoardController controller = this.boardActor.getController();
+		switch (this.journal.getPlyType(this.ply)) {
+		case EventJournal.UNDO:
+			controller.undoMove();
+			break;
+		case EventJournal.REDO:
+			controller.redoMove();
+			break;
+		default:
+			int move = this.journal.getMove(this.ply);
+			Move proposal = new Move(Positions.get(TavleiBitboard.moveFrom(move)),
+					Positions.get(TavleiBitboard.moveTo(move)));
+			controller.proposeMove(proposal, this.journal.getSide(this.ply));
+			break;
+		}
+		this.ply++;
+		Gdx.graphics.requestRendering();
+		return true;
+	}
+
+	/**
+	 * Takes the last replayed ply back, animated: a move with an undo, an
+	 * undo by making the move again and a redo with an undo. A proposal the
+	 * game controller rejected left the board as it was and takes nothing
+	 * back.
+	 *
+	 * @return False at the start of the journal.
+	 */
+	public boolean stepBack() {
+		if (this.ply == 0) return false;
+		this.ply--;
+		BoardController controller = this.boardActor.getController();
+		switch (this.journal.getPlyType(this.ply)) {
+		case EventJournal.UNDO:
+			int move = this.journal.getMove(this.ply);
+			MoveHistory history = this.boardActor.getHistory();
+			if (history.canRedo() && history.getMove(history.size()) == move) {
+				controller.redoMove();
+			} else {
+				/* A later move has dropped it from the history. */
+				controller.proposeMove(new Move(Positions.get(TavleiBitboard.moveFrom(move)),
+						Positions.get(TavleiBitboard.moveTo(move))), this.journal.getSide(this.ply));
+			}
+			break;
+		case EventJournal.REDO:
+			controller.undoMove();
+			break;
+		default:
+			if (!this.journal.isRejected(this.ply)) controller.undoMove();
+			break;
+		}
+		Gdx.graphics.requestRendering();
+		return true;
+	}
+
+	/**
+	 * Replays or takes back plies up to a ply without animating and renders
+	 * the result once. Going back takes one undo per ply, the library isn't
+	 * involved until a move is replayed again.
+	 */
+	public void seek(int ply) {
+		this.boardActor.setAnimated(false);
+		while (this.ply < ply) {
+			if (!this.step()) break;
+		}
+		while (this.ply > ply) {
+			if (!this.stepBack()) break;
+		}
+		this.boardActor.setAnimated(true);
+		this.boardActor.markAllDirty();
+		Gdx.graphics.requestRendering();
+	}
+
+}
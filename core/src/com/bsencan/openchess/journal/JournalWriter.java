@@ -0,0 +1,134 @@
+package com.bsencan.openchess.journal;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Disposable;
+import com.bsencan.openchess.events.EventType;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends {@link EventJournal} records to a file through a direct buffer and
+ * a <code>FileChannel</code>. The buffer is written out when it is full, on
+ * {@link #flush()} and when a rules error or the end of the game is
+ * recorded, which is when a journal is most likely to be wanted. Writing
+ * stops quietly after an I/O error, the game goes on without a journal.
+ */
+public class JournalWriter implements Disposable {
+
+	private static final String TAG = "Journal";
+	private static final int BUFFER_BYTES = 4096;
+
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(EventJournal.ORDER);
+	private final long start;
+	private FileChannel channel;
+
+	/**
+	 * Creates or truncates the file and writes the header.
+	 *
+	 * @param file
+	 *            A local or external file.
+	 */
+	public JournalWriter(FileHandle file) throws IOException {
+		this(file, false);
+	}
+
+	/**
+	 * @param file
+	 *            A local or external file.
+	 * @param append
+	 *            Whether to go on with the journal in the file, for a game
+	 *            that has been resumed. Record times stay relative to its
+	 *            start. A file without a valid header is started over.
+	 */
+	public JournalWriter(FileHandle file, boolean append) throws IOException {
+		file.parent().mkdirs();
+		this.channel = new RandomAccessFile(file.file(), "rw").getChannel();
+		long start = append ? this.readStart() : -1;
+		if (start < 0) {
+			this.channel.truncate(0);
+			start = System.currentTimeMillis();
+			this.buffer.putInt(EventJournal.MAGIC).putShort(EventJournal.VERSION).putShort((short) 0)
+					.putLong(start);
+		} else {
+			/* A record cut short by a crash is dropped. */
+			long records = (this.channel.size() - EventJournal.HEADER_BYTES) / EventJournal.RECORD_BYTES;
+			long end = EventJournal.HEADER_BYTES + records * EventJournal.RECORD_BYTES;
+			this.channel.truncate(end);
+			this.channel.position(end);
+		}
+		this.start = start;
+	}
+
+	/**
+	 * @return Start time in the header of the file, or -1 if it has none.
+	 */
+	private long readStart() throws IOException {
+		if (this.channel.size() < EventJournal.HEADER_BYTES) return -1;
+		ByteBuffer header = ByteBuffer.allocate(EventJournal.HEADER_BYTES).order(EventJournal.ORDER);
+		while (header.hasRemaining()) {
+			if (this.channel.read(header, header.position()) < 0) return -1;
+		}
+		if (header.getInt(0) != EventJournal.MAGIC || header.getShort(4) != EventJournal.VERSION) return -1;
+		return header.getLong(8);
+	}
+
+	/**
+	 * @param flags
+	 *            Side and flags of {@link EventJournal}.
+	 * @param data
+	 *            Encoded move or game state.
+	 */
+	public void record(EventType<?> type, int flags, int data) {
+		this.record(type.ordinal(), flags, data);
+	}
+
+	/**
+	 * @param type
+	 *            {@link EventType#ordinal()}, {@link EventJournal#UNDO} or
+	 *            {@link EventJournal#REDO}.
+	 */
+	public void record(int type, int flags, int data) {
+		if (this.channel == null) return;
+		if (this.buffer.remaining() < EventJournal.RECORD_BYTES) this.flush();
+		this.buffer.put((byte) type).put((byte) flags).putShort((short) data)
+				.putInt((int) (System.currentTimeMillis() - this.start));
+		if (type == EventType.RULES_ERROR.ordinal() || type == EventType.GAME_OVER.ordinal()) this.flush();
+	}
+
+	/**
+	 * Writes the buffered records to the file.
+	 */
+	public void flush() {
+		if (this.channel == null) return;
+		this.buffer.flip();
+		try {
+			while (this.buffer.hasRemaining()) {
+				this.channel.write(this.buffer);
+			}
+		} catch (IOException e) {
+			Gdx.app.error(TAG, "Can't write the journal", e);
+			this.close();
+		}
+		this.buffer.clear();
+	}
+
+	private void close() {
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			Gdx.app.error(TAG, "Can't close the journal", e);
+		}
+		this.channel = null;
+	}
+
+	@Override
+	public void dispose() {
+		this.flush();
+		if (this.channel != null) this.close();
+	}
+
+}
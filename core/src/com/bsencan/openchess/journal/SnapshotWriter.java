@@ -0,0 +1,127 @@
+package com.bsencan.openchess.journal;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.IntArray;
+import com.bsencan.openchess.GameSession;
+import com.bsencan.openchess.actors.BoardActor;
+import com.bsencan.openchess.actors.MoveHistory;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import entity.Side;
+
+/**
+ * Keeps a {@link GameSnapshot} of a {@link BoardActor}'s game up to date in a
+ * file. Each {@link #save()} rewrites the fixed size head of the file and
+ * only the moves that changed since the last save, with their captures, so
+ * saving on every pause costs a few small writes however long the game is.
+ */
+public class SnapshotWriter implements Disposable {
+
+	private static final String TAG = "Snapshot";
+
+	private final BoardActor boardActor;
+	private final FileHandle file;
+	private final ByteBuffer head = ByteBuffer.allocateDirect(GameSnapshot.MOVES_OFFSET + 4).order(EventJournal.ORDER);
+	private ByteBuffer moveBuffer = ByteBuffer.allocateDirect(64 * GameSnapshot.MOVE_BYTES).order(EventJournal.ORDER);
+	/* Moves as they are in the file. */
+	private final IntArray written = new IntArray();
+	private FileChannel channel;
+
+	public SnapshotWriter(BoardActor boardActor, FileHandle file) throws IOException {
+		this.boardActor = boardActor;
+		this.file = file;
+		file.parent().mkdirs();
+		/* Nothing is known to be in the file, so the first save writes all of it. */
+		this.channel = new RandomAccessFile(file.file(), "rw").getChannel();
+	}
+
+	/**
+	 * Brings the file up to date with the board.
+	 */
+	public void save() {
+		if (this.channel == null) return;
+		MoveHistory history = this.boardActor.getHistory();
+		int count = history.size();
+		int same = 0;
+		while (same < count && same < this.written.size
+				&& this.written.get(same) == encode(history, same)) {
+			same++;
+		}
+
+		GameSession session = this.boardActor.getSession();
+		this.head.clear();
+		this.head.putInt(GameSnapshot.MAGIC).putShort(GameSnapshot.VERSION)
+				.put((byte) session.getGameModeType().ordinal())
+				.put((byte) EventJournal.side(session.getMySide() == null ? Side.WHITE : session.getMySide()))
+				.put((byte) session.getEngineType().ordinal())
+				.put((byte) (session.isAiPonder() ? GameSnapshot.PONDER_FLAG : 0)).putShort((short) 0)
+				.putInt((int) session.getAiBudgetMillis());
+		GameSnapshot.writePosition(this.head, this.boardActor.getStartPosition());
+		GameSnapshot.writePosition(this.head, this.boardActor.getBitboard());
+		this.head.putInt(count).flip();
+
+		int changed = count - same;
+		if (this.moveBuffer.capacity() < changed * GameSnapshot.MOVE_BYTES) {
+			this.moveBuffer = ByteBuffer.allocateDirect(changed * 2 * GameSnapshot.MOVE_BYTES).order(EventJournal.ORDER);
+		}
+		this.moveBuffer.clear();
+		this.written.truncate(same);
+		for (int i = same; i < count; i++) {
+			int move = encode(history, i);
+			this.moveBuffer.putShort((short) move).putLong(history.getCapturedLo(i)).putLong(history.getCapturedHi(i));
+			this.written.add(move);
+		}
+		this.moveBuffer.flip();
+
+		try {
+			this.write(this.head, 0);
+			this.write(this.moveBuffer, GameSnapshot.MOVES_OFFSET + 4 + same * GameSnapshot.MOVE_BYTES);
+			this.channel.truncate(GameSnapshot.MOVES_OFFSET + 4 + count * GameSnapshot.MOVE_BYTES);
+		} catch (IOException e) {
+			Gdx.app.error(TAG, "Can't save the game", e);
+			this.close();
+		}
+	}
+
+	private void write(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += this.channel.write(buffer, position);
+		}
+	}
+
+	private static int encode(MoveHistory history, int index) {
+		int side = history.getSide(index) == TavleiBitboard.DEFENDERS ? GameSnapshot.DEFENDERS_BIT : 0;
+		return history.getMove(index) | side;
+	}
+
+	/**
+	 * Stops saving and removes the file, for a game that has ended.
+	 */
+	public void delete() {
+		this.close();
+		this.file.delete();
+	}
+
+	private void close() {
+		if (this.channel == null) return;
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			Gdx.app.error(TAG, "Can't close the snapshot", e);
+		}
+		this.channel = null;
+	}
+
+	@Override
+	public void dispose() {
+		this.close();
+	}
+
+}
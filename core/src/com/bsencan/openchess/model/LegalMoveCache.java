@@ -0,0 +1,95 @@
+package com.bsencan.openchess.model;
+
+/**
+ * Destination and capture masks of the pieces of a {@link TavleiBitboard},
+ * computed once per piece and position. Selecting a piece highlights its
+ * moves and captures and then validates the tapped destination; with the
+ * cache all three read the same entry.
+ * <p>
+ * Entries are keyed by square and the board's hash, so an entry left from an
+ * earlier position is never returned. {@link #invalidate()} drops all entries
+ * at once when the position is known to have changed.
+ */
+public class LegalMoveCache {
+
+	private final TavleiBitboard board;
+
+	/* Per square: hash and epoch of the entry, then its four mask words. */
+	private final long[] hashes = new long[TavleiBitboard.SQUARES];
+	private final int[] epochs = new int[TavleiBitboard.SQUARES];
+	private final long[] masks = new long[TavleiBitboard.SQUARES * 4];
+	private final long[] scratch = new long[2];
+	private int epoch = 1;
+
+	private long hits;
+	private long misses;
+
+	public LegalMoveCache(TavleiBitboard board) {
+		this.board = board;
+	}
+
+	/**
+	 * Drops all entries.
+	 */
+	public void invalidate() {
+		this.epoch++;
+	}
+
+	/**
+	 * Same as {@link TavleiBitboard#destinations(int, long[])}, without the
+	 * count.
+	 */
+	public void destinations(int from, long[] mask) {
+		int entry = this.lookup(from);
+		mask[0] = this.masks[entry];
+		mask[1] = this.masks[entry + 1];
+	}
+
+	/**
+	 * Same as {@link TavleiBitboard#captureTargets(int, long[])}.
+	 */
+	public void captureTargets(int from, long[] mask) {
+		int entry = this.lookup(from);
+		mask[0] = this.masks[entry + 2];
+		mask[1] = this.masks[entry + 3];
+	}
+
+	/**
+	 * Same as {@link TavleiBitboard#isLegal(int, int)}.
+	 */
+	public boolean isLegal(int from, int to) {
+		int entry = this.lookup(from);
+		return TavleiBitboard.isSet(this.masks[entry], this.masks[entry + 1], to);
+	}
+
+	/**
+	 * @return Index of the up to date entry of the square, filled on a miss.
+	 */
+	private int lookup(int square) {
+		int entry = square * 4;
+		long hash = this.board.getHash();
+		if (this.epochs[square] == this.epoch && this.hashes[square] == hash) {
+			this.hits++;
+			return entry;
+		}
+		this.misses++;
+		this.board.destinations(square, this.scratch);
+		this.masks[entry] = this.scratch[0];
+		this.masks[entry + 1] = this.scratch[1];
+		this.board.captureTargets(square, this.scratch);
+		this.masks[entry + 2] = this.scratch[0];
+		this.masks[entry + 3] = this.scratch[1];
+		this.hashes[square] = hash;
+		this.epochs[square] = this.epoch;
+		return entry;
+	}
+
+	public long getHits() {
+		return this.hits;
+	}
+
+	public long getMisses() {
+		return this.misses;
+	}
+
+}
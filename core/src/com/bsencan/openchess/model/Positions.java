@@ -0,0 +1,35 @@
+package com.bsencan.openchess.model;
+
+import entity.Position;
+
+/**
+ * Shared {@link Position} instances, one per square, so code running on every
+ * tap or frame doesn't allocate a new one. Positions are never modified, so
+ * the same instance can be handed to the library and kept by it.
+ */
+public final class Positions {
+
+	private static final Position[] SQUARES = new Position[TavleiBitboard.SQUARES];
+
+	static {
+		for (int square = 0; square < SQUARES.length; square++) {
+			SQUARES[square] = new Position(TavleiBitboard.row(square), TavleiBitboard.col(square));
+		}
+	}
+
+	private Positions() {
+	}
+
+	/**
+	 * @param square
+	 *            Square index, see {@link TavleiBitboard#square(int, int)}.
+	 */
+	public static Position get(int square) {
+		return SQUARES[square];
+	}
+
+	public static Position get(int row, int col) {
+		return SQUARES[TavleiBitboard.square(row, col)];
+	}
+
+}
@@ -0,0 +1,835 @@
+/*
+ * Copyright 2026 The OpenChess Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.bsencan.openchess.model;
+
+import java.util.Arrays;
+
+import entity.Position;
+import entity.Side;
+import entity.TavleiState;
+import gamemechanics.model.tavlei.TavleiPiece;
+import gamemechanics.model.tavlei.TavleiPieceType;
+
+/**
+ * Packed model of a 9x9 tavlei position. Attackers, defenders, the prince and
+ * the special squares are kept as 81 bit masks split over two longs: squares
+ * 0..63 live in the low word, squares 64..80 in the high word. A square index
+ * is <code>row * 9 + col</code>.
+ * <p>
+ * Moves are encoded as ints (see {@link #encodeMove(int, int)}) and applied
+ * with {@link #makeMove(int)} / {@link #unmakeMove()}, so move generation and
+ * capture checks never allocate. A {@link Zobrist} hash of the position and
+ * side to move is kept up to date incrementally.
+ * <p>
+ * Rules follow the library controller: every piece slides like a rook, only
+ * the prince may enter or cross a special square, a piece is captured when
+ * it is sandwiched between two enemies (an empty special square counts as an
+ * enemy), the prince is captured when attackers or special squares close all
+ * four sides, and the prince wins by reaching a corner.
+ */
+public class TavleiBitboard {
+
+	public static final int SIZE = 9;
+	public static final int SQUARES = SIZE * SIZE;
+
+	/* Sides. Attackers play black, defenders play white. */
+	public static final int ATTACKERS = 0;
+	public static final int DEFENDERS = 1;
+
+	/* Piece kinds. */
+	public static final int EMPTY = -1;
+	public static final int ATTACKER = 0;
+	public static final int DEFENDER = 1;
+	public static final int PRINCE = 2;
+
+	/* Game results. */
+	public static final int IN_PROGRESS = 0;
+	public static final int ATTACKERS_WIN = 1;
+	public static final int DEFENDERS_WIN = 2;
+
+	public static final int NO_MOVE = -1;
+
+	/**
+	 * Upper bound of legal moves in any position. Every piece can reach at most
+	 * 16 squares and there are never more than 81 pieces.
+	 */
+	public static final int MAX_MOVES = 16 * SQUARES;
+
+	private static final int CENTRE = 4 * SIZE + 4;
+	private static final int[] CORNERS = { 0, SIZE - 1, SQUARES - SIZE,
+			SQUARES - 1 };
+
+	/**
+	 * Centre and corners, the squares <code>BoardActor</code> draws as special
+	 * tiles.
+	 */
+	public static final long SPECIAL_LO;
+	public static final long SPECIAL_HI;
+	private static final long CORNERS_LO;
+	private static final long CORNERS_HI;
+
+	/**
+	 * <code>NEIGHBOURS[direction][square]</code> is the adjacent square in
+	 * that direction or -1 past the edge. Directions are up, down, left, right.
+	 */
+	private static final int[][] NEIGHBOURS = new int[4][SQUARES];
+
+	static {
+		long lo = 0, hi = 0;
+		for (int corner : CORNERS) {
+			if (corner < 64) lo |= 1L << corner;
+			else hi |= 1L << (corner - 64);
+		}
+		CORNERS_LO = lo;
+		CORNERS_HI = hi;
+		SPECIAL_LO = lo | (1L << CENTRE);
+		SPECIAL_HI = hi;
+
+		for (int square = 0; square < SQUARES; square++) {
+			int row = square / SIZE;
+			int col = square % SIZE;
+			NEIGHBOURS[0][square] = row < SIZE - 1 ? square + SIZE : -1;
+			NEIGHBOURS[1][square] = row > 0 ? square - SIZE : -1;
+			NEIGHBOURS[2][square] = col > 0 ? square - 1 : -1;
+			NEIGHBOURS[3][square] = col < SIZE - 1 ? square + 1 : -1;
+		}
+	}
+
+	private long attackersLo, attackersHi;
+	private long defendersLo, defendersHi;
+	private long princeLo, princeHi;
+	private int princeSquare = -1;
+	private int sideToMove = ATTACKERS;
+	private int result = IN_PROGRESS;
+	private long hash;
+
+	/* Undo stack. One entry per made move. */
+	private int ply;
+	private int[] historyMoves = new int[256];
+	private long[] historyHash = new long[256];
+	private long[] historyCapturedLo = new long[256];
+	private long[] historyCapturedHi = new long[256];
+	private int[] historyState = new int[256];
+
+	/* Scratch masks for captures of the move being made. */
+	private long capturedLo, capturedHi;
+
+	/* -- Square helpers -- */
+
+	public static int square(int row, int col) {
+		return row * SIZE + col;
+	}
+
+	public static int square(Position position) {
+		return square(position.getRow(), position.getCol());
+	}
+
+	public static int row(int square) {
+		return square / SIZE;
+	}
+
+	public static int col(int square) {
+		return square % SIZE;
+	}
+
+	public static boolean isSet(long lo, long hi, int square) {
+		return square < 64 ? (lo & (1L << square)) != 0
+				: (hi & (1L << (square - 64))) != 0;
+	}
+
+	public static boolean isSpecial(int square) {
+		return isSet(SPECIAL_LO, SPECIAL_HI, square);
+	}
+
+	public static boolean isCorner(int square) {
+		return isSet(CORNERS_LO, CORNERS_HI, square);
+	}
+
+	/**
+	 * @return Square of the lowest set bit of the mask or -1 if it is empty.
+	 */
+	public static int firstSquare(long lo, long hi) {
+		if (lo != 0) return Long.numberOfTrailingZeros(lo);
+		if (hi != 0) return 64 + Long.numberOfTrailingZeros(hi);
+		return -1;
+	}
+
+	public static int neighbour(int direction, int square) {
+		return NEIGHBOURS[direction][square];
+	}
+
+	/* -- Move encoding -- */
+
+	public static int encodeMove(int from, int to) {
+		return (from << 8) | to;
+	}
+
+	public static int moveFrom(int move) {
+		return move >>> 8;
+	}
+
+	public static int moveTo(int move) {
+		return move & 0xFF;
+	}
+
+	/* -- Side and piece conversion -- */
+
+	public static int side(Side side) {
+		return side == Side.BLACK ? ATTACKERS : DEFENDERS;
+	}
+
+	public static Side toSide(int side) {
+		return side == ATTACKERS ? Side.BLACK : Side.WHITE;
+	}
+
+	/**
+	 * @return The library's state for a result, null while in progress.
+	 */
+	public static TavleiState toState(int result) {
+		if (result == ATTACKERS_WIN) return TavleiState.BLACK_WINS;
+		return result == DEFENDERS_WIN ? TavleiState.WHITE_WINS : null;
+	}
+
+	public static int kind(TavleiPiece piece) {
+		if (piece.getSide() == Side.BLACK) return ATTACKER;
+		return piece.getType() == TavleiPieceType.KING ? PRINCE : DEFENDER;
+	}
+
+	public static int sideOfKind(int kind) {
+		return kind == ATTACKER ? ATTACKERS : DEFENDERS;
+	}
+
+	/* -- Setup -- */
+
+	/**
+	 * Removes all pieces and resets the side to move and the undo stack.
+	 */
+	public void clear() {
+		this.attackersLo = this.attackersHi = 0;
+		this.defendersLo = this.defendersHi = 0;
+		this.princeLo = this.princeHi = 0;
+		this.princeSquare = -1;
+		this.sideToMove = ATTACKERS;
+		this.result = IN_PROGRESS;
+		this.hash = 0;
+		this.ply = 0;
+	}
+
+	/**
+	 * Places a piece of the given kind on an empty square.
+	 */
+	public void put(int square, int kind) {
+		long lo = square < 64 ? 1L << square : 0;
+		long hi = square < 64 ? 0 : 1L << (square - 64);
+		if (kind != EMPTY) this.hash ^= Zobrist.key(kind, square);
+		switch (kind) {
+		case ATTACKER:
+			this.attackersLo |= lo;
+			this.attackersHi |= hi;
+			break;
+		case DEFENDER:
+			this.defendersLo |= lo;
+			this.defendersHi |= hi;
+			break;
+		case PRINCE:
+			this.princeLo = lo;
+			this.princeHi = hi;
+			this.princeSquare = square;
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Removes whatever stands on the square. Used when the authoritative
+	 * library board reports a capture this model has not made itself.
+	 */
+	public void remove(int square) {
+		int kind = this.kindAt(square);
+		if (kind != EMPTY) this.hash ^= Zobrist.key(kind, square);
+		long lo = square < 64 ? ~(1L << square) : -1L;
+		long hi = square < 64 ? -1L : ~(1L << (square - 64));
+		this.attackersLo &= lo;
+		this.attackersHi &= hi;
+		this.defendersLo &= lo;
+		this.defendersHi &= hi;
+		if (square == this.princeSquare) {
+			this.princeLo = this.princeHi = 0;
+			this.princeSquare = -1;
+		}
+	}
+
+	/**
+	 * Copies the position, side to move and result of another board. The undo
+	 * stack is not copied.
+	 */
+	public void set(TavleiBitboard other) {
+		this.attackersLo = other.attackersLo;
+		this.attackersHi = other.attackersHi;
+		this.defendersLo = other.defendersLo;
+		this.defendersHi = other.defendersHi;
+		this.princeLo = other.princeLo;
+		this.princeHi = other.princeHi;
+		this.princeSquare = other.princeSquare;
+		this.sideToMove = other.sideToMove;
+		this.result = other.result;
+		this.hash = other.hash;
+		this.ply = 0;
+	}
+
+	/**
+	 * Copies the position of another board together with its undo stack.
+	 */
+	public void setWithHistory(TavleiBitboard other) {
+		this.set(other);
+		while (this.historyMoves.length < other.ply) this.growHistory();
+		System.arraycopy(other.historyMoves, 0, this.historyMoves, 0, other.ply);
+		System.arraycopy(other.historyHash, 0, this.historyHash, 0, other.ply);
+		System.arraycopy(other.historyCapturedLo, 0, this.historyCapturedLo, 0, other.ply);
+		System.arraycopy(other.historyCapturedHi, 0, this.historyCapturedHi, 0, other.ply);
+		System.arraycopy(other.historyState, 0, this.historyState, 0, other.ply);
+		this.ply = other.ply;
+	}
+
+	/**
+	 * Fills the undo stack with the moves that led to the current position,
+	 * as if they had been made with {@link #makeMove(int, long, long)}, so
+	 * that a saved game comes back without being played again. The positions
+	 * before the moves are found by taking them back one by one with the
+	 * captures given; no rules are applied.
+	 *
+	 * @return Hash of the position before the first move.
+	 * @throws IllegalArgumentException
+	 *             If a move and its captures don't fit the position after
+	 *             them.
+	 */
+	public long restoreHistory(int count, int[] moves, long[] capturedLo, long[] capturedHi) {
+		while (this.historyMoves.length < count) this.growHistory();
+		TavleiBitboard before = new TavleiBitboard();
+		before.set(this);
+		for (int i = count - 1; i >= 0; i--) {
+			int move = moves[i];
+			int from = moveFrom(move);
+			int to = moveTo(move);
+			long lo = capturedLo[i];
+			long hi = capturedHi[i];
+			int kind = from < SQUARES && to < SQUARES ? before.kindAt(to) : EMPTY;
+			if (kind == EMPTY || sideOfKind(kind) == before.sideToMove || !before.isEmpty(from)
+					|| isSet(lo, hi, from) || hi >>> (SQUARES - 64) != 0
+					|| (lo & (before.attackersLo | before.defendersLo)) != 0
+					|| (hi & (before.attackersHi | before.defendersHi)) != 0) {
+				throw new IllegalArgumentException("Move " + i + " doesn't lead to the position after it");
+			}
+			/* Taken back as the only move on the stack. */
+			before.historyMoves[0] = move;
+			before.historyCapturedLo[0] = lo;
+			before.historyCapturedHi[0] = hi;
+			before.historyState[0] = sideOfKind(kind) | (IN_PROGRESS << 1);
+			before.ply = 1;
+			before.unmakeMove();
+			before.hash = before.computeHash();
+
+			this.historyMoves[i] = move;
+			this.historyHash[i] = before.hash;
+			this.historyCapturedLo[i] = lo;
+			this.historyCapturedHi[i] = hi;
+			this.historyState[i] = before.sideToMove | (before.result << 1);
+		}
+		this.ply = count;
+		return before.hash;
+	}
+
+	/**
+	 * Forgets the undo stack, keeping the position.
+	 */
+	public void clearHistory() {
+		this.ply = 0;
+	}
+
+	public void setSideToMove(int side) {
+		if (side != this.sideToMove) this.hash ^= Zobrist.DEFENDERS_TO_MOVE;
+		this.sideToMove = side;
+	}
+
+	/**
+	 * @param result
+	 *            {@link #IN_PROGRESS}, {@link #ATTACKERS_WIN} or
+	 *            {@link #DEFENDERS_WIN}.
+	 */
+	public void setResult(int result) {
+		this.result = result;
+	}
+
+	/* -- Getters -- */
+
+	public int getSideToMove() {
+		return this.sideToMove;
+	}
+
+	public int getResult() {
+		return this.result;
+	}
+
+	/**
+	 * The result isn't updated when the side to move is left without a move,
+	 * which would take a move generation after every move.
+	 *
+	 * @return Result of the game if the side to move has no legal move: that
+	 *         side has lost. The library's games only end with a winner.
+	 */
+	public int getResultWithoutMoves() {
+		return this.sideToMove == ATTACKERS ? DEFENDERS_WIN : ATTACKERS_WIN;
+	}
+
+	public int getPrinceSquare() {
+		return this.princeSquare;
+	}
+
+	public int getPly() {
+		return this.ply;
+	}
+
+	/**
+	 * @return Zobrist hash of the pieces and the side to move.
+	 */
+	public long getHash() {
+		return this.hash;
+	}
+
+	/**
+	 * Computes the Zobrist hash from scratch, for checking the incremental
+	 * one.
+	 */
+	public long computeHash() {
+		long value = this.sideToMove == DEFENDERS ? Zobrist.DEFENDERS_TO_MOVE : 0;
+		for (int square = 0; square < SQUARES; square++) {
+			int kind = this.kindAt(square);
+			if (kind != EMPTY) value ^= Zobrist.key(kind, square);
+		}
+		return value;
+	}
+
+	public long getAttackersLo() {
+		return this.attackersLo;
+	}
+
+	public long getAttackersHi() {
+		return this.attackersHi;
+	}
+
+	public long getDefendersLo() {
+		return this.defendersLo;
+	}
+
+	public long getDefendersHi() {
+		return this.defendersHi;
+	}
+
+	public int getAttackerCount() {
+		return Long.bitCount(this.attackersLo) + Long.bitCount(this.attackersHi);
+	}
+
+	public int getDefenderCount() {
+		return Long.bitCount(this.defendersLo) + Long.bitCount(this.defendersHi);
+	}
+
+	/**
+	 * @return Kind of the piece on the square or {@link #EMPTY}.
+	 */
+	public int kindAt(int square) {
+		if (square == this.princeSquare) return PRINCE;
+		if (isSet(this.attackersLo, this.attackersHi, square)) return ATTACKER;
+		if (isSet(this.defendersLo, this.defendersHi, square)) return DEFENDER;
+		return EMPTY;
+	}
+
+	public boolean isEmpty(int square) {
+		long lo = this.attackersLo | this.defendersLo | this.princeLo;
+		long hi = this.attackersHi | this.defendersHi | this.princeHi;
+		return !isSet(lo, hi, square);
+	}
+
+	/**
+	 * @return Whether the square holds a piece of the side, counting the prince
+	 *         as a defender.
+	 */
+	private boolean isOwn(int side, int square) {
+		if (side == ATTACKERS) {
+			return isSet(this.attackersLo, this.attackersHi, square);
+		}
+		return isSet(this.defendersLo | this.princeLo, this.defendersHi
+				| this.princeHi, square);
+	}
+
+	/**
+	 * @return Whether the square is hostile to a piece of the other side, that
+	 *         is holds a piece of <code>side</code> or is an empty special
+	 *         square.
+	 */
+	private boolean isHostileFor(int side, int square) {
+		return isOwn(side, square) || (isSpecial(square) && isEmpty(square));
+	}
+
+	/* -- Move generation -- */
+
+	/**
+	 * Writes the destinations reachable by the piece on <code>from</code> into
+	 * <code>mask[0]</code> (low word) and <code>mask[1]</code> (high word).
+	 *
+	 * @return Number of destinations.
+	 */
+	public int destinations(int from, long[] mask) {
+		long lo = 0, hi = 0;
+		int count = 0;
+		boolean prince = from == this.princeSquare;
+		long occupiedLo = this.attackersLo | this.defendersLo | this.princeLo;
+		long occupiedHi = this.attackersHi | this.defendersHi | this.princeHi;
+
+		if (isSet(occupiedLo, occupiedHi, from)) {
+			for (int direction = 0; direction < 4; direction++) {
+				int to = NEIGHBOURS[direction][from];
+				while (to >= 0 && !isSet(occupiedLo, occupiedHi, to)) {
+					if (!prince && isSpecial(to)) break;
+					if (to < 64) lo |= 1L << to;
+					else hi |= 1L << (to - 64);
+					count++;
+					to = NEIGHBOURS[direction][to];
+				}
+			}
+		}
+		mask[0] = lo;
+		mask[1] = hi;
+		return count;
+	}
+
+	/**
+	 * @return Whether the piece on <code>from</code> may move to
+	 *         <code>to</code>, regardless of whose turn it is.
+	 */
+	public boolean isLegal(int from, int to) {
+		if (from == to || isEmpty(from)) return false;
+		int direction;
+		if (row(from) == row(to)) direction = col(to) > col(from) ? 3 : 2;
+		else if (col(from) == col(to)) direction = row(to) > row(from) ? 0 : 1;
+		else return false;
+
+		boolean prince = from == this.princeSquare;
+		int square = from;
+		do {
+			square = NEIGHBOURS[direction][square];
+			if (!isEmpty(square) || (!prince && isSpecial(square))) return false;
+		} while (square != to);
+		return true;
+	}
+
+	/**
+	 * Generates all moves of the side to move.
+	 *
+	 * @param moves
+	 *            Buffer of at least {@link #MAX_MOVES} entries from
+	 *            <code>offset</code>.
+	 * @return Number of generated moves.
+	 */
+	public int generateMoves(int[] moves, int offset) {
+		if (this.result != IN_PROGRESS) return 0;
+		long lo, hi;
+		if (this.sideToMove == ATTACKERS) {
+			lo = this.attackersLo;
+			hi = this.attackersHi;
+		} else {
+			lo = this.defendersLo | this.princeLo;
+			hi = this.defendersHi | this.princeHi;
+		}
+		long occupiedLo = this.attackersLo | this.defendersLo | this.princeLo;
+		long occupiedHi = this.attackersHi | this.defendersHi | this.princeHi;
+
+		int count = offset;
+		while (lo != 0 || hi != 0) {
+			int from;
+			if (lo != 0) {
+				from = Long.numberOfTrailingZeros(lo);
+				lo &= lo - 1;
+			} else {
+				from = 64 + Long.numberOfTrailingZeros(hi);
+				hi &= hi - 1;
+			}
+			boolean prince = from == this.princeSquare;
+			for (int direction = 0; direction < 4; direction++) {
+				int to = NEIGHBOURS[direction][from];
+				while (to >= 0 && !isSet(occupiedLo, occupiedHi, to)) {
+					if (!prince && isSpecial(to)) break;
+					moves[count++] = encodeMove(from, to);
+					to = NEIGHBOURS[direction][to];
+				}
+			}
+		}
+		return count - offset;
+	}
+
+	/* -- Captures -- */
+
+	/**
+	 * Writes the pieces the move would capture into <code>mask</code> without
+	 * making it.
+	 *
+	 * @return Number of captured pieces, the prince included.
+	 */
+	public int captures(int move, long[] mask) {
+		int from = moveFrom(move);
+		int kind = kindAt(from);
+		if (kind == EMPTY) {
+			mask[0] = mask[1] = 0;
+			return 0;
+		}
+		this.lift(from, kind);
+		this.put(moveTo(move), kind);
+		this.findCaptures(sideOfKind(kind), moveTo(move));
+		this.lift(moveTo(move), kind);
+		this.put(from, kind);
+
+		mask[0] = this.capturedLo;
+		mask[1] = this.capturedHi;
+		return Long.bitCount(this.capturedLo) + Long.bitCount(this.capturedHi);
+	}
+
+	/**
+	 * Writes all pieces the piece on <code>from</code> could capture with any
+	 * of its moves into <code>mask</code>.
+	 */
+	public void captureTargets(int from, long[] mask) {
+		long lo = 0, hi = 0;
+		this.destinations(from, mask);
+		long toLo = mask[0], toHi = mask[1];
+		while (toLo != 0 || toHi != 0) {
+			int to;
+			if (toLo != 0) {
+				to = Long.numberOfTrailingZeros(toLo);
+				toLo &= toLo - 1;
+			} else {
+				to = 64 + Long.numberOfTrailingZeros(toHi);
+				toHi &= toHi - 1;
+			}
+			this.captures(encodeMove(from, to), mask);
+			lo |= mask[0];
+			hi |= mask[1];
+		}
+		mask[0] = lo;
+		mask[1] = hi;
+	}
+
+	/**
+	 * Collects into the scratch masks the pieces captured by the side that has
+	 * just moved onto <code>to</code>.
+	 */
+	private void findCaptures(int side, int to) {
+		long lo = 0, hi = 0;
+		int enemy = 1 - side;
+		for (int direction = 0; direction < 4; direction++) {
+			int victim = NEIGHBOURS[direction][to];
+			if (victim < 0) continue;
+			if (victim == this.princeSquare) {
+				if (side == ATTACKERS && this.isPrinceEnclosed()) {
+					if (victim < 64) lo |= 1L << victim;
+					else hi |= 1L << (victim - 64);
+				}
+				continue;
+			}
+			if (!isOwn(enemy, victim)) continue;
+			int anvil = NEIGHBOURS[direction][victim];
+			if (anvil >= 0 && this.isHostileFor(side, anvil)) {
+				if (victim < 64) lo |= 1L << victim;
+				else hi |= 1L << (victim - 64);
+			}
+		}
+		this.capturedLo = lo;
+		this.capturedHi = hi;
+	}
+
+	private boolean isPrinceEnclosed() {
+		for (int direction = 0; direction < 4; direction++) {
+			int side = NEIGHBOURS[direction][this.princeSquare];
+			if (side < 0 || !this.isHostileFor(ATTACKERS, side)) return false;
+		}
+		return true;
+	}
+
+	private void lift(int square, int kind) {
+		long lo = square < 64 ? ~(1L << square) : -1L;
+		long hi = square < 64 ? -1L : ~(1L << (square - 64));
+		if (kind != EMPTY) this.hash ^= Zobrist.key(kind, square);
+		switch (kind) {
+		case ATTACKER:
+			this.attackersLo &= lo;
+			this.attackersHi &= hi;
+			break;
+		case DEFENDER:
+			this.defendersLo &= lo;
+			this.defendersHi &= hi;
+			break;
+		case PRINCE:
+			this.princeLo = this.princeHi = 0;
+			this.princeSquare = -1;
+			break;
+		default:
+			break;
+		}
+	}
+
+	/* -- Make / unmake -- */
+
+	/**
+	 * Plays a move of the piece on its start square, removes captured pieces
+	 * and passes the turn to the other side.
+	 *
+	 * @return Number of captured pieces.
+	 * @throws IllegalArgumentException
+	 *             If the start square doesn't hold a piece of the side to
+	 *             move.
+	 */
+	public int makeMove(int move) {
+		return this.makeMove(move, false, 0, 0);
+	}
+
+	/**
+	 * Plays a move capturing the given pieces instead of those the rules of
+	 * this model find, to follow the library's controller. Squares that don't
+	 * hold a piece of the other side are ignored. Taken back by
+	 * {@link #unmakeMove()} like any other move.
+	 *
+	 * @return Number of captured pieces.
+	 * @throws IllegalArgumentException
+	 *             If the start square doesn't hold a piece of the side to
+	 *             move.
+	 */
+	public int makeMove(int move, long capturedLo, long capturedHi) {
+		return this.makeMove(move, true, capturedLo, capturedHi);
+	}
+
+	private int makeMove(int move, boolean given, long givenLo, long givenHi) {
+		int from = moveFrom(move);
+		int to = moveTo(move);
+		int kind = kindAt(from);
+		if (kind == EMPTY || sideOfKind(kind) != this.sideToMove) {
+			throw new IllegalArgumentException("No piece of the side to move on square " + from);
+		}
+		int side = this.sideToMove;
+
+		if (this.ply == this.historyMoves.length) this.growHistory();
+		this.historyMoves[this.ply] = move;
+		this.historyHash[this.ply] = this.hash;
+		this.historyState[this.ply] = this.sideToMove | (this.result << 1);
+
+		this.lift(from, kind);
+		this.put(to, kind);
+		if (given) {
+			int enemy = 1 - side;
+			long enemyLo = enemy == ATTACKERS ? this.attackersLo : this.defendersLo | this.princeLo;
+			long enemyHi = enemy == ATTACKERS ? this.attackersHi : this.defendersHi | this.princeHi;
+			this.capturedLo = givenLo & enemyLo;
+			this.capturedHi = givenHi & enemyHi;
+		} else {
+			this.findCaptures(side, to);
+		}
+		long lo = this.capturedLo;
+		long hi = this.capturedHi;
+		this.historyCapturedLo[this.ply] = lo;
+		this.historyCapturedHi[this.ply] = hi;
+		this.ply++;
+
+		if (this.princeSquare >= 0 && isSet(lo, hi, this.princeSquare)) {
+			/* The prince stays on the board so unmake can find it. */
+			this.result = ATTACKERS_WIN;
+			if (this.princeSquare < 64) lo &= ~(1L << this.princeSquare);
+			else hi &= ~(1L << (this.princeSquare - 64));
+		} else if (kind == PRINCE && isCorner(to)) {
+			this.result = DEFENDERS_WIN;
+		}
+		int victims = side == ATTACKERS ? DEFENDER : ATTACKER;
+		for (long bits = lo; bits != 0; bits &= bits - 1) {
+			this.hash ^= Zobrist.key(victims, Long.numberOfTrailingZeros(bits));
+		}
+		for (long bits = hi; bits != 0; bits &= bits - 1) {
+			this.hash ^= Zobrist.key(victims, 64 + Long.numberOfTrailingZeros(bits));
+		}
+		if (side == ATTACKERS) {
+			this.defendersLo &= ~lo;
+			this.defendersHi &= ~hi;
+		} else {
+			this.attackersLo &= ~lo;
+			this.attackersHi &= ~hi;
+		}
+		this.hash ^= Zobrist.DEFENDERS_TO_MOVE;
+		this.sideToMove = 1 - side;
+		return Long.bitCount(this.capturedLo) + Long.bitCount(this.capturedHi);
+	}
+
+	/**
+	 * Takes back the last move made, restoring any captured pieces.
+	 */
+	public void unmakeMove() {
+		this.ply--;
+		int move = this.historyMoves[this.ply];
+		int to = moveTo(move);
+		int kind = kindAt(to);
+		int side = sideOfKind(kind);
+		long lo = this.historyCapturedLo[this.ply];
+		long hi = this.historyCapturedHi[this.ply];
+
+		if (this.princeSquare >= 0) {
+			if (this.princeSquare < 64) lo &= ~(1L << this.princeSquare);
+			else hi &= ~(1L << (this.princeSquare - 64));
+		}
+		if (side == ATTACKERS) {
+			this.defendersLo |= lo;
+			this.defendersHi |= hi;
+		} else {
+			this.attackersLo |= lo;
+			this.attackersHi |= hi;
+		}
+		this.lift(to, kind);
+		this.put(moveFrom(move), kind);
+
+		int state = this.historyState[this.ply];
+		this.sideToMove = state & 1;
+		this.result = state >> 1;
+		this.hash = this.historyHash[this.ply];
+	}
+
+	/**
+	 * @return Pieces captured by the last made move, low word.
+	 */
+	public long getLastCapturedLo() {
+		return this.ply == 0 ? 0 : this.historyCapturedLo[this.ply - 1];
+	}
+
+	/**
+	 * @return Pieces captured by the last made move, high word.
+	 */
+	public long getLastCapturedHi() {
+		return this.ply == 0 ? 0 : this.historyCapturedHi[this.ply - 1];
+	}
+
+	private void growHistory() {
+		int size = this.historyMoves.length * 2;
+		this.historyMoves = Arrays.copyOf(this.historyMoves, size);
+		this.historyHash = Arrays.copyOf(this.historyHash, size);
+		this.historyCapturedLo = Arrays.copyOf(
+				this.historyCapturedLo, size);
+		this.historyCapturedHi = Arrays.copyOf(
+				this.historyCapturedHi, size);
+		this.historyState = Arrays.copyOf(this.historyState, size);
+	}
+
+}
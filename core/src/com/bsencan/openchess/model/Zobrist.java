@@ -0,0 +1,44 @@
+package com.bsencan.openchess.model;
+
+/**
+ * Zobrist keys of a {@link TavleiBitboard}: one random 64 bit key per square
+ * and piece kind, and one for the defenders to move. The keys are generated
+ * from a fixed seed so hashes are stable across runs and devices.
+ */
+public final class Zobrist {
+
+	private static final long[] PIECES = new long[3 * TavleiBitboard.SQUARES];
+
+	/** Xored in when the defenders are to move. */
+	public static final long DEFENDERS_TO_MOVE;
+
+	static {
+		long seed = 0x7A5E1D0B0A4D5EEDL;
+		for (int i = 0; i < PIECES.length; i++) {
+			seed += 0x9E3779B97F4A7C15L;
+			PIECES[i] = mix(seed);
+		}
+		seed += 0x9E3779B97F4A7C15L;
+		DEFENDERS_TO_MOVE = mix(seed);
+	}
+
+	private Zobrist() {
+	}
+
+	/**
+	 * @param kind
+	 *            {@link TavleiBitboard#ATTACKER}, {@link TavleiBitboard#DEFENDER}
+	 *            or {@link TavleiBitboard#PRINCE}.
+	 */
+	public static long key(int kind, int square) {
+		return PIECES[kind * TavleiBitboard.SQUARES + square];
+	}
+
+	/* SplitMix64 finalizer. */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+}
@@ -0,0 +1,65 @@
+package com.bsencan.openchess.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A client of a {@link GameServer}. Only the {@link FrameLoop} that owns it
+ * touches it.
+ */
+final class Connection {
+
+	/** Output a client may leave unread before it is dropped. */
+	private static final int MAX_OUTPUT = 64 * 1024;
+
+	final SocketChannel channel;
+	volatile FrameLoop owner;
+	SelectionKey key;
+	/* The bytes of a frame cut in two by a read. */
+	final ByteBuffer partial = ByteBuffer.allocate(NetProtocol.FRAME_BYTES);
+	/* Frames not written yet, in write mode. */
+	private ByteBuffer output = ByteBuffer.allocate(64).order(NetProtocol.ORDER);
+	/* Whether it is on the owner's list of connections to flush. */
+	boolean queued;
+
+	ServerGame game;
+	/* Side in the game, or the side wanted while waiting, -1 for none. */
+	int side = -1;
+	boolean waiting;
+
+	Connection(SocketChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Queues a frame. It is written when the owner flushes.
+	 */
+	void send(int type, int flags, int data) throws IOException {
+		if (this.output.remaining() < NetProtocol.FRAME_BYTES) {
+			if (this.output.capacity() >= MAX_OUTPUT) throw new IOException("Client doesn't read");
+			ByteBuffer output = ByteBuffer.allocate(this.output.capacity() * 2).order(NetProtocol.ORDER);
+			this.output.flip();
+			this.output = output.put(this.output);
+		}
+		NetProtocol.put(this.output, type, flags, data);
+	}
+
+	boolean hasOutput() {
+		return this.output.position() > 0;
+	}
+
+	/**
+	 * Writes as much of the queued frames as the socket takes, and asks the
+	 * selector for write readiness if some are left.
+	 */
+	void flush() throws IOException {
+		this.output.flip();
+		this.channel.write(this.output);
+		this.output.compact();
+		int ops = this.output.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+		if (this.key.interestOps() != ops) this.key.interestOps(ops);
+	}
+
+}
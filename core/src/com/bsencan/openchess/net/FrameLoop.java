@@ -0,0 +1,192 @@
+package com.bsencan.openchess.net;
+
+import com.badlogic.gdx.utils.Array;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Selector loop of a {@link GameServer} thread. Reads the frames of the
+ * connections it owns into a shared buffer, runs the tasks other threads
+ * post to it and writes the frames queued during a round once at its end.
+ * <p>
+ * Connections move between loops: a loop releases one and posts a task that
+ * registers it with the next. Only the owner touches a connection, so
+ * nothing is locked.
+ */
+abstract class FrameLoop implements Runnable {
+
+	private static final int READ_BYTES = 64 * 1024;
+
+	final Selector selector;
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BYTES).order(NetProtocol.ORDER);
+	private final Array<Connection> queued = new Array<Connection>(false, 64);
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	private volatile boolean running = true;
+
+	FrameLoop() throws IOException {
+		this.selector = Selector.open();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (this.running) {
+				this.selector.select();
+				/* After the select, which deregisters the keys cancelled by releases. */
+				Runnable task;
+				while ((task = this.tasks.poll()) != null) {
+					task.run();
+				}
+				Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) continue;
+					if (key.isAcceptable()) {
+						this.accept();
+						continue;
+					}
+					Connection connection = (Connection) key.attachment();
+					if (key.isReadable()) this.read(connection);
+					if (connection.owner == this && key.isWritable()) this.queue(connection);
+				}
+				this.flush();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Game server failed", e);
+		} finally {
+			this.close();
+		}
+	}
+
+	/**
+	 * Accepts new connections, if the loop listens.
+	 */
+	void accept() throws IOException {
+	}
+
+	/**
+	 * Handles a frame of an owned connection. May release it, the frames
+	 * after are then dropped.
+	 */
+	abstract void handle(Connection connection, int type, int flags, int data) throws IOException;
+
+	/**
+	 * Called after an owned connection has been closed.
+	 */
+	abstract void dropped(Connection connection);
+
+	/**
+	 * Runs a task on the loop's thread. May be called from any thread.
+	 */
+	void post(Runnable task) {
+		this.tasks.add(task);
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Makes {@link #run()} return. May be called from any thread.
+	 */
+	void stop() {
+		this.running = false;
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Takes a connection over, writing anything it has queued.
+	 */
+	void register(Connection connection) throws ClosedChannelException {
+		connection.key = connection.channel.register(this.selector, SelectionKey.OP_READ, connection);
+		connection.owner = this;
+		if (connection.hasOutput()) this.queue(connection);
+	}
+
+	/**
+	 * Gives a connection up, before posting it to another loop. Queued
+	 * frames stay with it.
+	 */
+	void release(Connection connection) {
+		connection.key.cancel();
+		connection.key = null;
+		connection.owner = null;
+		if (connection.queued) {
+			this.queued.removeValue(connection, true);
+			connection.queued = false;
+		}
+	}
+
+	void queue(Connection connection) {
+		if (connection.queued) return;
+		connection.queued = true;
+		this.queued.add(connection);
+	}
+
+	private void read(Connection connection) {
+		ByteBuffer buffer = this.readBuffer;
+		buffer.clear();
+		connection.partial.flip();
+		buffer.put(connection.partial);
+		connection.partial.clear();
+		try {
+			int read = connection.channel.read(buffer);
+			buffer.flip();
+			while (connection.owner == this && buffer.remaining() >= NetProtocol.FRAME_BYTES) {
+				this.handle(connection, buffer.get(), buffer.get(), buffer.getShort() & 0xFFFF);
+			}
+			if (connection.owner != this) return;
+			connection.partial.put(buffer);
+			if (read < 0) this.drop(connection);
+		} catch (IOException e) {
+			this.drop(connection);
+		}
+	}
+
+	private void flush() {
+		/* Drops in the loop may queue more connections. */
+		while (this.queued.size > 0) {
+			Connection connection = this.queued.pop();
+			connection.queued = false;
+			try {
+				connection.flush();
+			} catch (IOException e) {
+				this.drop(connection);
+			}
+		}
+	}
+
+	/**
+	 * Closes an owned connection.
+	 */
+	void drop(Connection connection) {
+		if (connection.owner != this) return;
+		this.release(connection);
+		try {
+			connection.channel.close();
+		} catch (IOException e) {
+			/* Closed anyway. */
+		}
+		this.dropped(connection);
+	}
+
+	private void close() {
+		for (SelectionKey key : this.selector.keys()) {
+			try {
+				key.channel().close();
+			} catch (IOException e) {
+				/* Closing anyway. */
+			}
+		}
+		try {
+			this.selector.close();
+		} catch (IOException e) {
+			/* Nothing left to close. */
+		}
+	}
+
+}
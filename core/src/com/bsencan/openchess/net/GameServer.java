@@ -0,0 +1,254 @@
+package com.bsencan.openchess.net;
+
+import com.badlogic.gdx.utils.Array;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts any number of Tavlei games over TCP, speaking {@link NetProtocol}.
+ * The thread that calls {@link #run()} is the lobby: it accepts clients and
+ * pairs them in the order they join, a client wanting a side with one
+ * wanting the other or none. Each new game goes to the next of a fixed set
+ * of {@link GameShard}s, in turn, with its two players; a shard plays its
+ * games on a thread of its own until the players join again.
+ * <p>
+ * Every loop reads into a shared buffer and writes the frames queued during
+ * a round once at its end, so a move costs each player a single write
+ * however many frames it causes.
+ */
+public class GameServer extends FrameLoop {
+
+	private static final int BACKLOG = 4096;
+
+	private final TavleiBitboard start;
+	private final ServerSocketChannel serverChannel;
+	private final GameShard[] shards;
+	private int nextShard;
+	/* Waiting clients by the side they want: ATTACKERS, DEFENDERS, none. */
+	private final Array<Connection>[] waiting;
+
+	private final AtomicInteger connections = new AtomicInteger();
+	private volatile long gamesStarted;
+	private volatile long rejected;
+
+	/**
+	 * Binds a server with a single shard.
+	 *
+	 * @see #GameServer(InetSocketAddress, TavleiBitboard, int)
+	 */
+	public GameServer(InetSocketAddress address, TavleiBitboard start) throws IOException {
+		this(address, start, 1);
+	}
+
+	/**
+	 * Binds the server. Nothing is accepted until it runs.
+	 *
+	 * @param address
+	 *            Address to listen on, port 0 for any free port.
+	 * @param start
+	 *            Position every game starts from.
+	 * @param shards
+	 *            Number of threads playing games, usually the number of
+	 *            cores.
+	 */
+	@SuppressWarnings("unchecked")
+	public GameServer(InetSocketAddress address, TavleiBitboard start, int shards) throws IOException {
+		this.start = new TavleiBitboard();
+		this.start.set(start);
+		this.shards = new GameShard[shards];
+		for (int i = 0; i < shards; i++) {
+			this.shards[i] = new GameShard(this, this.start);
+		}
+		this.waiting = new Array[] { new Array<Connection>(), new Array<Connection>(), new Array<Connection>() };
+		this.serverChannel = ServerSocketChannel.open();
+		this.serverChannel.configureBlocking(false);
+		this.serverChannel.bind(address, BACKLOG);
+		this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+	}
+
+	/**
+	 * @return The port listened on.
+	 */
+	public int getPort() {
+		return this.serverChannel.socket().getLocalPort();
+	}
+
+	public int getShards() {
+		return this.shards.length;
+	}
+
+	public int getConnections() {
+		return this.connections.get();
+	}
+
+	public int getGamesPlaying() {
+		int playing = 0;
+		for (GameShard shard : this.shards) {
+			playing += shard.getGamesPlaying();
+		}
+		return playing;
+	}
+
+	public long getGamesStarted() {
+		return this.gamesStarted;
+	}
+
+	/**
+	 * @return Moves checked and made, on all shards.
+	 */
+	public long getMoves() {
+		long moves = 0;
+		for (GameShard shard : this.shards) {
+			moves += shard.getMoves();
+		}
+		return moves;
+	}
+
+	public long getRejected() {
+		long rejected = this.rejected;
+		for (GameShard shard : this.shards) {
+			rejected += shard.getRejected();
+		}
+		return rejected;
+	}
+
+	/**
+	 * Starts the shards and serves until {@link #stop()}, then closes every
+	 * connection.
+	 */
+	@Override
+	public void run() {
+		Thread[] threads = new Thread[this.shards.length];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(this.shards[i], "tavlei-shard-" + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		try {
+			super.run();
+		} finally {
+			for (GameShard shard : this.shards) {
+				shard.stop();
+			}
+			for (Thread thread : threads) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Makes {@link #run()} return. May be called from any thread.
+	 */
+	@Override
+	public void stop() {
+		super.stop();
+	}
+
+	@Override
+	void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = this.serverChannel.accept()) != null) {
+			channel.configureBlocking(false);
+			/* Frames are tiny and answered at once. */
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			this.register(new Connection(channel));
+			this.connections.incrementAndGet();
+		}
+	}
+
+	@Override
+	void handle(Connection connection, int type, int flags, int data) throws IOException {
+		switch (type) {
+		case NetProtocol.JOIN:
+			this.join(connection, NetProtocol.side(flags));
+			break;
+		case NetProtocol.PROPOSE_MOVE:
+			connection.send(NetProtocol.RULES_ERROR, flags, data);
+			this.queue(connection);
+			this.rejected++;
+			break;
+		case NetProtocol.RESIGN:
+			break;
+		default:
+			throw new IOException("Unknown frame " + type);
+		}
+	}
+
+	/**
+	 * Brings a player back to the lobby to join again. Called by shards.
+	 */
+	void rejoin(Connection connection, int side) {
+		this.post(() -> {
+			try {
+				this.register(connection);
+				this.join(connection, side);
+			} catch (IOException e) {
+				this.drop(connection);
+			}
+		});
+	}
+
+	private void join(Connection connection, int side) throws IOException {
+		if (connection.waiting) return;
+		Connection opponent = this.takeOpponent(side);
+		if (opponent == null) {
+			connection.side = side;
+			connection.waiting = true;
+			this.waiting[side < 0 ? 2 : side].add(connection);
+			return;
+		}
+		opponent.waiting = false;
+
+		/* The one who asked for a side gets it. */
+		int chosen = side >= 0 ? side : opponent.side < 0 ? TavleiBitboard.DEFENDERS : 1 - opponent.side;
+		this.release(connection);
+		this.release(opponent);
+		GameShard shard = this.shards[this.nextShard];
+		this.nextShard = (this.nextShard + 1) % this.shards.length;
+		shard.post(() -> shard.start(connection, chosen, opponent));
+		this.gamesStarted++;
+	}
+
+	/**
+	 * @return The first waiting client that can play against one wanting
+	 *         the side, taken off the waiting list, or null.
+	 */
+	private Connection takeOpponent(int side) {
+		if (side < 0) {
+			for (Array<Connection> clients : this.waiting) {
+				if (clients.size > 0) return clients.removeIndex(0);
+			}
+			return null;
+		}
+		Array<Connection> other = this.waiting[1 - side].size > 0 ? this.waiting[1 - side] : this.waiting[2];
+		return other.size > 0 ? other.removeIndex(0) : null;
+	}
+
+	/**
+	 * Called by the loop that closed a connection.
+	 */
+	void closed(Connection connection) {
+		this.connections.decrementAndGet();
+	}
+
+	@Override
+	void dropped(Connection connection) {
+		this.closed(connection);
+		if (connection.waiting) {
+			this.waiting[connection.side < 0 ? 2 : connection.side].removeValue(connection, true);
+			connection.waiting = false;
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package com.bsencan.openchess.net;
+
+import com.badlogic.gdx.utils.Pool;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.io.IOException;
+
+/**
+ * Loop of a {@link GameServer} that plays games. The games of a shard and
+ * their players belong to its thread alone, so moves are checked on the
+ * game's bitboard without locks, and shards scale with the cores. A player
+ * who joins again after a game goes back to the server's lobby.
+ */
+final class GameShard extends FrameLoop {
+
+	private final GameServer server;
+	private final TavleiBitboard start;
+	private final int[] replies = new int[TavleiBitboard.MAX_MOVES];
+	private final Pool<ServerGame> games = new Pool<ServerGame>() {
+		@Override
+		protected ServerGame newObject() {
+			return new ServerGame();
+		}
+	};
+
+	private volatile int gamesPlaying;
+	private volatile long moves;
+	private volatile long rejected;
+
+	GameShard(GameServer server, TavleiBitboard start) throws IOException {
+		this.server = server;
+		this.start = start;
+	}
+
+	int getGamesPlaying() {
+		return this.gamesPlaying;
+	}
+
+	long getMoves() {
+		return this.moves;
+	}
+
+	long getRejected() {
+		return this.rejected;
+	}
+
+	/**
+	 * Takes two players over from the lobby and starts their game.
+	 */
+	void start(Connection connection, int side, Connection opponent) {
+		try {
+			this.register(connection);
+			this.register(opponent);
+		} catch (IOException e) {
+			/* The shard is closing. */
+			return;
+		}
+		ServerGame game = this.games.obtain();
+		game.board.set(this.start);
+		this.gamesPlaying++;
+		this.seat(game, connection, side);
+		this.seat(game, opponent, 1 - side);
+	}
+
+	private void seat(ServerGame game, Connection connection, int side) {
+		game.players[side] = connection;
+		connection.game = game;
+		connection.side = side;
+		try {
+			connection.send(NetProtocol.START, NetProtocol.flags(side), 0);
+			this.queue(connection);
+		} catch (IOException e) {
+			this.drop(connection);
+		}
+	}
+
+	@Override
+	void handle(Connection connection, int type, int flags, int data) throws IOException {
+		switch (type) {
+		case NetProtocol.JOIN:
+			if (connection.game != null) break;
+			this.release(connection);
+			this.server.rejoin(connection, NetProtocol.side(flags));
+			break;
+		case NetProtocol.PROPOSE_MOVE:
+			this.propose(connection, data);
+			break;
+		case NetProtocol.RESIGN:
+			if (connection.game != null) {
+				int winner = 1 - connection.side;
+				this.end(connection.game, winner == TavleiBitboard.ATTACKERS ? TavleiBitboard.ATTACKERS_WIN
+						: TavleiBitboard.DEFENDERS_WIN);
+			}
+			break;
+		default:
+			throw new IOException("Unknown frame " + type);
+		}
+	}
+
+	/**
+	 * Checks a move the way <code>BoardController.checkTurn</code> does on
+	 * the client: the proposer's turn, its own piece, a legal path.
+	 */
+	private void propose(Connection connection, int move) throws IOException {
+		ServerGame game = connection.game;
+		/* The move crossed the end of the game, OPPONENT_LEFT tells the player. */
+		if (game == null) return;
+		TavleiBitboard board = game.board;
+		int from = TavleiBitboard.moveFrom(move);
+		int to = TavleiBitboard.moveTo(move);
+		if (board.getResult() != TavleiBitboard.IN_PROGRESS
+				|| board.getSideToMove() != connection.side || from >= TavleiBitboard.SQUARES
+				|| to >= TavleiBitboard.SQUARES || board.isEmpty(from)
+				|| TavleiBitboard.sideOfKind(board.kindAt(from)) != connection.side || !board.isLegal(from, to)) {
+			connection.send(NetProtocol.RULES_ERROR, NetProtocol.flags(connection.side), move);
+			this.queue(connection);
+			this.rejected++;
+			return;
+		}
+		board.makeMove(move);
+		this.moves++;
+		for (Connection player : game.players) {
+			player.send(NetProtocol.MOVE, NetProtocol.flags(connection.side), move);
+			this.queue(player);
+		}
+		if (board.getResult() != TavleiBitboard.IN_PROGRESS) {
+			this.end(game, board.getResult());
+		} else if (board.generateMoves(this.replies, 0) == 0) {
+			this.end(game, board.getResultWithoutMoves());
+		}
+	}
+
+	/**
+	 * Tells both players the result and frees the game. They stay with the
+	 * shard until they join again.
+	 */
+	private void end(ServerGame game, int result) throws IOException {
+		for (Connection player : game.players) {
+			player.send(NetProtocol.GAME_OVER, 0, result);
+			this.queue(player);
+			player.game = null;
+		}
+		this.games.free(game);
+		this.gamesPlaying--;
+	}
+
+	/**
+	 * Ends the game of a dropped player for the opponent.
+	 */
+	@Override
+	void dropped(Connection connection) {
+		this.server.closed(connection);
+		ServerGame game = connection.game;
+		if (game == null) return;
+		connection.game = null;
+		Connection opponent = game.players[1 - connection.side];
+		opponent.game = null;
+		this.games.free(game);
+		this.gamesPlaying--;
+		try {
+			opponent.send(NetProtocol.OPPONENT_LEFT, 0, 0);
+			this.queue(opponent);
+		} catch (IOException e) {
+			this.drop(opponent);
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package com.bsencan.openchess.net;
+
+import com.bsencan.openchess.ai.SearchEngine;
+import com.bsencan.openchess.journal.EventJournal;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Stand-in opponent of a network game that has no server to go to. Joins a
+ * {@link GameServer} on the loopback interface and answers with a
+ * {@link SearchEngine} on its own thread, so that the game still takes the
+ * whole network path.
+ */
+class LoopbackOpponent implements Runnable {
+
+	private final InetSocketAddress address;
+	private final TavleiBitboard start = new TavleiBitboard();
+	private final TavleiBitboard board = new TavleiBitboard();
+	private final SearchEngine engine = new SearchEngine();
+	private final long budgetMillis;
+	private volatile SocketChannel channel;
+	private volatile boolean closed;
+
+	LoopbackOpponent(InetSocketAddress address, TavleiBitboard start, long budgetMillis) {
+		this.address = address;
+		this.start.set(start);
+		this.budgetMillis = budgetMillis;
+	}
+
+	/**
+	 * Plays one game, then disconnects.
+	 */
+	@Override
+	public void run() {
+		try (SocketChannel channel = SocketChannel.open(this.address)) {
+			this.channel = channel;
+			if (this.closed) return;
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			ByteBuffer frame = ByteBuffer.allocate(NetProtocol.FRAME_BYTES).order(NetProtocol.ORDER);
+			NetProtocol.write(channel, frame, NetProtocol.JOIN, EventJournal.SIDE_NONE, 0);
+			int side = -1;
+			while (true) {
+				NetProtocol.read(channel, frame);
+				switch (frame.get(0)) {
+				case NetProtocol.START:
+					side = NetProtocol.side(frame.get(1));
+					this.board.set(this.start);
+					break;
+				case NetProtocol.MOVE:
+					this.board.makeMove(frame.getShort(2) & 0xFFFF);
+					break;
+				case NetProtocol.GAME_OVER:
+				case NetProtocol.OPPONENT_LEFT:
+					return;
+				default:
+					break;
+				}
+				if (side < 0 || this.board.getResult() != TavleiBitboard.IN_PROGRESS
+						|| this.board.getSideToMove() != side) {
+					continue;
+				}
+				int move = this.engine.search(this.board, this.budgetMillis, SearchEngine.MAX_DEPTH);
+				if (move == TavleiBitboard.NO_MOVE) {
+					NetProtocol.write(channel, frame, NetProtocol.RESIGN, NetProtocol.flags(side), 0);
+				} else {
+					NetProtocol.write(channel, frame, NetProtocol.PROPOSE_MOVE, NetProtocol.flags(side), move);
+				}
+			}
+		} catch (IOException e) {
+			/* Closed, or the server is gone with the game. */
+		}
+	}
+
+	/**
+	 * Leaves the game. May be called from any thread.
+	 */
+	void close() {
+		this.closed = true;
+		this.engine.stop();
+		SocketChannel channel = this.channel;
+		if (channel == null) return;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			/* Closed anyway. */
+		}
+	}
+
+}
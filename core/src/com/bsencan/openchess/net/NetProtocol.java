@@ -0,0 +1,113 @@
+package com.bsencan.openchess.net;
+
+import com.bsencan.openchess.events.EventType;
+import com.bsencan.openchess.journal.EventJournal;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Frames exchanged with a {@link GameServer}. A frame is the head of an
+ * {@link EventJournal} record, 4 bytes: a type, flags with the side in the
+ * low two bits, and a short of data, little endian. Types below 0x40 are
+ * {@link EventType} ordinals:
+ * <ul>
+ * <li>{@link #PROPOSE_MOVE}, client to server: a move, as
+ * <code>from &lt;&lt; 8 | to</code></li>
+ * <li>{@link #MOVE}, server to both players: a move accepted, with the side
+ * that made it</li>
+ * <li>{@link #RULES_ERROR}, server to the proposer: the move rejected</li>
+ * <li>{@link #GAME_OVER}, server to both players: the result, as
+ * {@link TavleiBitboard#getResult()}</li>
+ * <li>{@link #JOIN}, client to server: asks for a game, with the side
+ * wanted or none</li>
+ * <li>{@link #START}, server to client: an opponent has been found, with the
+ * side to play</li>
+ * <li>{@link #RESIGN}, client to server: gives the game up</li>
+ * <li>{@link #OPPONENT_LEFT}, server to client: the game is over without a
+ * result</li>
+ * </ul>
+ * After the end of a game, a client may join again on the same connection.
+ * Between JOIN and START a client sends nothing, while the server hands it
+ * from its lobby to the thread of the game.
+ */
+public final class NetProtocol {
+
+	public static final int DEFAULT_PORT = 7291;
+	public static final int FRAME_BYTES = 4;
+	public static final ByteOrder ORDER = EventJournal.ORDER;
+
+	public static final int PROPOSE_MOVE = 0;
+	public static final int MOVE = 1;
+	public static final int RULES_ERROR = 2;
+	public static final int GAME_OVER = 3;
+	public static final int JOIN = 0x40;
+	public static final int START = 0x41;
+	public static final int RESIGN = 0x42;
+	public static final int OPPONENT_LEFT = 0x43;
+
+	private NetProtocol() {
+	}
+
+	public static void put(ByteBuffer buffer, int type, int flags, int data) {
+		buffer.put((byte) type).put((byte) flags).putShort((short) data);
+	}
+
+	/**
+	 * Reads a whole frame from a blocking channel into the start of the
+	 * buffer.
+	 *
+	 * @throws EOFException
+	 *             If the other end has closed the connection.
+	 */
+	public static void read(ReadableByteChannel channel, ByteBuffer frame) throws IOException {
+		frame.clear().limit(FRAME_BYTES);
+		while (frame.hasRemaining()) {
+			if (channel.read(frame) < 0) throw new EOFException();
+		}
+	}
+
+	/**
+	 * Writes a frame to a blocking channel through the buffer.
+	 */
+	public static void write(WritableByteChannel channel, ByteBuffer frame, int type, int flags, int data)
+			throws IOException {
+		frame.clear();
+		put(frame, type, flags, data);
+		frame.flip();
+		while (frame.hasRemaining()) {
+			channel.write(frame);
+		}
+	}
+
+	/**
+	 * @param side
+	 *            {@link TavleiBitboard#ATTACKERS} or
+	 *            {@link TavleiBitboard#DEFENDERS}.
+	 * @return The side as frame flags.
+	 */
+	public static int flags(int side) {
+		return side == TavleiBitboard.ATTACKERS ? EventJournal.SIDE_BLACK : EventJournal.SIDE_WHITE;
+	}
+
+	/**
+	 * @return Side of the frame flags as {@link TavleiBitboard#ATTACKERS} or
+	 *         {@link TavleiBitboard#DEFENDERS}, or -1 for none.
+	 */
+	public static int side(int flags) {
+		switch (flags & EventJournal.SIDE_MASK) {
+		case EventJournal.SIDE_BLACK:
+			return TavleiBitboard.ATTACKERS;
+		case EventJournal.SIDE_WHITE:
+			return TavleiBitboard.DEFENDERS;
+		default:
+			return -1;
+		}
+	}
+
+}
@@ -0,0 +1,238 @@
+package com.bsencan.openchess.net;
+
+import com.badlogic.gdx.Gdx;
+import com.bsencan.openchess.actors.BoardActor;
+import com.bsencan.openchess.ai.AiPlayer;
+import com.bsencan.openchess.events.EventBus;
+import com.bsencan.openchess.events.EventType;
+import com.bsencan.openchess.events.GameOverEvent;
+import com.bsencan.openchess.events.MoveEvent;
+import com.bsencan.openchess.journal.EventJournal;
+import com.bsencan.openchess.model.Positions;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import entity.Move;
+import entity.Side;
+
+/**
+ * Opponent playing through a {@link GameServer}. The player's moves go to
+ * the server as they are proposed on the board; the opponent's come back on
+ * a reader thread and are proposed on the render thread, the way an
+ * {@link AiPlayer} proposes its moves.
+ * <p>
+ * The server decides the sides. The player asks for the session's side,
+ * if any, and plays whichever side the server starts the game with. Without a server host, a {@link GameServer} and a
+ * {@link LoopbackOpponent} are started in the process on the loopback
+ * interface.
+ * <p>
+ * A move the server rejects is taken back from the board. A game the server
+ * ends before the board does, by a resignation or the opponent leaving,
+ * ends on the board's event bus as well; leaving counts as a loss.
+ */
+public class RemotePlayer {
+
+	private static final String TAG = "Net";
+
+	private final BoardActor boardActor;
+	private final String host;
+	private final int port;
+	private final EventBus.Listener<MoveEvent> proposeListener = this::onProposeMove;
+	private final ByteBuffer output = ByteBuffer.allocate(NetProtocol.FRAME_BYTES).order(NetProtocol.ORDER);
+	private final GameOverEvent gameOverEvent = new GameOverEvent();
+	private final Thread reader;
+
+	private SocketChannel channel;
+	private GameServer loopbackServer;
+	private LoopbackOpponent loopbackOpponent;
+	private boolean disposed;
+
+	/* Render thread only. */
+	private Side side;
+	private boolean playing;
+
+	/**
+	 * @param host
+	 *            Host of the game server, or null to play a stand-in in the
+	 *            process.
+	 */
+	public RemotePlayer(BoardActor boardActor, String host, int port) {
+		this.boardActor = boardActor;
+		this.host = host;
+		this.port = port;
+		this.reader = new Thread(this::connect, "tavlei-net");
+		this.reader.setDaemon(true);
+		boardActor.getEvents().subscribe(EventType.PROPOSE_MOVE, proposeListener);
+	}
+
+	/**
+	 * @return Side of the opponent, null until the server has started the
+	 *         game.
+	 */
+	public Side getSide() {
+		return side;
+	}
+
+	/**
+	 * @return Whether the game has started and not ended.
+	 */
+	public boolean isPlaying() {
+		return playing;
+	}
+
+	/**
+	 * Connects and asks the server for a game.
+	 */
+	public void start() {
+		reader.start();
+	}
+
+	/**
+	 * Reads frames until the connection closes. Runs on the reader thread.
+	 */
+	private void connect() {
+		try {
+			InetSocketAddress address = host == null ? startLoopback() : new InetSocketAddress(host, port);
+			SocketChannel channel = SocketChannel.open(address);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			synchronized (this) {
+				this.channel = channel;
+				if (disposed) {
+					channel.close();
+					return;
+				}
+			}
+			send(NetProtocol.JOIN, EventJournal.side(boardActor.getSession().getMySide()), 0);
+
+			ByteBuffer frame = ByteBuffer.allocate(NetProtocol.FRAME_BYTES).order(NetProtocol.ORDER);
+			while (true) {
+				NetProtocol.read(channel, frame);
+				int type = frame.get(0);
+				int flags = frame.get(1);
+				int data = frame.getShort(2) & 0xFFFF;
+				Gdx.app.postRunnable(() -> handle(type, flags, data));
+			}
+		} catch (IOException e) {
+			synchronized (this) {
+				if (disposed) return;
+			}
+			Gdx.app.error(TAG, "Connection to the game server lost", e);
+			Gdx.app.postRunnable(() -> playing = false);
+		}
+	}
+
+	private synchronized InetSocketAddress startLoopback() throws IOException {
+		if (disposed) throw new IOException("Closed before connecting");
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		TavleiBitboard start = boardActor.getStartPosition();
+		loopbackServer = new GameServer(new InetSocketAddress(loopback, 0), start);
+		InetSocketAddress address = new InetSocketAddress(loopback, loopbackServer.getPort());
+		loopbackOpponent = new LoopbackOpponent(address, start, boardActor.getSession().getAiBudgetMillis());
+		startDaemon(loopbackServer, "tavlei-loopback-server");
+		startDaemon(loopbackOpponent, "tavlei-loopback-opponent");
+		return address;
+	}
+
+	private static void startDaemon(Runnable runnable, String name) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Runs on the render thread.
+	 */
+	private void handle(int type, int flags, int data) {
+		if (disposed) return;
+		switch (type) {
+			case NetProtocol.START:
+				Side mySide = EventJournal.toSide(flags);
+				boardActor.getSession().setMySide(mySide);
+				side = mySide==Side.WHITE ? Side.BLACK : Side.WHITE;
+				playing = true;
+				Gdx.app.log(TAG, "Playing " + mySide);
+				break;
+			case NetProtocol.MOVE:
+				if (EventJournal.toSide(flags) != side) break;
+				Move move = new Move(Positions.get(TavleiBitboard.moveFrom(data)), Positions.get(TavleiBitboard.moveTo(data)));
+				boardActor.getController().proposeMove(move, side);
+				break;
+			case NetProtocol.RULES_ERROR:
+				Gdx.app.error(TAG, "The server rejected move " + Integer.toHexString(data));
+				boardActor.getController().rejectProposal();
+				break;
+			case NetProtocol.GAME_OVER:
+				playing = false;
+				endGame(data);
+				break;
+			case NetProtocol.OPPONENT_LEFT:
+				Gdx.app.log(TAG, "The opponent has left");
+				if (playing) endGame(TavleiBitboard.side(side) == TavleiBitboard.ATTACKERS
+						? TavleiBitboard.DEFENDERS_WIN : TavleiBitboard.ATTACKERS_WIN);
+				playing = false;
+				break;
+			default:
+				break;
+		}
+		Gdx.graphics.requestRendering();
+	}
+
+	/**
+	 * Posts the end of the game, unless the board has come to it by itself
+	 * and the library has posted it already.
+	 *
+	 * @param result
+	 *            Result as {@link TavleiBitboard#getResult()}.
+	 */
+	private void endGame(int result) {
+		if (boardActor.getBitboard().getResult() != TavleiBitboard.IN_PROGRESS) return;
+		boardActor.getEvents().post(EventType.GAME_OVER, gameOverEvent.set(TavleiBitboard.toState(result)));
+	}
+
+	/**
+	 * Sends the player's own moves to the server.
+	 */
+	private void onProposeMove(MoveEvent event)
+	{
+		if (!playing || event.getSide() == side) return;
+		Move move = event.getMove();
+		int encoded = TavleiBitboard.encodeMove(TavleiBitboard.square(move.getStart()), TavleiBitboard.square(move.getDestination()));
+		try {
+			send(NetProtocol.PROPOSE_MOVE, EventJournal.side(event.getSide()), encoded);
+		} catch (IOException e) {
+			Gdx.app.error(TAG, "Can't send the move", e);
+			playing = false;
+		}
+	}
+
+	private synchronized void send(int type, int flags, int data) throws IOException {
+		if (channel == null || disposed) return;
+		NetProtocol.write(channel, output, type, flags, data);
+	}
+
+	/**
+	 * Disconnects, which ends the game for the opponent, and stops the
+	 * stand-ins.
+	 */
+	public synchronized void dispose() {
+		disposed = true;
+		playing = false;
+		boardActor.getEvents().unsubscribe(EventType.PROPOSE_MOVE, proposeListener);
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				Gdx.app.error(TAG, "Can't close the connection", e);
+			}
+		}
+		if (loopbackOpponent != null) loopbackOpponent.close();
+		if (loopbackServer != null) loopbackServer.stop();
+	}
+
+}
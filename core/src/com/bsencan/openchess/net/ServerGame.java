@@ -0,0 +1,22 @@
+package com.bsencan.openchess.net;
+
+import com.badlogic.gdx.utils.Pool;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+/**
+ * A game hosted by a {@link GameServer}: its two players and the bitboard
+ * their moves are checked on. Games are pooled, the bitboard keeps its
+ * history arrays.
+ */
+final class ServerGame implements Pool.Poolable {
+
+	final TavleiBitboard board = new TavleiBitboard();
+	/* By side, ATTACKERS first. */
+	final Connection[] players = new Connection[2];
+
+	@Override
+	public void reset() {
+		this.players[0] = this.players[1] = null;
+	}
+
+}
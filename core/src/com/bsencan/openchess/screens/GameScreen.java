@@ -14,26 +14,122 @@
 package com.bsencan.openchess.screens;
 
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input.Keys;
 import com.badlogic.gdx.Screen;
+import com.badlogic.gdx.files.FileHandle;
 import com.bsencan.openchess.Assets;
+import com.bsencan.openchess.GameSession;
 import com.bsencan.openchess.actors.BoardActor;
+import com.bsencan.openchess.ai.EngineType;
+import com.bsencan.openchess.events.EventType;
+import com.bsencan.openchess.events.GameOverEvent;
+import com.bsencan.openchess.journal.GameSnapshot;
+import com.bsencan.openchess.journal.Journal;
+import com.bsencan.openchess.journal.JournalReplay;
+import com.bsencan.openchess.journal.JournalWriter;
+import com.bsencan.openchess.journal.SnapshotWriter;
 import com.bsencan.openchess.view.GameRenderer;
 
+import java.io.IOException;
+
+import generated.GameModeType;
+
 /**
  * Main game screen. Creates a new chess board and a game renderer, then tells
  * the renderer to render that board.
+ * <p>
+ * Every game is recorded in {@link #JOURNAL} in local storage. Given a
+ * journal, the screen replays it instead: the right and left arrow keys step
+ * a move forward and back, Home and End jump to the start and the end.
+ * <p>
+ * A game in progress is saved to {@link #SNAPSHOT} whenever the application
+ * is paused, and {@link #resumeSaved()} goes on with it at the next start. Games
+ * against the library's engine aren't saved, the library can't be brought
+ * back to a position, and neither are network games.
  * 
  * @author Baris Sencan
  */
 public class GameScreen implements Screen {
 
+	private static final String TAG = "GameScreen";
+
+	/** Journal of the last game played. */
+	public static final String JOURNAL = "journals/last-game.journal";
+
+	/** Snapshot of the game in progress. */
+	public static final String SNAPSHOT = "saves/current-game.snapshot";
+
 	private GameRenderer renderer;
+	private final GameSession session;
+	private BoardActor boardActor;
+	private final FileHandle replayFile;
+	private JournalWriter journal;
+	private Journal replayJournal;
+	private JournalReplay replay;
+	private GameSnapshot snapshot;
+	private SnapshotWriter snapshotWriter;
+
+	/**
+	 * @param session
+	 *            New game to play.
+	 */
+	public GameScreen(GameSession session) {
+		this.session = session;
+		this.replayFile = null;
+	}
+
+	/**
+	 * @param replayFile
+	 *            Journal to replay. If it can't be read, two local players
+	 *            play a new game.
+	 */
+	public GameScreen(FileHandle replayFile) {
+		this.session = localSession();
+		this.replayFile = replayFile;
+	}
+
+	private static GameSession localSession() {
+		return new GameSession(GameModeType.PLAY_FROM_ONE_COMPUTER, null, EngineType.ALPHA_BETA);
+	}
+
+	/**
+	 * @return Screen going on with the saved game, with its settings, or null
+	 *         if there is none.
+	 */
+	public static GameScreen resumeSaved() {
+		FileHandle file = Gdx.files.local(SNAPSHOT);
+		if (!file.exists()) return null;
+		try {
+			GameSnapshot snapshot = GameSnapshot.read(file);
+			GameScreen screen = new GameScreen(snapshot.newSession());
+			screen.snapshot = snapshot;
+			return screen;
+		} catch (IOException e) {
+			Gdx.app.error(TAG, "Can't resume " + file.path(), e);
+			file.delete();
+			return null;
+		}
+	}
 
 	@Override
 	public void render(float delta) {
+		if (this.replay != null) this.handleReplayKeys();
 		this.renderer.render(delta);
 	}
 
+	private void handleReplayKeys() {
+		int ply = this.replay.getPly();
+		if (Gdx.input.isKeyJustPressed(Keys.RIGHT)) {
+			this.replay.step();
+		} else if (Gdx.input.isKeyJustPressed(Keys.END)) {
+			this.replay.seek(this.replayJournal.getPlies());
+		} else if (Gdx.input.isKeyJustPressed(Keys.LEFT) && ply > 0) {
+			this.replay.stepBack();
+		} else if (Gdx.input.isKeyJustPressed(Keys.HOME) && ply > 0) {
+			this.replay.seek(0);
+		}
+	}
+
 	@Override
 	public void resize(int width, int height) {
 		this.renderer.setSize(width, height);
@@ -41,28 +137,89 @@ public class GameScreen implements Screen {
 
 	@Override
 	public void show() {
-		BoardActor boardActor; // Can't call the constructor here. Assets have to be
-						// loaded first.
-
+		// Can't call the BoardActor constructor earlier. Assets have to be
+		// loaded first.
 		Assets.loadGame();
-		boardActor = new BoardActor();
+		if (this.replayFile != null) {
+			try {
+				this.replayJournal = Journal.open(this.replayFile);
+				this.createBoard(this.session);
+				this.replay = new JournalReplay(this.boardActor, this.replayJournal);
+				return;
+			} catch (IOException e) {
+				Gdx.app.error(TAG, "Can't replay " + this.replayFile.path(), e);
+			}
+		}
+		/* A new game takes the place of the saved one. */
+		if (this.snapshot == null) Gdx.files.local(SNAPSHOT).delete();
+		this.journal = openJournal(this.snapshot != null);
+		this.createBoard(this.session);
+		this.snapshot = null;
+		if (this.session.getGameModeType() != GameModeType.PLAY_WITH_AI
+				|| this.session.getEngineType() == EngineType.ALPHA_BETA) {
+			this.snapshotWriter = this.openSnapshot();
+		}
+	}
+
+	private void createBoard(GameSession session) {
+		this.boardActor = new BoardActor(session, this.journal, this.snapshot);
 		this.renderer = new GameRenderer(boardActor);
 		this.renderer
 				.setSize(Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
 	}
 
+	private static JournalWriter openJournal(boolean append) {
+		try {
+			return new JournalWriter(Gdx.files.local(JOURNAL), append);
+		} catch (IOException e) {
+			Gdx.app.error(TAG, "Can't write the journal", e);
+			return null;
+		}
+	}
+
+	private SnapshotWriter openSnapshot() {
+		try {
+			SnapshotWriter writer = new SnapshotWriter(this.boardActor, Gdx.files.local(SNAPSHOT));
+			this.boardActor.getEvents().subscribe(EventType.GAME_OVER, this::gameOver);
+			return writer;
+		} catch (IOException e) {
+			Gdx.app.error(TAG, "Can't save the game", e);
+			return null;
+		}
+	}
+
+	/**
+	 * A finished game isn't resumed.
+	 */
+	private void gameOver(GameOverEvent event) {
+		this.snapshotWriter.delete();
+	}
+
 	@Override
 	public void hide() {
+		if (this.snapshotWriter != null) {
+			this.snapshotWriter.save();
+			this.snapshotWriter.dispose();
+		}
+		this.boardActor.dispose();
 		this.renderer.dispose();
+		if (this.journal != null) this.journal.dispose();
 		Assets.disposeGame();
 	}
 
 	@Override
 	public void pause() {
+		this.boardActor.pause();
+		if (this.snapshotWriter != null) this.snapshotWriter.save();
+		this.renderer.getDebugHud().flush();
+		if (this.journal != null) this.journal.flush();
 	}
 
 	@Override
 	public void resume() {
+		/* The GL context may have been lost with the board image. */
+		this.boardActor.markAllDirty();
+		Gdx.graphics.requestRendering();
 	}
 
 	@Override
@@ -16,9 +16,13 @@ package com.bsencan.openchess.screens;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Screen;
 import com.bsencan.openchess.Assets;
+import com.bsencan.openchess.GameSession;
 import com.bsencan.openchess.OpenChess;
+import com.bsencan.openchess.ai.EngineType;
 import com.bsencan.openchess.view.MainMenuRenderer;
 
+import generated.GameModeType;
+
 /**
  * Game's main menu screen. Any touch event causes a transition to game screen.
  * 
@@ -32,8 +36,14 @@ public class MainMenuScreen implements Screen {
 	public void render(float delta) {
 		this.renderer.render(delta);
 
+		/* Keep rendering until the game assets are loaded. */
+		if (!Assets.update()) {
+			Gdx.graphics.requestRendering();
+		}
+
 		if (Gdx.input.justTouched()) {
-			OpenChess.game.setScreen(new GameScreen());
+			OpenChess.game.setScreen(new GameScreen(
+					new GameSession(GameModeType.PLAY_FROM_ONE_COMPUTER, null, EngineType.LIBRARY)));
 		}
 	}
 
@@ -45,6 +55,7 @@ public class MainMenuScreen implements Screen {
 	@Override
 	public void show() {
 		Assets.loadMainMenu();
+		Assets.queueGame();
 
 		//Assets.menuMusic.setLooping(true);
 		//Assets.menuMusic.play();
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2026 The OpenChess Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.bsencan.openchess.unittests;
+
+import com.bsencan.openchess.GameSession;
+import com.bsencan.openchess.model.LegalMoveCache;
+import com.bsencan.openchess.model.Positions;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.lang.management.ManagementFactory;
+
+import entity.Position;
+import gamemechanics.controller.tavlei.TavleiController;
+import gamemechanics.controller.tavlei.TavleiControllerManager;
+
+/**
+ * Counts the bytes allocated by the queries <code>BoardController</code>
+ * makes when a piece is selected and a destination tapped: destinations,
+ * capture targets, the tiles' positions and the legality check. They must
+ * not allocate once warmed up, whether the {@link LegalMoveCache} hits or
+ * misses. The library's <code>getMovesForPieceAt</code>, which the same path
+ * used to call, is measured for comparison. The whole tap path, highlights
+ * included, is measured on a headless board by the benchmarks module's
+ * <code>TapAllocationTester</code>.
+ * <p>
+ * Needs a JVM with <code>com.sun.management.ThreadMXBean</code>.
+ */
+public class AllocationTester {
+
+	private static final int ROUNDS = 100000;
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private static final long[] MASK = new long[2];
+	private static int sink;
+
+	public static void main(String[] args) {
+		TavleiControllerManager manager = Perft.startGame();
+		TavleiBitboard board = GameSession.loadStartPosition();
+		LegalMoveCache cache = new LegalMoveCache(board);
+		int[] pieces = pieces(board);
+
+		select(cache, pieces, false);
+		select(cache, pieces, true);
+		double hit = bytesPerSelection(cache, pieces, false);
+		double miss = bytesPerSelection(cache, pieces, true);
+		double library = libraryBytesPerCall(manager, pieces);
+
+		boolean passed = hit < 1 && miss < 1;
+		System.out.printf("Selection, cache hit: %.1f bytes%n", hit);
+		System.out.printf("Selection, cache miss: %.1f bytes%n", miss);
+		System.out.printf("TavleiController.getMovesForPieceAt: %.1f bytes per call%n", library);
+		System.out.println(passed ? "ok" : "FAILED");
+		System.exit(passed ? 0 : 1);
+	}
+
+	/**
+	 * @return Squares of the pieces of the side to move.
+	 */
+	private static int[] pieces(TavleiBitboard board) {
+		int count = 0;
+		int[] squares = new int[TavleiBitboard.SQUARES];
+		for (int square = 0; square < TavleiBitboard.SQUARES; square++) {
+			if (!board.isEmpty(square)
+					&& TavleiBitboard.sideOfKind(board.kindAt(square)) == board.getSideToMove()) {
+				squares[count++] = square;
+			}
+		}
+		int[] pieces = new int[count];
+		System.arraycopy(squares, 0, pieces, 0, count);
+		return pieces;
+	}
+
+	private static double bytesPerSelection(LegalMoveCache cache, int[] pieces, boolean invalidate) {
+		long thread = Thread.currentThread().getId();
+		long before = THREADS.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < ROUNDS; i++) {
+			select(cache, pieces, invalidate);
+		}
+		long bytes = THREADS.getThreadAllocatedBytes(thread) - before;
+		return bytes / (double) ((long) ROUNDS * pieces.length);
+	}
+
+	/**
+	 * Selects every piece once: highlights its moves and captures, then
+	 * checks every destination the way a tap does.
+	 */
+	private static void select(LegalMoveCache cache, int[] pieces, boolean invalidate) {
+		long[] mask = MASK;
+		for (int from : pieces) {
+			if (invalidate) cache.invalidate();
+			cache.destinations(from, mask);
+			long lo = mask[0], hi = mask[1];
+			while (lo != 0 || hi != 0) {
+				int to = TavleiBitboard.firstSquare(lo, hi);
+				if (lo != 0) lo &= lo - 1;
+				else hi &= hi - 1;
+				Position position = Positions.get(to);
+				if (cache.isLegal(from, to)) sink += position.getRow();
+			}
+			cache.captureTargets(from, mask);
+			sink += Long.bitCount(mask[0]) + Long.bitCount(mask[1]);
+		}
+	}
+
+	private static double libraryBytesPerCall(TavleiControllerManager manager, int[] pieces) {
+		TavleiController controller = manager.getCurrentController();
+		int rounds = ROUNDS / 100;
+		long thread = Thread.currentThread().getId();
+		long before = THREADS.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < rounds; i++) {
+			for (int from : pieces) {
+				sink += controller.getMovesForPieceAt(Positions.get(from)).size();
+			}
+		}
+		long bytes = THREADS.getThreadAllocatedBytes(thread) - before;
+		return bytes / (double) ((long) rounds * pieces.length);
+	}
+
+}
@@ -13,16 +13,75 @@
 
 package com.bsencan.openchess.unittests;
 
+import com.bsencan.openchess.GameSession;
+import com.bsencan.openchess.model.TavleiBitboard;
+
 /**
- * Tests with various cases if chess pieces can capture pieces that they should
- * be able to.
+ * Tests with various cases if tavlei pieces capture the pieces they should be
+ * able to, by counting capturing moves on the last ply of a perft run. From
+ * the start position the counts are checked against the captures of the
+ * library's controller, up to the library depth. Other positions can't be
+ * set up on the library, their capturing moves are checked against moves
+ * worked out by hand.
+ * <p>
+ * Usage: <code>CaptureTester [depth [library depth]]</code>, depth 4 and
+ * library depth 3 by default.
  * 
  * @author Baris Sencan
  */
 public class CaptureTester {
 
+	/**
+	 * Capturing moves on the last ply per depth from the start position.
+	 */
+	static final long[] START_CAPTURES = { 0, 0, 40, 4336, 292984, 26878232 };
+
+	/**
+	 * Defenders sandwiched against an attacker and against the empty centre.
+	 */
+	static final String SANDWICH = ""
+			+ ".........\n"
+			+ ".........\n"
+			+ "..a......\n"
+			+ "....d....\n"
+			+ ".........\n"
+			+ ".........\n"
+			+ ".a.d.a...\n"
+			+ ".........\n"
+			+ ".......p.\n";
+
+	static final long[] SANDWICH_CAPTURES = { 0, 1, 1, 915 };
+
+	/*
+	 * The only capture of the attackers to move: the attacker on c7 slides to
+	 * e7 and takes the defender on e6, which the empty centre below closes
+	 * in. The defender on d3 has empty squares on both sides.
+	 */
+	static final int SANDWICH_CAPTURE = TavleiBitboard.encodeMove(56, 58);
+	static final int SANDWICH_CAPTURED = 49;
+	static final int SANDWICH_MISS = TavleiBitboard.encodeMove(19, 20);
+
 	public static void main(String[] args) {
-		// TODO: Everything.
+		int depth = Perft.depthArgument(args, 4);
+		int libraryDepth = args.length > 1 ? Math.min(depth, Integer.parseInt(args[1])) : Math.min(depth, 3);
+		TavleiBitboard start = GameSession.loadStartPosition();
+		Perft perft = new Perft();
+
+		boolean passed = perft.runLibrary(start, libraryDepth);
+		System.out.printf("Library moves and captures at every node to depth %d %s%n",
+				libraryDepth, passed ? "ok" : "FAILED");
+		perft.run(start, depth);
+		passed &= perft.check("Captures against the library", perft.captures, perft.libraryCaptures, libraryDepth);
+		passed &= perft.checkLibrary("Library captures", perft.libraryCaptures, START_CAPTURES, libraryDepth);
+		passed &= perft.check("Captures", perft.captures, START_CAPTURES, depth);
+
+		TavleiBitboard sandwich = Perft.parse(SANDWICH, TavleiBitboard.ATTACKERS);
+		passed &= perft.checkByHand("Sandwich capturing moves", sandwich, false, SANDWICH_CAPTURE);
+		passed &= perft.checkCapturedByHand("Sandwich captured", sandwich, SANDWICH_CAPTURE, SANDWICH_CAPTURED);
+		passed &= perft.checkCapturedByHand("Sandwich miss", sandwich, SANDWICH_MISS);
+		perft.run(sandwich, 3);
+		passed &= perft.check("Sandwich captures", perft.captures, SANDWICH_CAPTURES, 3);
+		System.exit(passed ? 0 : 1);
 	}
 
 }
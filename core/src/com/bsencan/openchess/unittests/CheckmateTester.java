@@ -13,15 +13,85 @@
 
 package com.bsencan.openchess.unittests;
 
+import com.bsencan.openchess.model.TavleiBitboard;
+
 /**
- * Tests with various cases if a valid checkmate state is recognized.
+ * Tests with various cases if a finished game is recognized: the prince
+ * escaping to a corner and the prince surrounded by attackers, with the empty
+ * centre standing in for an attacker. The library can't be set up with these
+ * positions, so the moves that end the game are also checked against those
+ * worked out by hand from the diagrams.
  * 
  * @author Baris Sencan
  */
 public class CheckmateTester {
 
+	static final String ESCAPE = ""
+			+ ".........\n"
+			+ ".........\n"
+			+ ".........\n"
+			+ ".........\n"
+			+ ".........\n"
+			+ ".........\n"
+			+ "....a....\n"
+			+ ".........\n"
+			+ "..a..p...\n";
+
+	static final long[] ESCAPE_GAME_OVERS = { 0, 1, 0, 167 };
+
+	/* The prince runs right to the corner, the attacker on c1 blocks the left. */
+	static final int ESCAPE_WIN = TavleiBitboard.encodeMove(5, 8);
+
+	static final String SURROUNDED = ""
+			+ ".........\n"
+			+ ".........\n"
+			+ "......a..\n"
+			+ "...a..pa.\n"
+			+ "......a..\n"
+			+ ".........\n"
+			+ ".........\n"
+			+ ".........\n"
+			+ ".......d.\n";
+
+	static final long[] SURROUNDED_GAME_OVERS = { 0, 1, 0, 41 };
+
+	/* The attacker on d6 closes the prince's last open side, f6. */
+	static final int SURROUNDED_WIN = TavleiBitboard.encodeMove(48, 50);
+
+	static final String THRONE = ""
+			+ ".........\n"
+			+ ".........\n"
+			+ ".........\n"
+			+ ".....a...\n"
+			+ ".....p.a.\n"
+			+ ".....a...\n"
+			+ ".........\n"
+			+ ".........\n"
+			+ ".d.......\n";
+
+	static final long[] THRONE_GAME_OVERS = { 0, 1, 0, 14 };
+
+	/* The attacker on h5 closes g5, the empty centre closes e5. */
+	static final int THRONE_WIN = TavleiBitboard.encodeMove(43, 42);
+
 	public static void main(String[] args) {
-		// TODO: Everything.
+		Perft perft = new Perft();
+
+		TavleiBitboard escape = Perft.parse(ESCAPE, TavleiBitboard.DEFENDERS);
+		boolean passed = perft.checkByHand("Escapes", escape, true, ESCAPE_WIN);
+		perft.run(escape, 3);
+		passed &= perft.check("Escapes", perft.gameOvers, ESCAPE_GAME_OVERS, 3);
+
+		TavleiBitboard surrounded = Perft.parse(SURROUNDED, TavleiBitboard.ATTACKERS);
+		passed &= perft.checkByHand("Surrounded", surrounded, true, SURROUNDED_WIN);
+		perft.run(surrounded, 3);
+		passed &= perft.check("Surrounded", perft.gameOvers, SURROUNDED_GAME_OVERS, 3);
+
+		TavleiBitboard throne = Perft.parse(THRONE, TavleiBitboard.ATTACKERS);
+		passed &= perft.checkByHand("Throne", throne, true, THRONE_WIN);
+		perft.run(throne, 3);
+		passed &= perft.check("Throne", perft.gameOvers, THRONE_GAME_OVERS, 3);
+		System.exit(passed ? 0 : 1);
 	}
 
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2026 The OpenChess Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.bsencan.openchess.unittests;
+
+import com.bsencan.openchess.events.EventType;
+import com.bsencan.openchess.journal.EventJournal;
+import com.bsencan.openchess.journal.Journal;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Tests reading a journal built by hand: which records are plies, which
+ * proposals were rejected, and that the plies, undos and redos included,
+ * lead to the position of the moves played directly. The game has a
+ * rejected proposal with the proposal derived from it, two undos and a
+ * redo, and ends on a record cut short by a crash.
+ */
+public class JournalTester {
+
+	static final int PROPOSE = EventType.PROPOSE_MOVE.ordinal();
+	static final int MOVE = EventType.MOVE.ordinal();
+	static final int RULES_ERROR = EventType.RULES_ERROR.ordinal();
+	static final int GAME_OVER = EventType.GAME_OVER.ordinal();
+
+	static final int BLACK = EventJournal.SIDE_BLACK;
+	static final int WHITE = EventJournal.SIDE_WHITE;
+	static final int NONE = EventJournal.SIDE_NONE;
+
+	/* Attackers on c1 and c9, a defender on e6, the prince on d4. */
+	static final int[][] PIECES = { { 2, TavleiBitboard.ATTACKER }, { 74, TavleiBitboard.ATTACKER },
+			{ 49, TavleiBitboard.DEFENDER }, { 30, TavleiBitboard.PRINCE } };
+
+	static final int FIRST = TavleiBitboard.encodeMove(2, 11);
+	static final int SECOND = TavleiBitboard.encodeMove(49, 47);
+	static final int REJECTED = TavleiBitboard.encodeMove(11, 13);
+	static final int THIRD = TavleiBitboard.encodeMove(74, 65);
+
+	/* Type, flags and data of each record. */
+	static final int[][] RECORDS = {
+			{ PROPOSE, BLACK, FIRST },
+			{ MOVE, BLACK, FIRST },
+			{ PROPOSE, WHITE, SECOND },
+			{ MOVE, WHITE, SECOND },
+			{ PROPOSE, BLACK, REJECTED },
+			{ RULES_ERROR, NONE, REJECTED },
+			{ PROPOSE, BLACK | EventJournal.DERIVED, FIRST },
+			{ PROPOSE, BLACK, THIRD },
+			{ MOVE, BLACK, THIRD },
+			{ EventJournal.UNDO, BLACK, THIRD },
+			{ EventJournal.UNDO, WHITE, SECOND },
+			{ EventJournal.REDO, WHITE, SECOND },
+			{ GAME_OVER, NONE, 1 } };
+
+	static final int[] PLY_RECORDS = { 0, 2, 4, 7, 9, 10, 11 };
+
+	static final int REJECTED_PLY = 2;
+
+	public static void main(String[] args) throws IOException {
+		Journal journal = new Journal(build(RECORDS, 4));
+		boolean passed = check("Records", journal.getRecordCount(), RECORDS.length);
+		passed &= check("Plies", journal.getPlies(), PLY_RECORDS.length);
+		for (int ply = 0; ply < journal.getPlies() && ply < PLY_RECORDS.length; ply++) {
+			int[] record = RECORDS[PLY_RECORDS[ply]];
+			passed &= check("Ply " + ply + " record", journal.getRecord(ply), PLY_RECORDS[ply]);
+			passed &= check("Ply " + ply + " move", journal.getMove(ply), record[2]);
+			passed &= check("Ply " + ply + " side", EventJournal.side(journal.getSide(ply)), record[1] & EventJournal.SIDE_MASK);
+			passed &= check("Ply " + ply + " rejected", journal.isRejected(ply) ? 1 : 0, ply == REJECTED_PLY ? 1 : 0);
+		}
+
+		TavleiBitboard replayed = start();
+		for (int ply = 0; ply < journal.getPlies(); ply++) {
+			switch (journal.getPlyType(ply)) {
+			case EventJournal.UNDO:
+				replayed.unmakeMove();
+				break;
+			case EventJournal.REDO:
+				replayed.makeMove(journal.getMove(ply));
+				break;
+			default:
+				if (!journal.isRejected(ply)) replayed.makeMove(journal.getMove(ply));
+				break;
+			}
+		}
+		TavleiBitboard played = start();
+		played.makeMove(FIRST);
+		played.makeMove(SECOND);
+		passed &= check("Position", replayed.getHash(), played.getHash());
+
+		try {
+			ByteBuffer other = build(RECORDS, 0);
+			other.putInt(0, 0);
+			new Journal(other);
+			passed &= check("Foreign file read", 1, 0);
+		} catch (IOException e) {
+			passed &= check("Foreign file rejected", 1, 1);
+		}
+		System.exit(passed ? 0 : 1);
+	}
+
+	/**
+	 * @param cut
+	 *            Bytes of a record cut short after the last one.
+	 */
+	static ByteBuffer build(int[][] records, int cut) {
+		ByteBuffer data = ByteBuffer.allocate(EventJournal.HEADER_BYTES + records.length * EventJournal.RECORD_BYTES + cut)
+				.order(EventJournal.ORDER);
+		data.putInt(EventJournal.MAGIC).putShort(EventJournal.VERSION).putShort((short) 0).putLong(0);
+		for (int i = 0; i < records.length; i++) {
+			data.put((byte) records[i][0]).put((byte) records[i][1]).putShort((short) records[i][2]).putInt(i * 1000);
+		}
+		data.rewind();
+		return data;
+	}
+
+	static TavleiBitboard start() {
+		TavleiBitboard board = new TavleiBitboard();
+		for (int[] piece : PIECES) {
+			board.put(piece[0], piece[1]);
+		}
+		return board;
+	}
+
+	static boolean check(String name, long found, long expected) {
+		boolean passed = found == expected;
+		System.out.printf("%s: %d (expected %d) %s%n", name, found, expected, passed ? "passed" : "FAILED");
+		return passed;
+	}
+
+}
@@ -13,16 +13,50 @@
 
 package com.bsencan.openchess.unittests;
 
+import com.bsencan.openchess.GameSession;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import gamemechanics.controller.tavlei.TavleiControllerManager;
+
 /**
- * Tests with various cases if chess pieces can move to tiles that they should
- * be able to.
+ * Counts the move paths from the start position set up by
+ * <code>TavleiControllerManager.startGame()</code> and compares them with
+ * reference values, and reports the throughput of the bitboard and the
+ * library controller. Up to the library depth, the tree is also walked on
+ * the library's controller: its counts are the reference there, and its
+ * moves and captures are compared with the bitboard's at every node. The
+ * deeper reference values come from the bitboard.
+ * <p>
+ * Usage: <code>MoveTester [depth [library depth]]</code>, depth 4 and
+ * library depth 3 by default.
  * 
  * @author Baris Sencan
  */
 public class MoveTester {
 
+	/**
+	 * Leaf nodes per depth from the start position, attackers to move.
+	 */
+	static final long[] START_NODES = { 1, 72, 3944, 285728, 15951824,
+			1167760776L };
+
 	public static void main(String[] args) {
-		// TODO: Everything.
+		int depth = Perft.depthArgument(args, 4);
+		int libraryDepth = args.length > 1 ? Math.min(depth, Integer.parseInt(args[1])) : Math.min(depth, 3);
+		TavleiControllerManager manager = Perft.startGame();
+		TavleiBitboard board = GameSession.loadStartPosition();
+		Perft perft = new Perft();
+		System.out.printf("TavleiController.getMovesForPieceAt: %.0f calls/s%n",
+				Perft.libraryThroughput(manager));
+
+		boolean passed = perft.runLibrary(board, libraryDepth);
+		System.out.printf("Library moves and captures at every node to depth %d %s%n",
+				libraryDepth, passed ? "ok" : "FAILED");
+		perft.run(board, depth);
+		passed &= perft.check("Nodes against the library", perft.nodes, perft.libraryNodes, libraryDepth);
+		passed &= perft.checkLibrary("Library nodes", perft.libraryNodes, START_NODES, libraryDepth);
+		passed &= perft.check("Nodes", perft.nodes, START_NODES, depth);
+		System.exit(passed ? 0 : 1);
 	}
 
 }
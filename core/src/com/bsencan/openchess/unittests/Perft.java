@@ -0,0 +1,389 @@
+/*
+ * Copyright 2026 The OpenChess Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.bsencan.openchess.unittests;
+
+import com.bsencan.openchess.GameSession;
+import com.bsencan.openchess.ai.EngineType;
+import com.bsencan.openchess.events.EventType;
+import com.bsencan.openchess.events.MoveEvent;
+import com.bsencan.openchess.model.Positions;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import entity.Move;
+import entity.Position;
+import entity.Side;
+import gamemechanics.controller.tavlei.TavleiController;
+import gamemechanics.controller.tavlei.TavleiControllerManager;
+import gamemechanics.model.tavlei.TavleiPiece;
+import generated.GameModeType;
+
+/**
+ * Perft style move path enumeration shared by {@link MoveTester},
+ * {@link CaptureTester} and {@link CheckmateTester}. Walks the whole move tree
+ * of a {@link TavleiBitboard} to a fixed depth and counts the leaves, the
+ * capturing moves and the finished games on the last ply. Runs headless, no
+ * libGDX backend is needed.
+ * <p>
+ * The same tree can be walked on the library's controller to a shallow
+ * depth, which gives reference counts that don't come from the bitboard and
+ * compares the moves and captures of the two at every node. Positions the
+ * library can't be brought to are checked against moves worked out by hand
+ * from their diagrams.
+ */
+class Perft {
+
+	static final int MAX_DEPTH = 8;
+
+	/* Counters of the last run, indexed by depth. */
+	final long[] nodes = new long[MAX_DEPTH + 1];
+	final long[] captures = new long[MAX_DEPTH + 1];
+	final long[] gameOvers = new long[MAX_DEPTH + 1];
+	final long[] nanos = new long[MAX_DEPTH + 1];
+
+	private final int[] moves = new int[TavleiBitboard.MAX_MOVES * MAX_DEPTH];
+	private final long[] mask = new long[2];
+	private long leafCaptures;
+	private long leafGameOvers;
+
+	/* Counters of the last library walk, indexed by depth. */
+	final long[] libraryNodes = new long[MAX_DEPTH + 1];
+	final long[] libraryCaptures = new long[MAX_DEPTH + 1];
+	final long[] libraryNanos = new long[MAX_DEPTH + 1];
+
+	private final int[] path = new int[MAX_DEPTH];
+	private final MoveEvent proposal = new MoveEvent();
+	private boolean libraryAgrees;
+
+	/**
+	 * Runs perft for every depth from 1 to <code>depth</code>.
+	 */
+	void run(TavleiBitboard board, int depth) {
+		for (int d = 1; d <= depth; d++) {
+			this.leafCaptures = 0;
+			this.leafGameOvers = 0;
+			long start = System.nanoTime();
+			this.nodes[d] = this.count(board, d, 0);
+			this.nanos[d] = System.nanoTime() - start;
+			this.captures[d] = this.leafCaptures;
+			this.gameOvers[d] = this.leafGameOvers;
+		}
+	}
+
+	private long count(TavleiBitboard board, int depth, int offset) {
+		int size = board.generateMoves(this.moves, offset);
+		if (depth == 1) {
+			for (int i = offset; i < offset + size; i++) {
+				if (board.makeMove(this.moves[i]) > 0) this.leafCaptures++;
+				if (board.getResult() != TavleiBitboard.IN_PROGRESS) this.leafGameOvers++;
+				board.unmakeMove();
+			}
+			return size;
+		}
+		long leaves = 0;
+		for (int i = offset; i < offset + size; i++) {
+			board.makeMove(this.moves[i]);
+			leaves += this.count(board, depth - 1, offset + size);
+			board.unmakeMove();
+		}
+		return leaves;
+	}
+
+	/**
+	 * Compares one column of counters of the bitboard with reference values
+	 * and prints a line per depth, with the bitboard's speed.
+	 *
+	 * @return Whether all depths matched.
+	 */
+	boolean check(String name, long[] actual, long[] expected, int depth) {
+		return check(name, actual, expected, depth, this.nodes, this.nanos);
+	}
+
+	/**
+	 * Same as {@link #check(String, long[], long[], int)} for a column of the
+	 * library walk, with the library's speed.
+	 */
+	boolean checkLibrary(String name, long[] actual, long[] expected, int depth) {
+		return check(name, actual, expected, depth, this.libraryNodes, this.libraryNanos);
+	}
+
+	private static boolean check(String name, long[] actual, long[] expected, int depth, long[] nodes,
+			long[] nanos) {
+		boolean passed = true;
+		for (int d = 1; d <= depth && d < expected.length; d++) {
+			boolean ok = actual[d] == expected[d];
+			passed &= ok;
+			System.out.printf("%s depth %d: %d (expected %d) %s, %.0f nodes/s%n",
+					name, d, actual[d], expected[d], ok ? "ok" : "FAILED",
+					nodes[d] * 1e9 / Math.max(1, nanos[d]));
+		}
+		return passed;
+	}
+
+	/**
+	 * Compares the moves of the side to move that capture, or end the game,
+	 * with those worked out by hand from the diagram.
+	 *
+	 * @param gameOvers
+	 *            Whether to list the moves that end the game rather than
+	 *            those that capture.
+	 * @param expected
+	 *            The moves, as encoded by {@link TavleiBitboard}.
+	 * @return Whether the moves are the same.
+	 */
+	boolean checkByHand(String name, TavleiBitboard board, boolean gameOvers, int... expected) {
+		int size = board.generateMoves(this.moves, 0);
+		int[] found = new int[size];
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			int move = this.moves[i];
+			int captured = board.makeMove(move);
+			if (gameOvers ? board.getResult() != TavleiBitboard.IN_PROGRESS : captured > 0) found[count++] = move;
+			board.unmakeMove();
+		}
+		found = Arrays.copyOf(found, count);
+		int[] sorted = expected.clone();
+		Arrays.sort(found);
+		Arrays.sort(sorted);
+		boolean ok = Arrays.equals(found, sorted);
+		System.out.printf("%s by hand: %s (expected %s) %s%n", name, Arrays.toString(found),
+				Arrays.toString(sorted), ok ? "ok" : "FAILED");
+		return ok;
+	}
+
+	/**
+	 * Compares the pieces a move captures with those worked out by hand.
+	 *
+	 * @return Whether the squares are the same.
+	 */
+	boolean checkCapturedByHand(String name, TavleiBitboard board, int move, int... squares) {
+		long lo = 0, hi = 0;
+		for (int square : squares) {
+			if (square < 64) lo |= 1L << square;
+			else hi |= 1L << (square - 64);
+		}
+		board.captures(move, this.mask);
+		boolean ok = this.mask[0] == lo && this.mask[1] == hi;
+		System.out.printf("%s by hand: %x:%x (expected %x:%x) %s%n", name, this.mask[1], this.mask[0], hi,
+				lo, ok ? "ok" : "FAILED");
+		return ok;
+	}
+
+	/**
+	 * Sets up a game the way <code>BoardActor</code> does, through a session
+	 * that is kept, and returns its controller. Attackers move first.
+	 */
+	static TavleiControllerManager startGame() {
+		return new GameSession(GameModeType.PLAY_FROM_ONE_COMPUTER, null, EngineType.ALPHA_BETA).getControllerManager();
+	}
+
+	/**
+	 * Builds a position from a diagram of nine rows of nine characters, the
+	 * top row first: <code>a</code> attacker, <code>d</code> defender,
+	 * <code>p</code> prince, anything else empty.
+	 */
+	static TavleiBitboard parse(String diagram, int sideToMove) {
+		TavleiBitboard board = new TavleiBitboard();
+		String[] rows = diagram.trim().split("\\s+");
+		for (int i = 0; i < TavleiBitboard.SIZE; i++) {
+			int row = TavleiBitboard.SIZE - 1 - i;
+			for (int col = 0; col < TavleiBitboard.SIZE; col++) {
+				switch (rows[i].charAt(col)) {
+				case 'a':
+					board.put(TavleiBitboard.square(row, col), TavleiBitboard.ATTACKER);
+					break;
+				case 'd':
+					board.put(TavleiBitboard.square(row, col), TavleiBitboard.DEFENDER);
+					break;
+				case 'p':
+					board.put(TavleiBitboard.square(row, col), TavleiBitboard.PRINCE);
+					break;
+				default:
+					break;
+				}
+			}
+		}
+		board.setSideToMove(sideToMove);
+		return board;
+	}
+
+	/**
+	 * Checks that the library controller and the bitboard agree on the moves
+	 * and captures of every piece of the side to move.
+	 *
+	 * @return Whether they agree.
+	 */
+	boolean crossCheck(TavleiControllerManager manager, TavleiBitboard board) {
+		TavleiController controller = manager.getCurrentController();
+		boolean passed = true;
+		for (Position position : manager.getBoard().getAllActivePiecesPositions().values()) {
+			int from = TavleiBitboard.square(position);
+			if (TavleiBitboard.sideOfKind(board.kindAt(from)) != board.getSideToMove()) continue;
+
+			Set<Move> libraryMoves = controller.getMovesForPieceAt(position);
+			long lo = 0, hi = 0;
+			if (libraryMoves != null) {
+				for (Move move : libraryMoves) {
+					int to = TavleiBitboard.square(move.getDestination());
+					if (to < 64) lo |= 1L << to;
+					else hi |= 1L << (to - 64);
+
+					board.captures(TavleiBitboard.encodeMove(from, to), this.mask);
+					long capturedLo = 0, capturedHi = 0;
+					for (Position defeated : move.getDefeated()) {
+						int square = TavleiBitboard.square(defeated);
+						if (square < 64) capturedLo |= 1L << square;
+						else capturedHi |= 1L << (square - 64);
+					}
+					if (capturedLo != this.mask[0] || capturedHi != this.mask[1]) {
+						System.out.printf("Captures differ for move %d -> %d%n", from, to);
+						passed = false;
+					}
+				}
+			}
+			board.destinations(from, this.mask);
+			if (lo != this.mask[0] || hi != this.mask[1]) {
+				System.out.printf("Moves differ for piece at %d: library %x:%x, bitboard %x:%x%n",
+						from, hi, lo, this.mask[1], this.mask[0]);
+				passed = false;
+			}
+		}
+		return passed;
+	}
+
+	/**
+	 * Walks the move tree on the library's controller for every depth from 1
+	 * to <code>depth</code>, like {@link #run}, and counts the leaves and the
+	 * capturing moves on the last ply in {@link #libraryNodes} and
+	 * {@link #libraryCaptures}. The children of a node are the library's
+	 * moves and its defeated lists tell the captures. The library can't take
+	 * moves back, so every node is a new game with the moves leading to it
+	 * replayed. At every node the pieces, and the moves and captures of every
+	 * piece of the side to move, are compared with the bitboard's.
+	 *
+	 * @param start
+	 *            The library's start position.
+	 * @return Whether the library and the bitboard agree at every node.
+	 */
+	boolean runLibrary(TavleiBitboard start, int depth) {
+		TavleiBitboard board = new TavleiBitboard();
+		board.set(start);
+		Arrays.fill(this.libraryNodes, 0);
+		Arrays.fill(this.libraryCaptures, 0);
+		this.libraryAgrees = true;
+		for (int d = 1; d <= depth; d++) {
+			long begin = System.nanoTime();
+			this.walkLibrary(start, board, 0, d);
+			this.libraryNanos[d] = System.nanoTime() - begin;
+		}
+		return this.libraryAgrees;
+	}
+
+	private void walkLibrary(TavleiBitboard start, TavleiBitboard board, int ply, int depth) {
+		if (board.getResult() != TavleiBitboard.IN_PROGRESS) return;
+		List<Move> children = new ArrayList<Move>();
+		GameSession session = new GameSession(GameModeType.PLAY_FROM_ONE_COMPUTER, null, EngineType.ALPHA_BETA);
+		try {
+			TavleiControllerManager manager = session.getControllerManager();
+			TavleiBitboard replay = new TavleiBitboard();
+			replay.set(start);
+			for (int i = 0; i < ply; i++) {
+				Move move = new Move(Positions.get(TavleiBitboard.moveFrom(this.path[i])),
+						Positions.get(TavleiBitboard.moveTo(this.path[i])));
+				Side side = TavleiBitboard.toSide(replay.getSideToMove());
+				manager.getBoard().addInfoMove(move, side);
+				session.getEvents().post(EventType.PROPOSE_MOVE, this.proposal.set(move, side));
+				replay.makeMove(this.path[i]);
+			}
+
+			boolean agrees = this.samePieces(manager, board) && this.crossCheck(manager, board);
+			if (!agrees) {
+				System.out.printf("Library differs after %s%n", Arrays.toString(Arrays.copyOf(this.path, ply)));
+				this.libraryAgrees = false;
+			}
+			Side toMove = TavleiBitboard.toSide(board.getSideToMove());
+			TavleiController controller = manager.getCurrentController();
+			for (Map.Entry<?, Position> piece : manager.getBoard().getAllActivePiecesPositions().entrySet()) {
+				if (((TavleiPiece) piece.getKey()).getSide() != toMove) continue;
+				Set<Move> moves = controller.getMovesForPieceAt(piece.getValue());
+				if (moves != null) children.addAll(moves);
+			}
+		} finally {
+			session.dispose();
+		}
+
+		if (ply + 1 == depth) {
+			this.libraryNodes[depth] += children.size();
+			for (Move child : children) {
+				if (child.getDefeated() != null && !child.getDefeated().isEmpty()) this.libraryCaptures[depth]++;
+			}
+			return;
+		}
+		for (Move child : children) {
+			int move = TavleiBitboard.encodeMove(TavleiBitboard.square(child.getStart()),
+					TavleiBitboard.square(child.getDestination()));
+			this.path[ply] = move;
+			board.makeMove(move);
+			this.walkLibrary(start, board, ply + 1, depth);
+			board.unmakeMove();
+		}
+	}
+
+	/**
+	 * @return Whether the library has the same pieces on the same squares as
+	 *         the bitboard.
+	 */
+	private boolean samePieces(TavleiControllerManager manager, TavleiBitboard board) {
+		int count = 0;
+		for (Map.Entry<?, Position> piece : manager.getBoard().getAllActivePiecesPositions().entrySet()) {
+			int square = TavleiBitboard.square(piece.getValue());
+			if (board.kindAt(square) != TavleiBitboard.kind((TavleiPiece) piece.getKey())) return false;
+			count++;
+		}
+		return count == board.getAttackerCount() + board.getDefenderCount() + (board.getPrinceSquare() < 0 ? 0 : 1);
+	}
+
+	/**
+	 * Measures <code>TavleiController.getMovesForPieceAt</code> over all
+	 * pieces of the position for about a second.
+	 *
+	 * @return Calls per second.
+	 */
+	static double libraryThroughput(TavleiControllerManager manager) {
+		TavleiController controller = manager.getCurrentController();
+		Position[] positions = manager.getBoard().getAllActivePiecesPositions().values()
+				.toArray(new Position[0]);
+		long calls = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			for (Position position : positions) {
+				controller.getMovesForPieceAt(position);
+			}
+			calls += positions.length;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < 1000000000L);
+		return calls * 1e9 / elapsed;
+	}
+
+	static int depthArgument(String[] args, int fallback) {
+		return args.length > 0 ? Math.min(MAX_DEPTH, Integer.parseInt(args[0])) : fallback;
+	}
+
+}
@@ -0,0 +1,357 @@
+package com.bsencan.openchess.view;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input.Keys;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.profiling.GLProfiler;
+import com.badlogic.gdx.utils.Disposable;
+import com.bsencan.openchess.Assets;
+import com.bsencan.openchess.OpenChess;
+import com.bsencan.openchess.actors.BoardActor;
+import com.bsencan.openchess.ai.AiPlayer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Debug overlay of {@link GameRenderer}. Shows the frame time percentiles,
+ * sprite batch render calls, texture binds counted by {@link GLProfiler}, the
+ * Java heap in use, garbage collections and the AI's search speed. F3 (or the
+ * menu key) toggles it, F4 toggles a CSV trace of every frame to local
+ * storage.
+ * <p>
+ * Frames are only rendered on demand, so the time between two frames says
+ * little outside of animations. The HUD measures the time spent in
+ * <code>act</code> and <code>draw</code> instead and shows the animation
+ * frame times of the renderer next to it.
+ * <p>
+ * Garbage collections come from {@link OpenChess#gcCounter} where the backend
+ * sets one, as Android does, and are summed over the collector MX beans
+ * otherwise. Without either the HUD shows no collections and the trace has -1.
+ */
+public class DebugHud implements Disposable {
+
+	private static final String TAG = "DebugHud";
+
+	/** Trace lines between two flushes, so that a crash loses little. */
+	private static final int FLUSH_LINES = 60;
+
+	private static final String TRACE_HEADER = "millis,delta_us,work_us,render_calls,draw_calls,"
+			+ "texture_binds,shader_switches,java_heap,native_heap,gc,nodes_per_second,animating\n";
+
+	private final BoardActor boardActor;
+	private final SpriteBatch stageBatch;
+	private final FrameTimeHistogram animationFrameTimes;
+	private final FrameTimeHistogram workTimes = new FrameTimeHistogram();
+
+	private SpriteBatch batch;
+	private BitmapFont font;
+	private final StringBuilder text = new StringBuilder(256);
+
+	private boolean enabled;
+	private long frameStart;
+	private int renderCallsStart;
+	private boolean gcCounted;
+	private long gcTotal;
+	private int gcCount;
+
+	private Writer trace;
+	private final StringBuilder line = new StringBuilder(128);
+	private char[] lineChars = new char[128];
+	private long traceStart;
+	private int traceLines;
+
+	/**
+	 * @param stageBatch
+	 *            Batch the measured stage draws with, or null if it isn't a
+	 *            <code>SpriteBatch</code>.
+	 */
+	public DebugHud(BoardActor boardActor, Batch stageBatch, FrameTimeHistogram animationFrameTimes) {
+		this.boardActor = boardActor;
+		this.stageBatch = stageBatch instanceof SpriteBatch ? (SpriteBatch) stageBatch : null;
+		this.animationFrameTimes = animationFrameTimes;
+		this.setEnabled(OpenChess.debugHud);
+	}
+
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		if (enabled == this.enabled) return;
+		this.enabled = enabled;
+		OpenChess.debugHud = enabled;
+		if (enabled) {
+			GLProfiler.enable();
+			this.workTimes.clear();
+			try {
+				this.gcTotal = countGcs();
+				this.gcCounted = true;
+			} catch (LinkageError e) {
+				/* No java.lang.management. */
+				this.gcCounted = false;
+			}
+		} else {
+			GLProfiler.disable();
+			this.setTracing(false);
+		}
+		Gdx.graphics.requestRendering();
+	}
+
+	public boolean isTracing() {
+		return this.trace != null;
+	}
+
+	/**
+	 * Starts or stops writing a line per frame to a new
+	 * <code>trace-&lt;time&gt;.csv</code> in local storage. Turns the HUD on
+	 * too, since the trace takes its numbers.
+	 */
+	public void setTracing(boolean tracing) {
+		if (tracing == this.isTracing()) return;
+		if (tracing) {
+			this.setEnabled(true);
+			this.traceStart = System.currentTimeMillis();
+			FileHandle file = Gdx.files.local("trace-" + this.traceStart + ".csv");
+			try {
+				this.trace = file.writer(false);
+				this.trace.write(TRACE_HEADER);
+				this.traceLines = 0;
+				Gdx.app.log(TAG, "Tracing to " + file.path());
+			} catch (Exception e) {
+				Gdx.app.error(TAG, "Can't trace to " + file.path(), e);
+				this.trace = null;
+			}
+		} else {
+			this.closeTrace();
+		}
+	}
+
+	/**
+	 * Handles the toggle keys. Call once per frame.
+	 */
+	public void handleInput() {
+		if (Gdx.input.isKeyJustPressed(Keys.F3) || Gdx.input.isKeyJustPressed(Keys.MENU)) {
+			this.setEnabled(!this.enabled);
+		}
+		if (Gdx.input.isKeyJustPressed(Keys.F4)) {
+			this.setTracing(!this.isTracing());
+		}
+	}
+
+	/**
+	 * Call before the stage acts.
+	 */
+	public void frameStarted() {
+		if (!this.enabled) return;
+		GLProfiler.reset();
+		if (this.stageBatch != null) this.renderCallsStart = this.stageBatch.totalRenderCalls;
+		this.frameStart = System.nanoTime();
+	}
+
+	/**
+	 * Records the frame and draws the HUD over it. Call after the stage has
+	 * been drawn.
+	 *
+	 * @param delta
+	 *            Time since the last frame, in seconds.
+	 */
+	public void frameEnded(float delta) {
+		if (!this.enabled) return;
+		long work = System.nanoTime() - this.frameStart;
+		int renderCalls = this.stageBatch == null ? 0
+				: this.stageBatch.totalRenderCalls - this.renderCallsStart;
+		int drawCalls = GLProfiler.drawCalls;
+		int textureBinds = GLProfiler.textureBindings;
+		int shaderSwitches = GLProfiler.shaderSwitches;
+		long javaHeap = Gdx.app.getJavaHeap();
+		long nativeHeap = Gdx.app.getNativeHeap();
+		int gcs = this.pollGc();
+		long nodesPerSecond = this.getNodesPerSecond();
+		this.workTimes.record(work / 1e9f);
+
+		if (this.trace != null) {
+			this.trace(delta, work, renderCalls, drawCalls, textureBinds, shaderSwitches,
+					javaHeap, nativeHeap, gcs, nodesPerSecond);
+		}
+
+		StringBuilder text = this.text;
+		text.setLength(0);
+		text.append("work p50 ");
+		appendMillis(text, this.workTimes.getPercentile(50));
+		text.append(" p95 ");
+		appendMillis(text, this.workTimes.getPercentile(95));
+		text.append(" p99 ");
+		appendMillis(text, this.workTimes.getPercentile(99));
+		text.append(" max ");
+		appendMillis(text, this.workTimes.getMax());
+		text.append(" ms\nanimation p50 ");
+		appendMillis(text, this.animationFrameTimes.getPercentile(50));
+		text.append(" p95 ");
+		appendMillis(text, this.animationFrameTimes.getPercentile(95));
+		text.append(" p99 ");
+		appendMillis(text, this.animationFrameTimes.getPercentile(99));
+		text.append(" ms, ").append(this.animationFrameTimes.getOverBudget()).append('/')
+				.append(this.animationFrameTimes.getCount()).append(" over budget\nrender calls ")
+				.append(renderCalls).append(", draw calls ").append(drawCalls)
+				.append(", texture binds ").append(textureBinds).append("\nheap ")
+				.append(javaHeap >> 20).append(" MB java, ").append(nativeHeap >> 20)
+				.append(" MB native");
+		if (this.gcCounted) text.append(", gc ").append(gcs).append(" (").append(this.gcCount).append(" total)");
+		text.append("\nAI ").append(nodesPerSecond / 1000).append(" knodes/s");
+		if (this.trace != null) text.append("\ntracing");
+
+		if (this.batch == null) {
+			this.batch = new SpriteBatch();
+			this.font = Assets.skin.getFont("normal");
+			this.resize(Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
+		}
+		this.batch.begin();
+		this.font.draw(this.batch, text, 8, Gdx.graphics.getHeight() - 8);
+		this.batch.end();
+	}
+
+	public void resize(int width, int height) {
+		if (this.batch != null) {
+			this.batch.getProjectionMatrix().setToOrtho2D(0, 0, width, height);
+		}
+	}
+
+	/**
+	 * Flushes the trace. Call when the application is paused, it may not be
+	 * resumed.
+	 */
+	public void flush() {
+		if (this.trace == null) return;
+		try {
+			this.trace.flush();
+		} catch (IOException e) {
+			Gdx.app.error(TAG, "Can't write the trace", e);
+			this.closeTrace();
+		}
+	}
+
+	/**
+	 * @return Collections since the last frame, or -1 if they aren't counted.
+	 */
+	private int pollGc() {
+		if (!this.gcCounted) return -1;
+		long total = countGcs();
+		int gcs = (int) (total - this.gcTotal);
+		this.gcTotal = total;
+		this.gcCount += gcs;
+		return gcs;
+	}
+
+	private long getNodesPerSecond() {
+		AiPlayer aiPlayer = this.boardActor.getAiPlayer();
+		return aiPlayer == null ? 0 : aiPlayer.getEngine().getNodesPerSecond();
+	}
+
+	private void trace(float delta, long work, int renderCalls, int drawCalls, int textureBinds,
+			int shaderSwitches, long javaHeap, long nativeHeap, int gcs, long nodesPerSecond) {
+		StringBuilder line = this.line;
+		line.setLength(0);
+		line.append(System.currentTimeMillis() - this.traceStart).append(',')
+				.append((int) (delta * 1e6f)).append(',').append(work / 1000).append(',')
+				.append(renderCalls).append(',').append(drawCalls).append(',')
+				.append(textureBinds).append(',').append(shaderSwitches).append(',')
+				.append(javaHeap).append(',').append(nativeHeap).append(',').append(gcs).append(',')
+				.append(nodesPerSecond).append(',').append(this.boardActor.isAnimating() ? 1 : 0)
+				.append('\n');
+
+		/* Writer.append(CharSequence) would make a String of every line. */
+		if (this.lineChars.length < line.length()) this.lineChars = new char[line.length()];
+		line.getChars(0, line.length(), this.lineChars, 0);
+		try {
+			this.trace.write(this.lineChars, 0, line.length());
+			if (++this.traceLines % FLUSH_LINES == 0) this.trace.flush();
+		} catch (IOException e) {
+			Gdx.app.error(TAG, "Can't write the trace", e);
+			this.closeTrace();
+		}
+	}
+
+	private void closeTrace() {
+		if (this.trace == null) return;
+		try {
+			this.trace.close();
+		} catch (IOException e) {
+			Gdx.app.error(TAG, "Can't close the trace", e);
+		}
+		this.trace = null;
+	}
+
+	/**
+	 * Appends milliseconds with two decimals without boxing or formatting.
+	 */
+	private static void appendMillis(StringBuilder text, float millis) {
+		int hundredths = Math.round(millis * 100);
+		text.append(hundredths / 100).append('.');
+		int fraction = hundredths % 100;
+		if (fraction < 10) text.append('0');
+		text.append(fraction);
+	}
+
+	@Override
+	public void dispose() {
+		/* Keeps OpenChess.debugHud, so the next game shows the HUD too. */
+		if (this.enabled) GLProfiler.disable();
+		this.enabled = false;
+		this.closeTrace();
+		if (this.batch != null) {
+			this.batch.dispose();
+			this.batch = null;
+		}
+	}
+
+	/**
+	 * @return Collections so far, from the backend's counter if it has one.
+	 */
+	private static long countGcs() {
+		GcCounter counter = OpenChess.gcCounter;
+		return counter != null ? counter.count() : GcBeans.count();
+	}
+
+	/**
+	 * Counts garbage collections where <code>java.lang.management</code> is
+	 * missing or doesn't see the runtime's collector.
+	 */
+	public interface GcCounter {
+
+		/**
+		 * @return Collections so far.
+		 */
+		long count();
+
+	}
+
+	/**
+	 * Collector MX beans, in a class of their own so that the HUD loads where
+	 * <code>java.lang.management</code> doesn't exist.
+	 */
+	private static final class GcBeans {
+
+		private static final List<GarbageCollectorMXBean> BEANS = ManagementFactory.getGarbageCollectorMXBeans();
+
+		/**
+		 * @return Collections of all collectors so far.
+		 */
+		static long count() {
+			long count = 0;
+			for (int i = 0; i < BEANS.size(); i++) {
+				/* -1 if the collector doesn't count. */
+				count += Math.max(0, BEANS.get(i).getCollectionCount());
+			}
+			return count;
+		}
+
+	}
+
+}
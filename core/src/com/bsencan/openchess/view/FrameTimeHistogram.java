@@ -0,0 +1,83 @@
+package com.bsencan.openchess.view;
+
+/**
+ * Histogram of frame times in buckets of a quarter millisecond, up to 100 ms.
+ * Recording a frame is an array increment, so it can run every frame without
+ * allocating.
+ */
+public class FrameTimeHistogram {
+
+	/** Frame time of 60 frames per second, in milliseconds. */
+	public static final float BUDGET_60_FPS = 1000f / 60;
+
+	private static final int BUCKETS_PER_MILLI = 4;
+	private static final int BUCKETS = 100 * BUCKETS_PER_MILLI;
+
+	/* The last bucket also counts every longer frame. */
+	private final int[] buckets = new int[BUCKETS + 1];
+	private int count;
+	private int overBudget;
+	private float max;
+
+	/**
+	 * @param seconds
+	 *            Frame time, as passed to <code>render</code>.
+	 */
+	public void record(float seconds) {
+		float millis = seconds * 1000;
+		int bucket = Math.min(BUCKETS, (int) (millis * BUCKETS_PER_MILLI));
+		this.buckets[bucket]++;
+		this.count++;
+		if (millis > BUDGET_60_FPS) this.overBudget++;
+		if (millis > this.max) this.max = millis;
+	}
+
+	public void clear() {
+		for (int i = 0; i < this.buckets.length; i++) {
+			this.buckets[i] = 0;
+		}
+		this.count = 0;
+		this.overBudget = 0;
+		this.max = 0;
+	}
+
+	public int getCount() {
+		return this.count;
+	}
+
+	/**
+	 * @return Frames that took longer than {@link #BUDGET_60_FPS}.
+	 */
+	public int getOverBudget() {
+		return this.overBudget;
+	}
+
+	public float getMax() {
+		return this.max;
+	}
+
+	/**
+	 * @param percentile
+	 *            Between 0 and 100.
+	 * @return Upper bound of the bucket holding the percentile, in
+	 *         milliseconds, or 0 if nothing has been recorded.
+	 */
+	public float getPercentile(float percentile) {
+		if (this.count == 0) return 0;
+		int rank = Math.max(1, (int) Math.ceil(this.count * percentile / 100));
+		int seen = 0;
+		for (int bucket = 0; bucket <= BUCKETS; bucket++) {
+			seen += this.buckets[bucket];
+			if (seen >= rank) return Math.min(this.max, (bucket + 1f) / BUCKETS_PER_MILLI);
+		}
+		return this.max;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d frames, p50 %.2f ms, p95 %.2f ms, p99 %.2f ms, max %.2f ms, %d over %.1f ms",
+				this.count, this.getPercentile(50), this.getPercentile(95), this.getPercentile(99),
+				this.max, this.overBudget, BUDGET_60_FPS);
+	}
+
+}
@@ -22,9 +22,12 @@ import com.badlogic.gdx.scenes.scene2d.ui.TextButton;
 import com.badlogic.gdx.scenes.scene2d.utils.ClickListener;
 import com.badlogic.gdx.utils.viewport.FitViewport;
 import com.bsencan.openchess.Assets;
+import com.bsencan.openchess.GameSession;
 import com.bsencan.openchess.OpenChess;
 import com.bsencan.openchess.actors.BoardActor;
-import com.bsencan.openchess.actors.GameOverEventActor;
+import com.bsencan.openchess.ai.EngineType;
+import com.bsencan.openchess.events.EventType;
+import com.bsencan.openchess.events.GameOverEvent;
 import com.bsencan.openchess.screens.GameScreen;
 
 import de.tomgrill.gdxdialogs.core.GDXDialogs;
@@ -32,7 +35,6 @@ import de.tomgrill.gdxdialogs.core.GDXDialogsSystem;
 import de.tomgrill.gdxdialogs.core.dialogs.GDXButtonDialog;
 import entity.Side;
 import entity.TavleiState;
-import entity.event.GameEvent;
 import generated.GameModeType;
 
 /**
@@ -42,26 +44,31 @@ import generated.GameModeType;
  */
 public class GameRenderer implements Renderer {
 
+	private static final String TAG = "Render";
+
 	private final Stage stage;
+	private final BoardActor boardActor;
+	private final FrameTimeHistogram animationFrameTimes = new FrameTimeHistogram();
+	private boolean wasAnimating;
+	private final DebugHud debugHud;
 	private Table hud;
 	private TextButton playAIButton;
+	private TextButton playEngineButton;
 	private TextButton playHumanButton;
+	private TextButton playOnlineButton;
+	private TextButton undoButton;
+	private TextButton redoButton;
 	private final int boardSize;
 
 	public GameRenderer(BoardActor boardActor) {
+		this.boardActor=boardActor;
 		boardSize=boardActor.getSize();
 		stage = new Stage(new FitViewport(boardSize+1, boardSize+2));
 		Gdx.input.setInputProcessor(this.stage);
 		this.stage.addActor(boardActor);
 		this.initUI();
-		boardActor.addListener(event ->{
-			if (event instanceof GameOverEventActor)
-			{
-				this.showWinDialog(((GameOverEventActor) event).getEvent());
-			}
-			return true;
-		}
-		);
+		this.debugHud = new DebugHud(boardActor, this.stage.getBatch(), this.animationFrameTimes);
+		boardActor.getEvents().subscribe(EventType.GAME_OVER, this::showWinDialog);
 
 	}
 
@@ -69,33 +76,64 @@ public class GameRenderer implements Renderer {
 		this.hud = new Table(Assets.skin);
 
 		this.playAIButton = new TextButton(" Play with AI ", Assets.skin);
+		this.playEngineButton = new TextButton(" Play with engine ", Assets.skin);
 		this.playHumanButton = new TextButton(" Play with human ", Assets.skin);
+		this.playOnlineButton = new TextButton(" Play online ", Assets.skin);
 		this.playAIButton.addListener(new ClickListener() {
 			@Override
 			public void clicked(InputEvent event, float x, float y) {
-				OpenChess.gameModeType=GameModeType.PLAY_WITH_AI;
-				OpenChess.mySide= Side.WHITE;
-				OpenChess.game.setScreen(new GameScreen());
+				OpenChess.game.setScreen(new GameScreen(new GameSession(GameModeType.PLAY_WITH_AI, Side.WHITE, EngineType.LIBRARY)));
+			}
+		});
+		/* GameModeType is the library's, so the in-core AI is an engine of PLAY_WITH_AI. */
+		this.playEngineButton.addListener(new ClickListener() {
+			@Override
+			public void clicked(InputEvent event, float x, float y) {
+				OpenChess.game.setScreen(new GameScreen(new GameSession(GameModeType.PLAY_WITH_AI, Side.WHITE, EngineType.ALPHA_BETA)));
+			}
+		});
+		this.playOnlineButton.addListener(new ClickListener() {
+			@Override
+			public void clicked(InputEvent event, float x, float y) {
+				OpenChess.game.setScreen(new GameScreen(new GameSession(GameModeType.PLAY_WITH_AI, null, EngineType.REMOTE)));
 			}
 		});
 		this.playHumanButton.addListener(new ClickListener() {
 			@Override
 			public void clicked(InputEvent event, float x, float y) {
-				OpenChess.gameModeType=GameModeType.PLAY_FROM_ONE_COMPUTER;
-				OpenChess.game.setScreen(new GameScreen());
+				OpenChess.game.setScreen(new GameScreen(new GameSession(GameModeType.PLAY_FROM_ONE_COMPUTER, null, EngineType.LIBRARY)));
+			}
+		});
+
+		this.undoButton = new TextButton(" Undo ", Assets.skin);
+		this.redoButton = new TextButton(" Redo ", Assets.skin);
+		this.undoButton.addListener(new ClickListener() {
+			@Override
+			public void clicked(InputEvent event, float x, float y) {
+				GameRenderer.this.boardActor.getController().undoMove();
+			}
+		});
+		this.redoButton.addListener(new ClickListener() {
+			@Override
+			public void clicked(InputEvent event, float x, float y) {
+				GameRenderer.this.boardActor.getController().redoMove();
 			}
 		});
 
 		this.hud.add(this.playAIButton);
+		this.hud.add(this.playEngineButton);
 		this.hud.add(this.playHumanButton);
+		this.hud.add(this.playOnlineButton);
+		this.hud.add(this.undoButton);
+		this.hud.add(this.redoButton);
 		this.hud.setTransform(true);
 		this.hud.setScale(1 / this.playAIButton.getHeight());
 		this.hud.setPosition((int) (boardSize/2)+1, boardSize+1);
 		this.stage.addActor(this.hud);
 	}
-	private void showWinDialog(GameEvent event)
+	private void showWinDialog(GameOverEvent event)
 	{
-		TavleiState state= (TavleiState) event.getData();
+		TavleiState state=event.getState();
 		Side winner;
 		String message;
 		switch (state)
@@ -114,7 +152,7 @@ public class GameRenderer implements Renderer {
 				break;
 		}
 
-		boolean isWinner=OpenChess.gameModeType.equals(GameModeType.PLAY_FROM_ONE_COMPUTER) || (OpenChess.mySide.equals(winner));
+		boolean isWinner=boardActor.getSession().isMine(winner);
 		GDXDialogs dialogs = GDXDialogsSystem.install();
 		GDXButtonDialog endDialog = dialogs.newDialog(GDXButtonDialog.class);
 		endDialog.setTitle(isWinner?"You win!!!!":"Game End");
@@ -126,19 +164,48 @@ public class GameRenderer implements Renderer {
 
 	@Override
 	public void render(float delta) {
+		this.debugHud.handleInput();
+		this.debugHud.frameStarted();
+
+		/* Only frames rendered back to back while animating have a meaningful delta. */
+		if (this.wasAnimating && this.boardActor.isAnimating()) {
+			this.animationFrameTimes.record(delta);
+		}
+		this.stage.act(delta);
+		boolean animating = this.boardActor.isAnimating();
+		if (this.wasAnimating && !animating) {
+			Gdx.app.debug(TAG, "Animation frames: " + this.animationFrameTimes);
+		}
+		this.wasAnimating = animating;
+
 		Gdx.gl.glClearColor(.3f, .3f, .4f, 1);
 		Gdx.gl.glClear(GL30.GL_COLOR_BUFFER_BIT);
 		this.stage.draw();
+		this.debugHud.frameEnded(delta);
+	}
+
+	/**
+	 * @return Times of the frames rendered during move and capture
+	 *         animations.
+	 */
+	public FrameTimeHistogram getAnimationFrameTimes() {
+		return this.animationFrameTimes;
+	}
+
+	public DebugHud getDebugHud() {
+		return this.debugHud;
 	}
 
 	@Override
 	public void setSize(int width, int height) {
 		this.stage.getViewport().update(width, height, false);
+		this.debugHud.resize(width, height);
 		Gdx.graphics.requestRendering();
 	}
 
 	@Override
 	public void dispose() {
+		this.debugHud.dispose();
 		this.stage.dispose();
 	}
 
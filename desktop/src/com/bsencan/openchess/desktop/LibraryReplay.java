@@ -0,0 +1,126 @@
+package com.bsencan.openchess.desktop;
+
+import com.bsencan.openchess.GameSession;
+import com.bsencan.openchess.ai.EngineType;
+import com.bsencan.openchess.events.EventBus;
+import com.bsencan.openchess.events.EventType;
+import com.bsencan.openchess.events.GameOverEvent;
+import com.bsencan.openchess.events.MoveEvent;
+import com.bsencan.openchess.events.RulesErrorEvent;
+import com.bsencan.openchess.model.Positions;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.util.Set;
+
+import entity.Move;
+import entity.Position;
+import entity.Side;
+import entity.TavleiState;
+import gamemechanics.controller.tavlei.TavleiController;
+import gamemechanics.controller.tavlei.TavleiControllerManager;
+import generated.GameModeType;
+
+/**
+ * Replays a game played on the bitboard through the library controller of a
+ * {@link GameSession}, proposing every move on its event bus the way
+ * <code>BoardController</code> does. Before each move the library's moves and
+ * captures for the moving piece are compared with the bitboard's, and every
+ * rules error or a different game end counts as a disagreement. A game that
+ * leaves a side without a move must end there with the other side winning,
+ * as the in-core AI and its tablebase score it.
+ * <p>
+ * Like every use of the library, replays must all run on one thread.
+ */
+class LibraryReplay {
+
+	private final long[] mask = new long[2];
+	private final int[] buffer = new int[TavleiBitboard.MAX_MOVES];
+	private final MoveEvent proposal = new MoveEvent();
+	private final EventBus.Listener<RulesErrorEvent> rulesErrorListener = event -> this.rulesErrors++;
+	private final EventBus.Listener<GameOverEvent> gameOverListener = this::onGameOver;
+	private int rulesErrors;
+	private boolean gameOver;
+	private TavleiState state;
+
+	/**
+	 * @param start
+	 *            Position the game started from. Must be the library's start
+	 *            position.
+	 * @return Number of disagreements.
+	 */
+	int replay(TavleiBitboard start, int[] moves, int count) {
+		GameSession session = new GameSession(GameModeType.PLAY_FROM_ONE_COMPUTER, null, EngineType.ALPHA_BETA);
+		try {
+			EventBus events = session.getEvents();
+			this.rulesErrors = 0;
+			this.gameOver = false;
+			this.state = null;
+			events.subscribe(EventType.RULES_ERROR, this.rulesErrorListener);
+			events.subscribe(EventType.GAME_OVER, this.gameOverListener);
+			TavleiControllerManager manager = session.getControllerManager();
+
+			TavleiBitboard board = new TavleiBitboard();
+			board.set(start);
+			int mismatches = 0;
+			for (int i = 0; i < count; i++) {
+				int from = TavleiBitboard.moveFrom(moves[i]);
+				int to = TavleiBitboard.moveTo(moves[i]);
+				mismatches += this.compare(manager.getCurrentController(), board, from, to);
+
+				Move move = new Move(Positions.get(from), Positions.get(to));
+				Side side = TavleiBitboard.toSide(board.getSideToMove());
+				manager.getBoard().addInfoMove(move, side);
+				events.post(EventType.PROPOSE_MOVE, this.proposal.set(move, side));
+				board.makeMove(moves[i]);
+			}
+			int result = board.getResult();
+			if (result == TavleiBitboard.IN_PROGRESS && board.generateMoves(this.buffer, 0) == 0) {
+				result = board.getResultWithoutMoves();
+			}
+			if (this.gameOver != (result != TavleiBitboard.IN_PROGRESS)
+					|| this.gameOver && this.state != TavleiBitboard.toState(result)) {
+				mismatches++;
+			}
+			return mismatches + this.rulesErrors;
+		} finally {
+			session.dispose();
+		}
+	}
+
+	private void onGameOver(GameOverEvent event) {
+		this.gameOver = true;
+		this.state = event.getState();
+	}
+
+	/**
+	 * @return Number of disagreements on the destinations of the piece on
+	 *         <code>from</code> and on the captures of its move to
+	 *         <code>to</code>.
+	 */
+	private int compare(TavleiController controller, TavleiBitboard board, int from, int to) {
+		Set<Move> libraryMoves = controller.getMovesForPieceAt(Positions.get(from));
+		if (libraryMoves == null) return 1;
+
+		int mismatches = 0;
+		long lo = 0, hi = 0;
+		for (Move move : libraryMoves) {
+			int destination = TavleiBitboard.square(move.getDestination());
+			if (destination < 64) lo |= 1L << destination;
+			else hi |= 1L << (destination - 64);
+			if (destination != to) continue;
+
+			long capturedLo = 0, capturedHi = 0;
+			for (Position defeated : move.getDefeated()) {
+				int square = TavleiBitboard.square(defeated);
+				if (square < 64) capturedLo |= 1L << square;
+				else capturedHi |= 1L << (square - 64);
+			}
+			board.captures(TavleiBitboard.encodeMove(from, to), this.mask);
+			if (capturedLo != this.mask[0] || capturedHi != this.mask[1]) mismatches++;
+		}
+		board.destinations(from, this.mask);
+		if (lo != this.mask[0] || hi != this.mask[1]) mismatches++;
+		return mismatches;
+	}
+
+}
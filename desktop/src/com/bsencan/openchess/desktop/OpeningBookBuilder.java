@@ -0,0 +1,233 @@
+package com.bsencan.openchess.desktop;
+
+import com.bsencan.openchess.GameSession;
+import com.bsencan.openchess.ai.OpeningBook;
+import com.bsencan.openchess.ai.SearchEngine;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the {@link OpeningBook} of the in-core AI from self-play, offline.
+ * Games run like those of {@link SelfPlayRunner}, but in the first plies a
+ * move is random now and then, standing in for the opponents the AI will
+ * meet. Every move of those plies is scored by the game's result for the
+ * side that made it: 2 for a win, 1 for a draw. A position keeps its best
+ * replies played in enough games, weighted by their mean score with one
+ * draw's worth added, so that a move seen once doesn't look perfect.
+ * <p>
+ * Usage: <code>OpeningBookBuilder [-games n] [-threads n] [-depth n]
+ * [-millis n] [-plies n] [-book-plies n] [-random p] [-min n] [-replies n]
+ * [-seed n] [-out file]</code>. Copy the file to
+ * <code>android/assets/</code>{@value OpeningBook#DEFAULT_PATH} to ship it.
+ */
+public class OpeningBookBuilder {
+
+	private int games = 2000;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int depth = 5;
+	private long millis = 2000;
+	private int plies = 300;
+	private int bookPlies = 10;
+	private double random = 0.25;
+	private int min = 3;
+	private int replies = 3;
+	private long seed = 1;
+	private String out = "opening.book";
+
+	/* Games and points of every move of every position, guarded by this. */
+	private final Map<Long, Map<Integer, int[]>> positions = new HashMap<Long, Map<Integer, int[]>>();
+	private final AtomicInteger nextGame = new AtomicInteger();
+	private TavleiBitboard start;
+
+	public static void main(String[] args) throws Exception {
+		OpeningBookBuilder builder = new OpeningBookBuilder();
+		builder.parse(args);
+		builder.run();
+	}
+
+	private void parse(String[] args) {
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "-games":
+				this.games = Integer.parseInt(value);
+				break;
+			case "-threads":
+				this.threads = Integer.parseInt(value);
+				break;
+			case "-depth":
+				this.depth = Integer.parseInt(value);
+				break;
+			case "-millis":
+				this.millis = Long.parseLong(value);
+				break;
+			case "-plies":
+				this.plies = Integer.parseInt(value);
+				break;
+			case "-book-plies":
+				this.bookPlies = Integer.parseInt(value);
+				break;
+			case "-random":
+				this.random = Double.parseDouble(value);
+				break;
+			case "-min":
+				this.min = Integer.parseInt(value);
+				break;
+			case "-replies":
+				this.replies = Integer.parseInt(value);
+				break;
+			case "-seed":
+				this.seed = Long.parseLong(value);
+				break;
+			case "-out":
+				this.out = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+	}
+
+	private void run() throws InterruptedException, IOException {
+		this.start = GameSession.loadStartPosition();
+		System.out.printf("%d games on %d threads, depth %d, %d ms per move, book of %d plies%n",
+				this.games, this.threads, this.depth, this.millis, this.bookPlies);
+
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		long begin = System.nanoTime();
+		for (int i = 0; i < this.threads; i++) {
+			pool.execute(this::playGames);
+		}
+		pool.shutdown();
+		while (!pool.awaitTermination(10, TimeUnit.SECONDS)) {
+			System.out.printf("%d games started%n", Math.min(this.games, this.nextGame.get()));
+		}
+		System.out.printf("Played in %.1f s%n", (System.nanoTime() - begin) / 1e9);
+		this.write();
+	}
+
+	/**
+	 * Plays games until all are taken. Runs on a pool thread.
+	 */
+	private void playGames() {
+		SearchEngine engine = new SearchEngine();
+		TavleiBitboard board = new TavleiBitboard();
+		int[] buffer = new int[TavleiBitboard.MAX_MOVES];
+		long[] hashes = new long[this.bookPlies];
+		int[] moves = new int[this.bookPlies];
+		int[] sides = new int[this.bookPlies];
+
+		int game;
+		while ((game = this.nextGame.getAndIncrement()) < this.games) {
+			board.set(this.start);
+			engine.getTable().clear();
+			Random random = new Random(this.seed * 1000003 + game);
+			int ply = 0;
+			int result = TavleiBitboard.IN_PROGRESS;
+			for (; ply < this.plies && board.getResult() == TavleiBitboard.IN_PROGRESS; ply++) {
+				int move;
+				if (ply < this.bookPlies && random.nextDouble() < this.random) {
+					int count = board.generateMoves(buffer, 0);
+					move = count == 0 ? TavleiBitboard.NO_MOVE : buffer[random.nextInt(count)];
+				} else {
+					move = engine.search(board, this.millis, this.depth);
+				}
+				if (move == TavleiBitboard.NO_MOVE) {
+					/* The side left without a move has lost. */
+					result = board.getResultWithoutMoves();
+					break;
+				}
+				if (ply < this.bookPlies) {
+					hashes[ply] = board.getHash();
+					moves[ply] = move;
+					sides[ply] = board.getSideToMove();
+				}
+				board.makeMove(move);
+			}
+			if (result == TavleiBitboard.IN_PROGRESS) result = board.getResult();
+			board.clearHistory();
+			this.add(hashes, moves, sides, Math.min(ply, this.bookPlies), result);
+		}
+	}
+
+	/**
+	 * Scores the book plies of a game.
+	 */
+	private synchronized void add(long[] hashes, int[] moves, int[] sides, int count, int result) {
+		for (int ply = 0; ply < count; ply++) {
+			int side = sides[ply];
+			int points;
+			if (result == TavleiBitboard.ATTACKERS_WIN) points = side == TavleiBitboard.ATTACKERS ? 2 : 0;
+			else if (result == TavleiBitboard.DEFENDERS_WIN) points = side == TavleiBitboard.DEFENDERS ? 2 : 0;
+			else points = 1;
+
+			Map<Integer, int[]> replies = this.positions.get(hashes[ply]);
+			if (replies == null) {
+				replies = new HashMap<Integer, int[]>();
+				this.positions.put(hashes[ply], replies);
+			}
+			int[] score = replies.get(moves[ply]);
+			if (score == null) {
+				score = new int[2];
+				replies.put(moves[ply], score);
+			}
+			score[0]++;
+			score[1] += points;
+		}
+	}
+
+	private void write() throws IOException {
+		long[] keys = new long[this.positions.size()];
+		int size = 0;
+		for (long hash : this.positions.keySet()) {
+			keys[size++] = hash;
+		}
+		Arrays.sort(keys);
+
+		long[] hashes = new long[keys.length * this.replies];
+		int[] moves = new int[hashes.length];
+		int[] weights = new int[hashes.length];
+		int count = 0;
+		int positions = 0;
+		List<int[]> kept = new ArrayList<int[]>();
+		for (long hash : keys) {
+			kept.clear();
+			for (Map.Entry<Integer, int[]> reply : this.positions.get(hash).entrySet()) {
+				int[] score = reply.getValue();
+				if (score[0] < this.min) continue;
+				int weight = (int) (0xFFFFL * (score[1] + 1) / (2 * score[0] + 2));
+				kept.add(new int[] { reply.getKey(), weight });
+			}
+			if (kept.isEmpty()) continue;
+			kept.sort((a, b) -> b[1] - a[1]);
+			positions++;
+			for (int i = 0; i < kept.size() && i < this.replies; i++) {
+				hashes[count] = hash;
+				moves[count] = kept.get(i)[0];
+				weights[count] = kept.get(i)[1];
+				count++;
+			}
+		}
+
+		try (RandomAccessFile output = new RandomAccessFile(this.out, "rw");
+				FileChannel channel = output.getChannel()) {
+			OpeningBook.write(channel, hashes, moves, weights, count);
+		}
+		System.out.printf("%d of %d positions, %d replies, %d bytes written to %s%n", positions, keys.length,
+				count, OpeningBook.HEADER_BYTES + count * OpeningBook.ENTRY_BYTES, this.out);
+	}
+
+}
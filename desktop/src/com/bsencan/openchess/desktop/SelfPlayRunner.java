@@ -0,0 +1,210 @@
+package com.bsencan.openchess.desktop;
+
+import com.bsencan.openchess.GameSession;
+import com.bsencan.openchess.ai.SearchEngine;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless desktop entry point that plays the in-core AI against itself.
+ * Games run on the bitboard, one {@link SearchEngine} per thread, across all
+ * cores; no libGDX backend is started. Each game opens with a few random
+ * moves so that games differ.
+ * <p>
+ * The library's own engine doesn't play: its controller can only be used on
+ * one thread, so games played through it couldn't run side by side. It
+ * checks the rules instead. Every game, or every n-th with
+ * <code>-check n</code>, is replayed through the library's controller by
+ * {@link LibraryReplay} to soak test the two rule implementations against
+ * each other. Replays queue up on a thread of their own while the games go
+ * on. The queue holds {@link #CHECK_QUEUE} games, a game thread that finds
+ * it full waits. Games per second are measured over the play alone, the
+ * time spent waiting for the queue and the time the last replays take
+ * after the games are reported apart.
+ * <p>
+ * Usage: <code>SelfPlayRunner [-games n] [-threads n] [-depth n] [-millis n]
+ * [-plies n] [-check n] [-seed n] [-out file]</code>. With <code>-out</code>
+ * a CSV line of the results is appended to the file.
+ */
+public class SelfPlayRunner {
+
+	private static final int RANDOM_PLIES = 4;
+
+	/** Most games waiting to be replayed through the library. */
+	static final int CHECK_QUEUE = 64;
+
+	private int games = 1000;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int depth = 3;
+	private long millis = 1000;
+	private int plies = 300;
+	private int check = 1;
+	private long seed = 1;
+	private String out;
+
+	private final SelfPlayStats stats = new SelfPlayStats();
+	private final AtomicInteger nextGame = new AtomicInteger();
+	private final ExecutorService library = Executors.newSingleThreadExecutor(task -> new Thread(task, "tavlei-library"));
+	private final Semaphore checkSlots = new Semaphore(CHECK_QUEUE);
+	/* Time game threads spent waiting for room in the queue, summed. */
+	private final AtomicLong waitNanos = new AtomicLong();
+	/* Library thread only. */
+	private final LibraryReplay replay = new LibraryReplay();
+	private TavleiBitboard start;
+
+	public static void main(String[] args) throws Exception {
+		SelfPlayRunner runner = new SelfPlayRunner();
+		runner.parse(args);
+		runner.run();
+	}
+
+	private void parse(String[] args) {
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "-games":
+				this.games = Integer.parseInt(value);
+				break;
+			case "-threads":
+				this.threads = Integer.parseInt(value);
+				break;
+			case "-depth":
+				this.depth = Integer.parseInt(value);
+				break;
+			case "-millis":
+				this.millis = Long.parseLong(value);
+				break;
+			case "-plies":
+				this.plies = Integer.parseInt(value);
+				break;
+			case "-check":
+				this.check = Integer.parseInt(value);
+				break;
+			case "-seed":
+				this.seed = Long.parseLong(value);
+				break;
+			case "-out":
+				this.out = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+	}
+
+	private void run() throws InterruptedException, IOException, ExecutionException {
+		this.start = this.library.submit(GameSession::loadStartPosition).get();
+		System.out.printf("%d games on %d threads, depth %d, %d ms per move%n",
+				this.games, this.threads, this.depth, this.millis);
+
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		long begin = System.nanoTime();
+		for (int i = 0; i < this.threads; i++) {
+			pool.execute(this::playGames);
+		}
+		pool.shutdown();
+		while (!pool.awaitTermination(10, TimeUnit.SECONDS)) {
+			System.out.printf("%d games done%n", this.stats.getGames());
+		}
+		long played = System.nanoTime();
+		this.library.shutdown();
+		while (!this.library.awaitTermination(10, TimeUnit.SECONDS)) {
+			System.out.printf("%d games checked%n", this.stats.getChecked());
+		}
+		long checked = System.nanoTime();
+
+		/* Waits are per thread, the play is timed on the wall clock. */
+		double waitSeconds = this.waitNanos.get() / 1e9 / this.threads;
+		double seconds = Math.max(1e-9, (played - begin) / 1e9 - waitSeconds);
+		this.stats.print(System.out, seconds);
+		System.out.printf("Waiting for the library queue: %.1f s per thread, last replays: %.1f s%n",
+				waitSeconds, (checked - played) / 1e9);
+		if (this.out != null) {
+			try (PrintWriter writer = new PrintWriter(new FileWriter(this.out, true))) {
+				this.stats.printCsv(writer, this.threads, this.depth, this.millis, seconds);
+			}
+		}
+		System.exit(this.stats.getMismatches() == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Plays games until all are taken. Runs on a pool thread.
+	 */
+	private void playGames() {
+		SearchEngine engine = new SearchEngine();
+		TavleiBitboard board = new TavleiBitboard();
+		int[] buffer = new int[TavleiBitboard.MAX_MOVES];
+		int[] moves = new int[this.plies];
+
+		int game;
+		while ((game = this.nextGame.getAndIncrement()) < this.games) {
+			board.set(this.start);
+			engine.getTable().clear();
+			Random random = new Random(this.seed * 1000003 + game);
+			long nodes = 0;
+			int result = TavleiBitboard.IN_PROGRESS;
+			int ply = 0;
+			for (; ply < this.plies && board.getResult() == TavleiBitboard.IN_PROGRESS; ply++) {
+				int move;
+				if (ply < RANDOM_PLIES) {
+					int count = board.generateMoves(buffer, 0);
+					move = count == 0 ? TavleiBitboard.NO_MOVE : buffer[random.nextInt(count)];
+				} else {
+					move = engine.search(board, this.millis, this.depth);
+					nodes += engine.getNodes();
+				}
+				if (move == TavleiBitboard.NO_MOVE) {
+					result = board.getResultWithoutMoves();
+					break;
+				}
+				moves[ply] = move;
+				board.makeMove(move);
+			}
+			if (result == TavleiBitboard.IN_PROGRESS) result = board.getResult();
+			board.clearHistory();
+
+			this.stats.add(result, ply, nodes);
+			if (this.check > 0 && game % this.check == 0) {
+				int checkedGame = game;
+				int[] played = Arrays.copyOf(moves, ply);
+				long wait = System.nanoTime();
+				this.checkSlots.acquireUninterruptibly();
+				this.waitNanos.addAndGet(System.nanoTime() - wait);
+				this.library.execute(() -> this.check(checkedGame, played));
+			}
+		}
+	}
+
+	/**
+	 * Replays a game through the library and frees its place in the queue.
+	 * Runs on the library's thread.
+	 */
+	private void check(int game, int[] moves) {
+		int mismatches;
+		try {
+			mismatches = this.replay.replay(this.start, moves, moves.length);
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			mismatches = 1;
+		} finally {
+			this.checkSlots.release();
+		}
+		if (mismatches > 0) {
+			System.out.printf("Game %d: %d disagreements with the library%n", game, mismatches);
+		}
+		this.stats.addChecked(mismatches);
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.bsencan.openchess.desktop;
+
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+
+/**
+ * Results of a {@link SelfPlayRunner} run, added to from all its threads.
+ * Games cut off by the ply limit count as draws.
+ */
+class SelfPlayStats {
+
+	private int games;
+	private int attackerWins;
+	private int defenderWins;
+	private int draws;
+	private long plies;
+	private long nodes;
+	private int checked;
+	private int mismatches;
+
+	synchronized void add(int result, int plies, long nodes) {
+		this.games++;
+		if (result == TavleiBitboard.ATTACKERS_WIN) this.attackerWins++;
+		else if (result == TavleiBitboard.DEFENDERS_WIN) this.defenderWins++;
+		else this.draws++;
+		this.plies += plies;
+		this.nodes += nodes;
+	}
+
+	/**
+	 * Adds a game replayed through the library.
+	 */
+	synchronized void addChecked(int mismatches) {
+		this.checked++;
+		this.mismatches += mismatches;
+	}
+
+	synchronized int getChecked() {
+		return this.checked;
+	}
+
+	synchronized int getGames() {
+		return this.games;
+	}
+
+	synchronized int getMismatches() {
+		return this.mismatches;
+	}
+
+	/**
+	 * @param seconds
+	 *            Time spent playing.
+	 */
+	synchronized void print(PrintStream out, double seconds) {
+		out.printf("Games: %d in %.1f s, %.2f games/s%n", this.games, seconds, this.games / seconds);
+		out.printf("Attackers win: %d (%.1f%%)%n", this.attackerWins, percent(this.attackerWins));
+		out.printf("Defenders win: %d (%.1f%%)%n", this.defenderWins, percent(this.defenderWins));
+		out.printf("Draws: %d (%.1f%%)%n", this.draws, percent(this.draws));
+		out.printf("Plies per game: %.1f, %.0f nodes/s%n",
+				this.plies / (double) Math.max(1, this.games), this.nodes / seconds);
+		out.printf("Library disagreements: %d in %d games checked%n", this.mismatches, this.checked);
+	}
+
+	/**
+	 * Writes one line: threads, depth, milliseconds per move, games, attacker
+	 * wins, defender wins, draws, plies per game, games per second, nodes per
+	 * second and library disagreements. Rates are over the time spent
+	 * playing.
+	 */
+	synchronized void printCsv(PrintWriter out, int threads, int depth, long millis, double seconds) {
+		out.printf("%d,%d,%d,%d,%d,%d,%d,%.1f,%.3f,%.0f,%d%n", threads, depth, millis,
+				this.games, this.attackerWins, this.defenderWins, this.draws,
+				this.plies / (double) Math.max(1, this.games), this.games / seconds,
+				this.nodes / seconds, this.mismatches);
+	}
+
+	private double percent(int count) {
+		return 100.0 * count / Math.max(1, this.games);
+	}
+
+}
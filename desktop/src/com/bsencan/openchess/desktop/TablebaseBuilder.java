@@ -0,0 +1,251 @@
+package com.bsencan.openchess.desktop;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.bsencan.openchess.ai.Tablebase;
+import com.bsencan.openchess.model.TavleiBitboard;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Builds the {@link Tablebase} of the in-core AI by retrograde analysis,
+ * offline. Moves, captures and results come from {@link TavleiBitboard},
+ * whose rules {@link SelfPlayRunner} checks against the library's
+ * controller.
+ * <p>
+ * Classes are solved from the fewest pieces up, so a capture always leads to
+ * a class that is already done. Each position of a class is first looked at
+ * one move ahead: moves that win at once or capture into a solved class are
+ * scored, the others counted. Positions are then settled in order of their
+ * distance to the end. A settled loss makes every position that reaches it by
+ * an unmove a win one ply further away; a settled win takes one from the
+ * count of its predecessors, and a predecessor whose count runs out is lost.
+ * Positions never settled are draws. A side without a move has lost, so a
+ * move that leaves the opponent none wins at once; the positions without a
+ * move themselves are stored as draws, and the search generates their moves
+ * to tell them apart.
+ * <p>
+ * Usage: <code>TablebaseBuilder [-pieces n] [-out file]</code>. Four pieces
+ * take about 90 MB and eleven minutes on one core, with a heap of 1 GB. Copy the
+ * file to <code>android/assets/</code>{@value Tablebase#DEFAULT_PATH} to ship
+ * it.
+ */
+public class TablebaseBuilder {
+
+	private int pieces = 3;
+	private String out = "endgame.tablebase";
+
+	private ByteBuffer data;
+	private Tablebase tablebase;
+	private final TavleiBitboard board = new TavleiBitboard();
+	private final int[] moves = new int[TavleiBitboard.MAX_MOVES];
+	private final int[] replies = new int[TavleiBitboard.MAX_MOVES];
+
+	/* Per position of the class being solved. */
+	private int base;
+	private byte[] remaining;
+	private byte[] pendingWin;
+	private byte[] captureLoss;
+	private IntArray[] queues;
+
+	public static void main(String[] args) throws Exception {
+		TablebaseBuilder builder = new TablebaseBuilder();
+		builder.parse(args);
+		builder.run();
+	}
+
+	private void parse(String[] args) {
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "-pieces":
+				this.pieces = Integer.parseInt(value);
+				break;
+			case "-out":
+				this.out = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+	}
+
+	private void run() throws IOException {
+		this.data = Tablebase.allocate(this.pieces);
+		this.tablebase = new Tablebase(this.data);
+		long begin = System.nanoTime();
+		for (int others = 0; others < this.pieces; others++) {
+			for (int defenders = 0; defenders <= others; defenders++) {
+				this.solve(others - defenders, defenders);
+			}
+		}
+		System.out.printf("Solved in %.1f s%n", (System.nanoTime() - begin) / 1e9);
+
+		try (RandomAccessFile output = new RandomAccessFile(this.out, "rw");
+				FileChannel channel = output.getChannel()) {
+			channel.truncate(0);
+			this.data.position(0);
+			while (this.data.hasRemaining()) {
+				channel.write(this.data);
+			}
+		}
+		System.out.printf("%d bytes written to %s%n", this.data.limit(), this.out);
+	}
+
+	private void solve(int attackers, int defenders) {
+		long begin = System.nanoTime();
+		int size = Tablebase.positions(attackers, defenders);
+		this.base = Tablebase.offset(attackers, defenders);
+		this.remaining = new byte[size];
+		this.pendingWin = new byte[size];
+		this.captureLoss = new byte[size];
+		this.queues = new IntArray[Tablebase.MAX_DISTANCE + 2];
+
+		for (int index = 0; index < size; index++) {
+			if (Tablebase.setPosition(this.board, attackers, defenders, index)) this.lookAhead(index);
+		}
+
+		int wins = 0;
+		int losses = 0;
+		int longest = 0;
+		for (int distance = 1; distance <= Tablebase.MAX_DISTANCE; distance++) {
+			IntArray queue = this.queues[distance];
+			if (queue == null) continue;
+			this.queues[distance] = null;
+			for (int i = 0; i < queue.size; i++) {
+				int index = queue.items[i];
+				if (this.valueAt(index) != Tablebase.DRAW) continue;
+				if (Tablebase.isWin(distance) && (this.pendingWin[index] & 0xFF) != distance) continue;
+				this.data.put(this.base + index, (byte) distance);
+				if (Tablebase.isWin(distance)) wins++;
+				else losses++;
+				longest = distance;
+				Tablebase.setPosition(this.board, attackers, defenders, index);
+				this.retract(distance);
+			}
+		}
+		if (this.queues[Tablebase.MAX_DISTANCE + 1] != null) {
+			throw new IllegalStateException("A result is more than " + Tablebase.MAX_DISTANCE + " plies away");
+		}
+		System.out.printf("%d attackers, %d defenders: %d indices, %d wins, %d losses, longest %d plies, %.1f s%n",
+				attackers, defenders, size, wins, losses, longest, (System.nanoTime() - begin) / 1e9);
+	}
+
+	/**
+	 * Scores the moves of the position on the board that win at once, leave
+	 * the opponent without a move or capture, and counts the others.
+	 */
+	private void lookAhead(int index) {
+		int count = this.board.generateMoves(this.moves, 0);
+		if (count == 0) return;
+		int attackers = this.board.getAttackerCount();
+		int defenders = this.board.getDefenderCount();
+
+		int win = 0;
+		int loss = 0;
+		int open = 0;
+		boolean escape = false;
+		for (int i = 0; i < count; i++) {
+			this.board.makeMove(this.moves[i]);
+			if (this.board.getResult() != TavleiBitboard.IN_PROGRESS
+					|| this.board.generateMoves(this.replies, 0) == 0) {
+				win = 1;
+				escape = true;
+			} else if (this.board.getAttackerCount() != attackers || this.board.getDefenderCount() != defenders) {
+				int value = this.tablebase.probe(this.board);
+				if (Tablebase.isWin(value)) {
+					loss = Math.max(loss, value);
+				} else {
+					escape = true;
+					if (value != Tablebase.DRAW && (win == 0 || value + 1 < win)) win = value + 1;
+				}
+			} else {
+				open++;
+			}
+			this.board.unmakeMove();
+		}
+
+		/* A move that doesn't lose keeps the count from running out. */
+		this.remaining[index] = (byte) (open + (escape ? 1 : 0));
+		this.captureLoss[index] = (byte) loss;
+		if (win > 0) {
+			this.pendingWin[index] = (byte) win;
+			this.enqueue(win, index);
+		} else if (open == 0 && !escape) {
+			this.enqueue(loss + 1, index);
+		}
+	}
+
+	/**
+	 * Passes the result of the position on the board, just settled at the
+	 * distance, to the positions of its class one move before.
+	 */
+	private void retract(int distance) {
+		int moved = 1 - this.board.getSideToMove();
+		int attackers = this.board.getAttackerCount();
+		int defenders = this.board.getDefenderCount();
+		for (int to = 0; to < TavleiBitboard.SQUARES; to++) {
+			int kind = this.board.kindAt(to);
+			if (kind == TavleiBitboard.EMPTY || TavleiBitboard.sideOfKind(kind) != moved) continue;
+			for (int direction = 0; direction < 4; direction++) {
+				for (int from = TavleiBitboard.neighbour(direction, to); from >= 0
+						&& this.board.isEmpty(from); from = TavleiBitboard.neighbour(direction, from)) {
+					if (TavleiBitboard.isSpecial(from) && kind != TavleiBitboard.PRINCE) break;
+					if (TavleiBitboard.isCorner(from)) break;
+					this.unmove(kind, from, to, moved, attackers, defenders, distance);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes the piece back from <code>to</code> to <code>from</code> and, if
+	 * the move doesn't capture or end the game, passes the result on to the
+	 * position before it.
+	 */
+	private void unmove(int kind, int from, int to, int moved, int attackers, int defenders, int distance) {
+		int side = this.board.getSideToMove();
+		this.board.remove(to);
+		this.board.put(from, kind);
+		this.board.setSideToMove(moved);
+		this.board.makeMove(TavleiBitboard.encodeMove(from, to));
+		boolean quiet = this.board.getResult() == TavleiBitboard.IN_PROGRESS
+				&& this.board.getAttackerCount() == attackers && this.board.getDefenderCount() == defenders;
+		this.board.unmakeMove();
+
+		if (quiet) {
+			int index = Tablebase.index(this.board);
+			if (this.valueAt(index) == Tablebase.DRAW) {
+				if (!Tablebase.isWin(distance)) {
+					int pending = this.pendingWin[index] & 0xFF;
+					if (pending == 0 || distance + 1 < pending) {
+						this.pendingWin[index] = (byte) (distance + 1);
+						this.enqueue(distance + 1, index);
+					}
+				} else if (--this.remaining[index] == 0) {
+					this.enqueue(Math.max(distance, this.captureLoss[index] & 0xFF) + 1, index);
+				}
+			}
+		}
+
+		this.board.remove(from);
+		this.board.put(to, kind);
+		this.board.setSideToMove(side);
+	}
+
+	private int valueAt(int index) {
+		return this.data.get(this.base + index) & 0xFF;
+	}
+
+	private void enqueue(int distance, int index) {
+		distance = Math.min(distance, Tablebase.MAX_DISTANCE + 1);
+		IntArray queue = this.queues[distance];
+		if (queue == null) {
+			queue = this.queues[distance] = new IntArray();
+		}
+		queue.add(index);
+	}
+
+}
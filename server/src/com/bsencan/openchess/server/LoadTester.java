@@ -0,0 +1,106 @@
+package com.bsencan.openchess.server;
+
+import com.bsencan.openchess.GameSession;
+import com.bsencan.openchess.model.TavleiBitboard;
+import com.bsencan.openchess.net.GameServer;
+import com.bsencan.openchess.net.NetProtocol;
+import com.bsencan.openchess.view.FrameTimeHistogram;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * Plays a {@link GameServer} with many {@link SimulatedClients} from one
+ * thread and prints the moves per second and the time from proposing a move
+ * to the server's answer.
+ * <p>
+ * Usage: <code>LoadTester [-host name] [-port n] [-clients n] [-seconds n]
+ * [-plies n] [-seed n] [-embedded] [-shards n]</code>. With
+ * <code>-embedded</code> the server runs in the same process on a free
+ * loopback port, with <code>-shards</code> game threads, which measures both
+ * ends on one machine.
+ */
+public class LoadTester {
+
+	private String host = "127.0.0.1";
+	private int port = NetProtocol.DEFAULT_PORT;
+	private int clients = 1000;
+	private int seconds = 30;
+	private int plies = 200;
+	private long seed = 1;
+	private boolean embedded;
+	private int shards = 1;
+
+	public static void main(String[] args) throws Exception {
+		LoadTester tester = new LoadTester();
+		tester.parse(args);
+		tester.run();
+	}
+
+	private void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-embedded")) {
+				this.embedded = true;
+				continue;
+			}
+			String value = args[++i];
+			switch (args[i - 1]) {
+			case "-host":
+				this.host = value;
+				break;
+			case "-port":
+				this.port = Integer.parseInt(value);
+				break;
+			case "-clients":
+				this.clients = Integer.parseInt(value);
+				break;
+			case "-seconds":
+				this.seconds = Integer.parseInt(value);
+				break;
+			case "-plies":
+				this.plies = Integer.parseInt(value);
+				break;
+			case "-seed":
+				this.seed = Long.parseLong(value);
+				break;
+			case "-shards":
+				this.shards = Integer.parseInt(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+			}
+		}
+	}
+
+	private void run() throws IOException {
+		TavleiBitboard start = GameSession.loadStartPosition();
+		InetSocketAddress address;
+		GameServer server = null;
+		if (this.embedded) {
+			InetAddress loopback = InetAddress.getLoopbackAddress();
+			server = new GameServer(new InetSocketAddress(loopback, 0), start, this.shards);
+			new Thread(server, "tavlei-server").start();
+			address = new InetSocketAddress(loopback, server.getPort());
+		} else {
+			address = new InetSocketAddress(this.host, this.port);
+		}
+		System.out.printf("%d clients against %s for %d s%n", this.clients, address, this.seconds);
+
+		SimulatedClients clients = new SimulatedClients(start, this.plies, this.seed);
+		long begin = System.nanoTime();
+		clients.run(address, this.clients, this.seconds, true);
+		double elapsed = (System.nanoTime() - begin) / 1e9;
+		if (server != null) server.stop();
+
+		FrameTimeHistogram latencies = clients.getLatencies();
+		System.out.printf("%d games, %d moves, %.0f moves/s, %d rejected, %d abandoned%n",
+				clients.getGames(), clients.getMoves(), clients.getMoves() / elapsed, clients.getRejected(),
+				clients.getAbandoned());
+		System.out.printf("answer p50 %.2f ms, p95 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+				latencies.getPercentile(50), latencies.getPercentile(95), latencies.getPercentile(99),
+				latencies.getMax());
+		System.exit(clients.getRejected() == 0 ? 0 : 1);
+	}
+
+}
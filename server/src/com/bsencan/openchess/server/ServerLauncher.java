@@ -0,0 +1,70 @@
+package com.bsencan.openchess.server;
+
+import com.bsencan.openchess.GameSession;
+import com.bsencan.openchess.net.GameServer;
+import com.bsencan.openchess.net.NetProtocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Runs a {@link GameServer} as a process of its own, without a libGDX
+ * backend, and prints its counters at an interval.
+ * <p>
+ * Usage: <code>ServerLauncher [-port n] [-shards n] [-stats seconds]</code>.
+ * There is a shard per core by default.
+ */
+public class ServerLauncher {
+
+	private int port = NetProtocol.DEFAULT_PORT;
+	private int shards = Runtime.getRuntime().availableProcessors();
+	private int stats = 10;
+
+	public static void main(String[] args) throws Exception {
+		ServerLauncher launcher = new ServerLauncher();
+		launcher.parse(args);
+		launcher.run();
+	}
+
+	private void parse(String[] args) {
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "-port":
+				this.port = Integer.parseInt(value);
+				break;
+			case "-shards":
+				this.shards = Integer.parseInt(value);
+				break;
+			case "-stats":
+				this.stats = Integer.parseInt(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+	}
+
+	private void run() throws IOException, InterruptedException {
+		GameServer server = new GameServer(new InetSocketAddress(this.port),
+				GameSession.loadStartPosition(), this.shards);
+		Thread thread = new Thread(server, "tavlei-server");
+		thread.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+		System.out.printf("Listening on port %d with %d shards%n", server.getPort(), this.shards);
+
+		long moves = 0;
+		long last = System.nanoTime();
+		while (thread.isAlive()) {
+			thread.join(this.stats * 1000L);
+			long now = System.nanoTime();
+			long total = server.getMoves();
+			System.out.printf("%d connections, %d games playing, %d started, %.0f moves/s, %d rejected%n",
+					server.getConnections(), server.getGamesPlaying(), server.getGamesStarted(),
+					(total - moves) / ((now - last) / 1e9), server.getRejected());
+			moves = total;
+			last = now;
+		}
+	}
+
+}
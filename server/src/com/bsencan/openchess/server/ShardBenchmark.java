@@ -0,0 +1,117 @@
+package com.bsencan.openchess.server;
+
+import com.bsencan.openchess.GameSession;
+import com.bsencan.openchess.model.TavleiBitboard;
+import com.bsencan.openchess.net.GameServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * Moves per second a {@link GameServer} checks against its number of
+ * shards. For each count, starts a server on a free loopback port and plays
+ * it with as many threads of {@link SimulatedClients} as it has shards,
+ * sharing the clients between them; the first seconds are a warm-up.
+ * Clients and server share the machine, so the figures stop growing at half
+ * the cores; run a {@link LoadTester} per machine against a
+ * {@link ServerLauncher} for the server alone.
+ * <p>
+ * Usage: <code>ShardBenchmark [-shards 1,2,4] [-clients n] [-seconds n]
+ * [-warmup n] [-plies n]</code>.
+ */
+public class ShardBenchmark {
+
+	private int[] shardCounts;
+	private int clients = 2000;
+	private int seconds = 10;
+	private int warmup = 3;
+	private int plies = 200;
+
+	public static void main(String[] args) throws Exception {
+		ShardBenchmark benchmark = new ShardBenchmark();
+		benchmark.parse(args);
+		benchmark.run();
+	}
+
+	private void parse(String[] args) {
+		int cores = Runtime.getRuntime().availableProcessors();
+		int count = 1;
+		while (1 << count <= cores) count++;
+		this.shardCounts = new int[count];
+		for (int i = 0; i < count; i++) {
+			this.shardCounts[i] = 1 << i;
+		}
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "-shards":
+				String[] counts = value.split(",");
+				this.shardCounts = new int[counts.length];
+				for (int j = 0; j < counts.length; j++) {
+					this.shardCounts[j] = Integer.parseInt(counts[j]);
+				}
+				break;
+			case "-clients":
+				this.clients = Integer.parseInt(value);
+				break;
+			case "-seconds":
+				this.seconds = Integer.parseInt(value);
+				break;
+			case "-warmup":
+				this.warmup = Integer.parseInt(value);
+				break;
+			case "-plies":
+				this.plies = Integer.parseInt(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+	}
+
+	private void run() throws IOException, InterruptedException {
+		TavleiBitboard start = GameSession.loadStartPosition();
+		System.out.printf("%d clients, %d s per shard count after %d s warm-up%n", this.clients, this.seconds,
+				this.warmup);
+		System.out.println("shards,moves_per_second,per_shard,rejected");
+		for (int shards : this.shardCounts) {
+			this.measure(start, shards);
+		}
+	}
+
+	private void measure(TavleiBitboard start, int shards) throws IOException, InterruptedException {
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		GameServer server = new GameServer(new InetSocketAddress(loopback, 0), start, shards);
+		Thread serverThread = new Thread(server, "tavlei-server");
+		serverThread.start();
+		InetSocketAddress address = new InetSocketAddress(loopback, server.getPort());
+
+		Thread[] threads = new Thread[shards];
+		for (int i = 0; i < shards; i++) {
+			SimulatedClients clients = new SimulatedClients(start, this.plies, i);
+			int count = this.clients / shards + (i < this.clients % shards ? 1 : 0);
+			threads[i] = new Thread(() -> {
+				try {
+					clients.run(address, count, this.warmup + this.seconds, false);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}, "tavlei-clients-" + i);
+			threads[i].start();
+		}
+
+		Thread.sleep(this.warmup * 1000L);
+		long moves = server.getMoves();
+		long begin = System.nanoTime();
+		Thread.sleep(this.seconds * 1000L);
+		double perSecond = (server.getMoves() - moves) / ((System.nanoTime() - begin) / 1e9);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		server.stop();
+		serverThread.join();
+		System.out.printf("%d,%.0f,%.0f,%d%n", shards, perSecond, perSecond / shards, server.getRejected());
+	}
+
+}
@@ -0,0 +1,215 @@
+package com.bsencan.openchess.server;
+
+import com.bsencan.openchess.journal.EventJournal;
+import com.bsencan.openchess.model.TavleiBitboard;
+import com.bsencan.openchess.net.GameServer;
+import com.bsencan.openchess.net.NetProtocol;
+import com.bsencan.openchess.view.FrameTimeHistogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Clients of a {@link GameServer}, all driven by one selector on the thread
+ * that runs them. Every client joins without a side, answers at once with a
+ * random legal move, resigns after a number of plies and joins again when a
+ * game ends. Counts the games and moves, and the times from proposing a move
+ * to the server's answer.
+ */
+class SimulatedClients {
+
+	private final TavleiBitboard start;
+	private final int plies;
+	private final long seed;
+	private final int[] buffer = new int[TavleiBitboard.MAX_MOVES];
+	/* The histogram's last bucket counts every answer over 100 ms. */
+	private final FrameTimeHistogram latencies = new FrameTimeHistogram();
+	private int connected;
+	private long games;
+	private long moves;
+	private long rejected;
+	private long abandoned;
+
+	SimulatedClients(TavleiBitboard start, int plies, long seed) {
+		this.start = start;
+		this.plies = plies;
+		this.seed = seed;
+	}
+
+	FrameTimeHistogram getLatencies() {
+		return this.latencies;
+	}
+
+	long getGames() {
+		return this.games;
+	}
+
+	long getMoves() {
+		return this.moves;
+	}
+
+	long getRejected() {
+		return this.rejected;
+	}
+
+	long getAbandoned() {
+		return this.abandoned;
+	}
+
+	/**
+	 * Connects the clients and plays until the time is up, then disconnects
+	 * them.
+	 *
+	 * @param report
+	 *            Whether to print the counters every second.
+	 */
+	void run(InetSocketAddress address, int clients, int seconds, boolean report) throws IOException {
+		Selector selector = Selector.open();
+		for (int i = 0; i < clients; i++) {
+			SocketChannel channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			channel.connect(address);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_CONNECT);
+			key.attach(new Client(channel, key, new Random(this.seed * 1000003 + i)));
+		}
+
+		long end = System.nanoTime() + seconds * 1000000000L;
+		long nextReport = System.nanoTime() + 1000000000L;
+		while (System.nanoTime() < end) {
+			selector.select(100);
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				Client client = (Client) key.attachment();
+				try {
+					if (key.isConnectable()) this.connect(client);
+					else if (key.isReadable()) this.read(client);
+					if (key.isValid() && key.isWritable()) client.flush();
+				} catch (IOException e) {
+					System.out.printf("Client dropped: %s%n", e);
+					key.cancel();
+					client.channel.close();
+					this.connected--;
+				}
+			}
+			long now = System.nanoTime();
+			if (report && now >= nextReport) {
+				System.out.printf("%d connected, %d games, %d moves%n", this.connected, this.games, this.moves);
+				nextReport = now + 1000000000L;
+			}
+		}
+
+		for (SelectionKey key : selector.keys()) {
+			key.channel().close();
+		}
+		selector.close();
+	}
+
+	private void connect(Client client) throws IOException {
+		client.channel.finishConnect();
+		client.key.interestOps(SelectionKey.OP_READ);
+		this.connected++;
+		client.send(NetProtocol.JOIN, EventJournal.SIDE_NONE, 0);
+	}
+
+	private void read(Client client) throws IOException {
+		ByteBuffer input = client.input;
+		if (client.channel.read(input) < 0) throw new IOException("Closed by the server");
+		input.flip();
+		while (input.remaining() >= NetProtocol.FRAME_BYTES) {
+			this.handle(client, input.get(), input.get(), input.getShort() & 0xFFFF);
+		}
+		input.compact();
+	}
+
+	private void handle(Client client, int type, int flags, int data) throws IOException {
+		switch (type) {
+		case NetProtocol.START:
+			client.side = NetProtocol.side(flags);
+			client.board.set(this.start);
+			break;
+		case NetProtocol.MOVE:
+			if (NetProtocol.side(flags) == client.side) {
+				this.latencies.record((System.nanoTime() - client.proposed) / 1e9f);
+				this.moves++;
+			}
+			client.board.makeMove(data);
+			break;
+		case NetProtocol.RULES_ERROR:
+			this.rejected++;
+			client.send(NetProtocol.RESIGN, NetProtocol.flags(client.side), 0);
+			return;
+		case NetProtocol.GAME_OVER:
+		case NetProtocol.OPPONENT_LEFT:
+			if (type == NetProtocol.GAME_OVER) this.games++;
+			else this.abandoned++;
+			client.side = -1;
+			client.send(NetProtocol.JOIN, EventJournal.SIDE_NONE, 0);
+			return;
+		default:
+			throw new IOException("Unknown frame " + type);
+		}
+		this.play(client);
+	}
+
+	/**
+	 * Proposes a random move if it is the client's turn.
+	 */
+	private void play(Client client) throws IOException {
+		TavleiBitboard board = client.board;
+		if (client.side < 0 || board.getResult() != TavleiBitboard.IN_PROGRESS
+				|| board.getSideToMove() != client.side) {
+			return;
+		}
+		int count = board.getPly() >= this.plies ? 0 : board.generateMoves(this.buffer, 0);
+		if (count == 0) {
+			client.send(NetProtocol.RESIGN, NetProtocol.flags(client.side), 0);
+			return;
+		}
+		client.proposed = System.nanoTime();
+		client.send(NetProtocol.PROPOSE_MOVE, NetProtocol.flags(client.side),
+				this.buffer[client.random.nextInt(count)]);
+	}
+
+	private static final class Client {
+
+		final SocketChannel channel;
+		final SelectionKey key;
+		final Random random;
+		final TavleiBitboard board = new TavleiBitboard();
+		final ByteBuffer input = ByteBuffer.allocate(256).order(NetProtocol.ORDER);
+		final ByteBuffer output = ByteBuffer.allocate(256).order(NetProtocol.ORDER);
+		int side = -1;
+		long proposed;
+
+		Client(SocketChannel channel, SelectionKey key, Random random) {
+			this.channel = channel;
+			this.key = key;
+			this.random = random;
+		}
+
+		void send(int type, int flags, int data) throws IOException {
+			NetProtocol.put(this.output, type, flags, data);
+			this.flush();
+		}
+
+		void flush() throws IOException {
+			this.output.flip();
+			this.channel.write(this.output);
+			this.output.compact();
+			this.key.interestOps(this.output.position() > 0
+					? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		}
+
+	}
+
+}